@@ -0,0 +1,52 @@
+/*
+ * Anyline Cordova Plugin
+ * BarcodeAccumulatorBenchmark.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The barcode dedup of the energy scan: the native detector reports the same few barcodes on most frames,
+ * new ones evict the least recently seen once maxSize is reached.
+ */
+@State(Scope.Thread)
+public class BarcodeAccumulatorBenchmark {
+
+    // barcodes in view, more than maxSize makes every sighting an eviction
+    @Param({"4", "80"})
+    public int distinctBarcodes;
+
+    private BarcodeAccumulator accumulator;
+    private String[] values;
+    private long now;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        accumulator = new BarcodeAccumulator(50, 0, false, false);
+        values = new String[distinctBarcodes];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = String.valueOf(4012345678901L + i);
+        }
+    }
+
+    @Benchmark
+    public JSONObject addSighting() {
+        next = (next + 1) % values.length;
+        return accumulator.add(values[next], "EAN_13", ++now);
+    }
+
+    @Benchmark
+    public JSONArray takeForReading() {
+        return accumulator.takeForReading(now);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Anyline Cordova Plugin
+ * ConfigParsingBenchmark.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The config parsing every scan starts with: the view config of the energy example with a segment control,
+ * parsed from the string extra, and the {@link CordovaUIConfig} read from it.
+ */
+@State(Scope.Thread)
+public class ConfigParsingBenchmark {
+
+    static final String CONFIG_JSON = "{"
+            + "\"captureResolution\":\"720p\","
+            + "\"visualFeedback\":{\"style\":\"CONTOUR_RECT\",\"strokeColor\":\"0099FF\",\"fillColor\":\"220099FF\"},"
+            + "\"cutout\":{\"style\":\"rect\",\"alignment\":\"top\",\"offset\":{\"x\":0,\"y\":120},"
+            + "\"strokeWidth\":2,\"cornerRadius\":4,\"strokeColor\":\"FFFFFF\",\"outerColor\":\"000000\","
+            + "\"outerAlpha\":0.3},"
+            + "\"flash\":{\"mode\":\"manual\",\"alignment\":\"bottom_right\"},"
+            + "\"beepOnResult\":true,\"vibrateOnResult\":true,\"blinkAnimationOnResult\":true,"
+            + "\"cancelOnResult\":true,\"reportingEnabled\":true,"
+            + "\"segment\":{\"titles\":[\"Analog\",\"Digital\"],\"modes\":[\"ELECTRIC_METER\",\"DIGITAL_METER\"],"
+            + "\"tintColor\":\"CCCCCC\",\"offset\":{\"x\":0,\"y\":500}}"
+            + "}";
+
+    private JSONObject config;
+
+    @Setup
+    public void setUp() throws JSONException {
+        config = new JSONObject(CONFIG_JSON);
+    }
+
+    @Benchmark
+    public JSONObject parseConfigJson() throws JSONException {
+        return new JSONObject(CONFIG_JSON);
+    }
+
+    @Benchmark
+    public CordovaUIConfig readUIConfig() {
+        return new CordovaUIConfig(null, config);
+    }
+
+    @Benchmark
+    public CordovaUIConfig parseAndReadUIConfig() throws JSONException {
+        return new CordovaUIConfig(null, new JSONObject(CONFIG_JSON));
+    }
+}
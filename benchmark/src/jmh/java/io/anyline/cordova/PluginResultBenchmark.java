@@ -0,0 +1,68 @@
+/*
+ * Anyline Cordova Plugin
+ * PluginResultBenchmark.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Sending a result to javascript: the PluginResult {@link ScanRequest} builds for an encoded result and for
+ * a JSONObject, up to the message the bridge sends.
+ */
+@State(Scope.Thread)
+public class PluginResultBenchmark {
+
+    private ScanRequest request;
+    private ResultEncoder.EncodedResult encodedResult;
+    private JSONObject jsonResult;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws JSONException {
+        this.blackhole = blackhole;
+        request = new ScanRequest(1, "BARCODE", new JSONArray(), new BridgeCallbackContext());
+        ResultEncoder encoder = new ResultEncoder(ResultEncoder.SCHEMA_LEGACY);
+        encoder.begin("BARCODE")
+                .putValue("value", "4012345678901")
+                .put("barcodeFormat", "EAN_13")
+                .put("imagePath", "/data/user/0/io.anyline.examples.cordova/cache/results/1_full.jpg");
+        encodedResult = encoder.encode();
+        jsonResult = new JSONObject(encodedResult.toString());
+    }
+
+    @Benchmark
+    public void sendEncodedResult() {
+        request.send(encodedResult, false);
+    }
+
+    @Benchmark
+    public void sendJsonObject() {
+        request.send(jsonResult, false);
+    }
+
+    /**
+     * Reads the message like the bridge does, the encoded result is only serialized there.
+     */
+    private class BridgeCallbackContext extends CallbackContext {
+        BridgeCallbackContext() {
+            super("AnylineSDK1");
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            blackhole.consume(pluginResult.getMessage());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Anyline Cordova Plugin
+ * ResultEncoderBenchmark.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.graphics.PointF;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The result building of the activities: a barcode result with its outline, encoded by the reused
+ * {@link ResultEncoder} of the activity, and the JSONObject tree the activities built before for comparison.
+ */
+@State(Scope.Thread)
+public class ResultEncoderBenchmark {
+
+    private final List<PointF> outline = Arrays.asList(new PointF(120.5f, 340.25f), new PointF(980f, 338.75f),
+            new PointF(982.5f, 610f), new PointF(118f, 612.5f));
+
+    /**
+     * The encoder of an activity, per schema.
+     */
+    @State(Scope.Thread)
+    public static class Encoder {
+        @Param({"1", "2"})
+        public int schema;
+
+        ResultEncoder encoder;
+
+        @Setup
+        public void setUp() {
+            encoder = new ResultEncoder(schema);
+        }
+    }
+
+    @Benchmark
+    public ResultEncoder.EncodedResult encodeResult(Encoder state) {
+        state.encoder.begin("BARCODE")
+                .putValue("value", "4012345678901")
+                .put("barcodeFormat", "EAN_13")
+                .put("imagePath", "/data/user/0/io.anyline.examples.cordova/cache/results/1_full.jpg")
+                .putOutline(outline);
+        return state.encoder.encode();
+    }
+
+    @Benchmark
+    public String encodeOutlineOnly(Encoder state) {
+        return state.encoder.begin("BARCODE").putOutline(outline).encode().toString();
+    }
+
+    @Benchmark
+    public String jsonObjectResult() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("value", "4012345678901");
+        json.put("barcodeFormat", "EAN_13");
+        json.put("imagePath", "/data/user/0/io.anyline.examples.cordova/cache/results/1_full.jpg");
+        json.put("outline", jsonForOutline(outline));
+        return json.toString();
+    }
+
+    @Benchmark
+    public String jsonObjectOutlineOnly() throws JSONException {
+        return jsonForOutline(outline);
+    }
+
+    /**
+     * The outline as the activities encoded it before the {@link ResultEncoder}.
+     */
+    private static String jsonForOutline(List<PointF> pointList) throws JSONException {
+        String[] names = {"upLeft", "upRight", "downRight", "downLeft"};
+        JSONObject outline = new JSONObject();
+        for (int i = 0; i < names.length; i++) {
+            JSONObject point = new JSONObject();
+            point.put("x", pointList.get(i).x);
+            point.put("y", pointList.get(i).y);
+            outline.put(names[i], point);
+        }
+        return outline.toString();
+    }
+}
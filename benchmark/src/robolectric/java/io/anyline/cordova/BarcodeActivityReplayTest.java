@@ -0,0 +1,230 @@
+/*
+ * Anyline Cordova Plugin
+ * BarcodeActivityReplayTest.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.content.Intent;
+import android.os.Looper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Replays recorded results through {@link BarcodeActivity} and checks what {@link ResultReporter} receives,
+ * the whole result path of the plugin runs as on a device, only the scan view is replaced.
+ */
+@RunWith(ModernJvmTestRunner.class)
+@Config(sdk = 25, manifest = Config.NONE)
+public class BarcodeActivityReplayTest {
+
+    private static final String REQUEST_ID = "42";
+    private static final String REPLAY_THREAD = "AnylineReplay";
+
+    // far below what a desktop jvm reaches, it catches regressions like a blocking call per result
+    private static final int REPLAYED_FOR_THROUGHPUT = 2000;
+    private static final double MIN_RESULTS_PER_SECOND = 500;
+
+    private static final String RECORDING = "["
+            + "{\"value\":\"9783161484100\",\"format\":\"EAN_13\",\"confidence\":90,"
+            + "\"outline\":[10,20,110,20,110,60,10,60]},"
+            + "{\"value\":\"https://anyline.io\",\"format\":\"QR_CODE\",\"confidence\":75,"
+            + "\"outline\":\"{\\\"upLeft\\\":{\\\"x\\\":1,\\\"y\\\":2},\\\"upRight\\\":{\\\"x\\\":3,\\\"y\\\":2},"
+            + "\\\"downRight\\\":{\\\"x\\\":3,\\\"y\\\":4},\\\"downLeft\\\":{\\\"x\\\":1,\\\"y\\\":4}}\","
+            + "\"schemaVersion\":1,\"imagePath\":\"/sdcard/recording/2.jpg\"}"
+            + "]";
+
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() {
+        listener = new RecordingListener();
+        ResultReporter.register(REQUEST_ID, listener);
+    }
+
+    @After
+    public void tearDown() {
+        ResultReporter.unregisterAll();
+    }
+
+    @Test
+    public void replayedResultsReachTheReporterInOrder() throws Exception {
+        ActivityController<BarcodeActivity> controller = start(replayConfig(6, false));
+        runReplay();
+
+        List<JSONObject> results = listener.results;
+        assertEquals(6, results.size());
+        JSONArray recording = new JSONArray(RECORDING);
+        for (int i = 0; i < results.size(); i++) {
+            JSONObject recorded = recording.getJSONObject(i % recording.length());
+            JSONObject result = results.get(i);
+            assertEquals(recorded.getString("value"), result.getString("value"));
+            assertEquals(recorded.getString("format"), result.getString("format"));
+            assertEquals(recorded.getInt("confidence"), result.getInt("confidence"));
+            // Robolectric decodes every path into a blank bitmap, so the recorded image is saved as cutout
+            if (recorded.has("imagePath")) {
+                assertTrue(new File(result.getString("imagePath")).isFile());
+            } else {
+                assertFalse(result.has("imagePath"));
+            }
+        }
+        assertFalse(listener.finalResult);
+        assertNull(listener.error);
+        assertFalse(controller.get().isFinishing());
+
+        controller.pause().stop().destroy();
+    }
+
+    @Test
+    public void cancelOnResultReportsOneFinalResultAndFinishes() throws Exception {
+        ActivityController<BarcodeActivity> controller = start(replayConfig(5, true));
+        runReplay();
+
+        // the request is done after the first result, the results replayed until the activity is paused are dropped
+        assertEquals(1, listener.results.size());
+        assertEquals("9783161484100", listener.results.get(0).getString("value"));
+        assertTrue(listener.finalResult);
+        assertTrue(controller.get().isFinishing());
+
+        controller.pause().stop().destroy();
+    }
+
+    @Test
+    public void consensusIsAppliedToTheReplayedResults() throws Exception {
+        JSONObject config = replayConfig(6, false);
+        config.getJSONObject(ReplayScanEngine.REPLAY).put(ReplayScanEngine.RESULTS, new JSONArray("["
+                + "{\"value\":\"A\",\"format\":\"CODE_128\"},{\"value\":\"A\",\"format\":\"CODE_128\"},"
+                + "{\"value\":\"B\",\"format\":\"CODE_128\"},{\"value\":\"B\",\"format\":\"CODE_128\"},"
+                + "{\"value\":\"B\",\"format\":\"CODE_128\"},{\"value\":\"C\",\"format\":\"CODE_128\"}]"));
+        Intent intent = intent(config);
+        intent.putExtra(AnylinePlugin.EXTRA_CONSENSUS_JSON, "{\"strategy\":\"nOfM\",\"n\":2,\"m\":2}");
+        ActivityController<BarcodeActivity> controller = start(intent);
+        runReplay();
+
+        // the third B is not repeated and C is seen only once
+        List<JSONObject> results = listener.results;
+        assertEquals(2, results.size());
+        assertEquals("A", results.get(0).getString("value"));
+        assertEquals("B", results.get(1).getString("value"));
+        assertEquals(2, results.get(1).getInt("consensusFrames"));
+
+        controller.pause().stop().destroy();
+    }
+
+    @Test
+    public void replayThroughput() throws Exception {
+        ActivityController<BarcodeActivity> controller = start(replayConfig(REPLAYED_FOR_THROUGHPUT, false));
+        long start = System.nanoTime();
+        runReplay();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(REPLAYED_FOR_THROUGHPUT, listener.results.size());
+
+        double resultsPerSecond = REPLAYED_FOR_THROUGHPUT / seconds;
+        System.out.println(String.format("Replayed %d results in %.0f ms, %.0f results/s",
+                REPLAYED_FOR_THROUGHPUT, seconds * 1000, resultsPerSecond));
+        assertTrue("Only " + resultsPerSecond + " results/s", resultsPerSecond >= MIN_RESULTS_PER_SECOND);
+
+        controller.pause().stop().destroy();
+    }
+
+    private static JSONObject replayConfig(int count, boolean cancelOnResult) throws Exception {
+        JSONObject replay = new JSONObject();
+        replay.put(ReplayScanEngine.RESULTS, new JSONArray(RECORDING));
+        replay.put(ReplayScanEngine.INTERVAL, 0);
+        replay.put(ReplayScanEngine.COUNT, count);
+
+        JSONObject config = new JSONObject();
+        config.put("cancelOnResult", cancelOnResult);
+        config.put(ReplayScanEngine.REPLAY, replay);
+        return config;
+    }
+
+    private static ActivityController<BarcodeActivity> start(JSONObject config) {
+        return start(intent(config));
+    }
+
+    private static ActivityController<BarcodeActivity> start(Intent intent) {
+        return Robolectric.buildActivity(BarcodeActivity.class, intent).setup();
+    }
+
+    /**
+     * @return the intent the plugin starts the activity with
+     */
+    private static Intent intent(JSONObject config) {
+        Intent intent = new Intent(RuntimeEnvironment.application, BarcodeActivity.class);
+        intent.putExtra(AnylinePlugin.EXTRA_LICENSE_KEY, "replay");
+        intent.putExtra(AnylinePlugin.EXTRA_CONFIG_JSON, config.toString());
+        intent.putExtra(AnylinePlugin.EXTRA_REQUEST_ID, REQUEST_ID);
+        return intent;
+    }
+
+    /**
+     * Runs the replay until every result is reported. Robolectric does not run the loopers of background
+     * threads by themselves, their tasks are run on the test thread when the looper is idled.
+     */
+    private static void runReplay() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (REPLAY_THREAD.equals(thread.getName())) {
+                Looper looper = ShadowLooper.getLooperForThread(thread);
+                if (looper != null) {
+                    ((ShadowLooper) Shadow.extract(looper)).runToEndOfTasks();
+                }
+            }
+        }
+        ShadowLooper.idleMainLooper();
+    }
+
+    /**
+     * Collects the reported results as json.
+     */
+    private static class RecordingListener implements ResultReporter.OnResultListener {
+
+        private final List<JSONObject> results = new ArrayList<JSONObject>();
+        private boolean finalResult;
+        private String error;
+
+        @Override
+        public void onResult(Object result, boolean isFinalResult) {
+            try {
+                results.add(new JSONObject(result.toString()));
+            } catch (JSONException e) {
+                fail("Result is not json: " + result);
+            }
+            finalResult |= isFinalResult;
+        }
+
+        @Override
+        public void onError(String errorMessage) {
+            error = errorMessage;
+        }
+
+        @Override
+        public void onCancel() {
+            error = "canceled";
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Anyline Cordova Plugin
+ * ModernJvmTestRunner.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.junit.runners.model.InitializationError;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link RobolectricTestRunner} that also runs on java 12 and newer.
+ * <p/>
+ * Robolectric 3.8 resets static final fields of the sandbox (Shadow.SHADOW_IMPL, the run queues of
+ * ViewRootImpl, ...) by clearing the final modifier through the field Field.modifiers. Newer jdks hide that
+ * field from reflection, so the filter is lifted once before the first sandbox is set up. This needs
+ * --add-opens java.base/jdk.internal.reflect=ALL-UNNAMED, see build.gradle.
+ */
+public class ModernJvmTestRunner extends RobolectricTestRunner {
+
+    static {
+        showFieldModifiers();
+    }
+
+    public ModernJvmTestRunner(Class<?> testClass) throws InitializationError {
+        super(testClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void showFieldModifiers() {
+        Class<?> reflection;
+        try {
+            reflection = Class.forName("jdk.internal.reflect.Reflection");
+        } catch (ClassNotFoundException e) {
+            // java 8, nothing is hidden
+            return;
+        }
+        try {
+            Method privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class,
+                    MethodHandles.Lookup.class);
+            MethodHandles.Lookup lookup = (MethodHandles.Lookup) privateLookupIn.invoke(null, reflection,
+                    MethodHandles.lookup());
+            MethodHandle getter = lookup.findStaticGetter(reflection, "fieldFilterMap", Map.class);
+            MethodHandle setter = lookup.findStaticSetter(reflection, "fieldFilterMap", Map.class);
+
+            Map<Class<?>, ?> filters = new HashMap<Class<?>, Object>((Map<Class<?>, ?>) getter.invoke());
+            filters.remove(Field.class);
+            setter.invoke(filters);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not prepare the jvm for Robolectric 3.8", e);
+        }
+    }
+}
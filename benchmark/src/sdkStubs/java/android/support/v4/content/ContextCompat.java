@@ -0,0 +1,16 @@
+/*
+ * Anyline Cordova Plugin
+ * ContextCompat.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package android.support.v4.content;
+
+import android.content.Context;
+
+public class ContextCompat {
+
+    public static int getColor(Context context, int id) {
+        return context.getResources().getColor(id);
+    }
+}
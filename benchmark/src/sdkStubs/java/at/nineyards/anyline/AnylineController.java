@@ -0,0 +1,15 @@
+/*
+ * Anyline Cordova Plugin
+ * AnylineController.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline;
+
+public class AnylineController {
+    private Thread.UncaughtExceptionHandler handler;
+
+    public void setWorkerThreadUncaughtExceptionHandler(Thread.UncaughtExceptionHandler handler) {
+        this.handler = handler;
+    }
+}
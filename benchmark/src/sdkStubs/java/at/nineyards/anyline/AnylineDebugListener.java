@@ -0,0 +1,19 @@
+/*
+ * Anyline Cordova Plugin
+ * AnylineDebugListener.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline;
+
+import at.nineyards.anyline.core.RunFailure;
+
+public interface AnylineDebugListener {
+    String BRIGHTNESS_VARIABLE_NAME = "$brightness";
+    Class<Double> BRIGHTNESS_VARIABLE_CLASS = Double.class;
+    String CONTOURS_VARIABLE_NAME = "$thresholdedContours";
+
+    void onDebug(String name, Object value);
+
+    void onRunSkipped(RunFailure runFailure);
+}
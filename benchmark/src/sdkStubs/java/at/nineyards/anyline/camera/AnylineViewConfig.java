@@ -0,0 +1,23 @@
+/*
+ * Anyline Cordova Plugin
+ * AnylineViewConfig.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.camera;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+
+public class AnylineViewConfig {
+    private final boolean cancelOnResult;
+
+    public AnylineViewConfig(Context context, JSONObject json) {
+        cancelOnResult = json.optBoolean("cancelOnResult", true);
+    }
+
+    public boolean isCancelOnResult() {
+        return cancelOnResult;
+    }
+}
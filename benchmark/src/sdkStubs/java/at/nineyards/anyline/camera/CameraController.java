@@ -0,0 +1,10 @@
+/*
+ * Anyline Cordova Plugin
+ * CameraController.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.camera;
+
+public class CameraController {
+}
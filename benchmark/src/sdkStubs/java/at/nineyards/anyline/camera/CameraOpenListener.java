@@ -0,0 +1,13 @@
+/*
+ * Anyline Cordova Plugin
+ * CameraOpenListener.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.camera;
+
+public interface CameraOpenListener {
+    void onCameraOpened(CameraController cameraController, int width, int height);
+
+    void onCameraError(Exception e);
+}
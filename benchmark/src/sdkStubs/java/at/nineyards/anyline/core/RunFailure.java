@@ -0,0 +1,20 @@
+/*
+ * Anyline Cordova Plugin
+ * RunFailure.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.core;
+
+public class RunFailure {
+    private final String reason;
+
+    public RunFailure(String reason) {
+        this.reason = reason;
+    }
+
+    @Override
+    public String toString() {
+        return reason;
+    }
+}
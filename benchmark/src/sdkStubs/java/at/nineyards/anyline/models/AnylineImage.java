@@ -0,0 +1,41 @@
+/*
+ * Anyline Cordova Plugin
+ * AnylineImage.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.models;
+
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class AnylineImage {
+    private Bitmap bitmap;
+
+    public AnylineImage(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    /**
+     * @param quality the jpeg quality
+     */
+    public void save(File file, int quality) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, quality, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public void release() {
+        bitmap = null;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Anyline Cordova Plugin
+ * AnylineBaseModuleView.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.widget.FrameLayout;
+
+import at.nineyards.anyline.AnylineController;
+import at.nineyards.anyline.AnylineDebugListener;
+import at.nineyards.anyline.camera.AnylineViewConfig;
+import at.nineyards.anyline.camera.CameraOpenListener;
+
+/**
+ * Stand-in for the scan views of the Anyline sdk: they never open a camera or report a result, the tests
+ * replace them with a {@link io.anyline.cordova.ReplayScanEngine}.
+ */
+public abstract class AnylineBaseModuleView extends FrameLayout {
+    private final AnylineController anylineController = new AnylineController();
+    private AnylineViewConfig config;
+
+    public AnylineBaseModuleView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public void setConfig(AnylineViewConfig config) {
+        this.config = config;
+    }
+
+    public AnylineViewConfig getConfig() {
+        return config;
+    }
+
+    public AnylineController getAnylineController() {
+        return anylineController;
+    }
+
+    public void setCameraOpenListener(CameraOpenListener listener) {
+    }
+
+    public void setDebugListener(AnylineDebugListener listener) {
+    }
+
+    public void setReportingEnabled(boolean reportingEnabled) {
+    }
+
+    public Rect getCutoutRect() {
+        return new Rect();
+    }
+
+    public void startScanning() {
+    }
+
+    public void cancelScanning() {
+    }
+
+    public void releaseCameraInBackground() {
+    }
+}
@@ -0,0 +1,11 @@
+/*
+ * Anyline Cordova Plugin
+ * BarcodeResultListener.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.barcode;
+
+public interface BarcodeResultListener {
+    void onResult(BarcodeResult result);
+}
@@ -0,0 +1,27 @@
+/*
+ * Anyline Cordova Plugin
+ * BarcodeScanView.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.barcode;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+import at.nineyards.anyline.modules.AnylineBaseModuleView;
+
+public class BarcodeScanView extends AnylineBaseModuleView {
+
+    public enum BarcodeFormat {
+        AZTEC, CODABAR, CODE_39, CODE_93, CODE_128, DATA_MATRIX, EAN_8, EAN_13, ITF, PDF_417, QR_CODE, UPC_A,
+        UPC_E, UNKNOWN
+    }
+
+    public BarcodeScanView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public void initAnyline(String licenseKey, BarcodeResultListener listener) {
+    }
+}
@@ -0,0 +1,15 @@
+/*
+ * Anyline Cordova Plugin
+ * NativeBarcodeResultListener.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.barcode;
+
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.barcode.Barcode;
+
+public interface NativeBarcodeResultListener {
+    void onBarcodesReceived(SparseArray<Barcode> barcodes);
+}
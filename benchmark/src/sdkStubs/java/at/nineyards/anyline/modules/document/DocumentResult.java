@@ -0,0 +1,50 @@
+/*
+ * Anyline Cordova Plugin
+ * DocumentResult.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.document;
+
+import android.graphics.PointF;
+
+import java.util.List;
+
+import at.nineyards.anyline.models.AnylineImage;
+
+public class DocumentResult {
+    private final AnylineImage result;
+    private final List<PointF> outline;
+    private final int confidence;
+    private final AnylineImage cutoutImage;
+    private final AnylineImage fullImage;
+
+    public DocumentResult(AnylineImage result, List<PointF> outline, int confidence, AnylineImage cutoutImage,
+            AnylineImage fullImage) {
+        this.result = result;
+        this.outline = outline;
+        this.confidence = confidence;
+        this.cutoutImage = cutoutImage;
+        this.fullImage = fullImage;
+    }
+
+    public AnylineImage getResult() {
+        return result;
+    }
+
+    public List<PointF> getOutline() {
+        return outline;
+    }
+
+    public int getConfidence() {
+        return confidence;
+    }
+
+    public AnylineImage getCutoutImage() {
+        return cutoutImage;
+    }
+
+    public AnylineImage getFullImage() {
+        return fullImage;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Anyline Cordova Plugin
+ * DocumentResultListener.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.document;
+
+import android.graphics.PointF;
+
+import java.util.List;
+
+import at.nineyards.anyline.models.AnylineImage;
+
+public interface DocumentResultListener {
+    void onResult(DocumentResult result);
+
+    void onPreviewProcessingSuccess(AnylineImage anylineImage);
+
+    void onPreviewProcessingFailure(DocumentScanView.DocumentError documentError);
+
+    void onPictureProcessingFailure(DocumentScanView.DocumentError documentError);
+
+    boolean onDocumentOutlineDetected(List<PointF> list, boolean documentShapeAndBrightnessValid);
+
+    void onTakePictureSuccess();
+
+    void onTakePictureError(Throwable throwable);
+}
@@ -0,0 +1,52 @@
+/*
+ * Anyline Cordova Plugin
+ * DocumentScanView.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.document;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+import at.nineyards.anyline.models.AnylineImage;
+import at.nineyards.anyline.modules.AnylineBaseModuleView;
+
+public class DocumentScanView extends AnylineBaseModuleView {
+
+    public enum DocumentRatio {
+        DIN_AX_PORTRAIT(1.4142), DIN_AX_LANDSCAPE(1 / 1.4142);
+
+        private final double ratio;
+
+        DocumentRatio(double ratio) {
+            this.ratio = ratio;
+        }
+
+        public double getRatio() {
+            return ratio;
+        }
+    }
+
+    public enum DocumentError {
+        DOCUMENT_NOT_SHARP, DOCUMENT_SKEW_TOO_HIGH, DOCUMENT_OUTLINE_NOT_FOUND, IMAGE_TOO_DARK, SHAKE_DETECTED,
+        DOCUMENT_BOUNDS_OUTSIDE_OF_TOLERANCE, DOCUMENT_RATIO_OUTSIDE_OF_TOLERANCE, UNKNOWN
+    }
+
+    public DocumentScanView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public void setDocumentRatios(Double... ratios) {
+    }
+
+    public void setMaxDocumentRatioDeviation(Double deviation) {
+    }
+
+    public AnylineImage getCurrentFullImage() {
+        return null;
+    }
+
+    public void initAnyline(String licenseKey, DocumentResultListener listener) {
+    }
+}
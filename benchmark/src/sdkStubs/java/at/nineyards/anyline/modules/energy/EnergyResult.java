@@ -0,0 +1,59 @@
+/*
+ * Anyline Cordova Plugin
+ * EnergyResult.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.energy;
+
+import android.graphics.PointF;
+
+import java.util.List;
+
+import at.nineyards.anyline.models.AnylineImage;
+
+public class EnergyResult {
+    private final String result;
+    private final List<PointF> outline;
+    private final int confidence;
+    private final AnylineImage cutoutImage;
+    private final AnylineImage fullImage;
+    private EnergyScanView.ScanMode scanMode;
+
+    public EnergyResult(String result, List<PointF> outline, int confidence, AnylineImage cutoutImage,
+            AnylineImage fullImage) {
+        this.result = result;
+        this.outline = outline;
+        this.confidence = confidence;
+        this.cutoutImage = cutoutImage;
+        this.fullImage = fullImage;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public List<PointF> getOutline() {
+        return outline;
+    }
+
+    public int getConfidence() {
+        return confidence;
+    }
+
+    public AnylineImage getCutoutImage() {
+        return cutoutImage;
+    }
+
+    public AnylineImage getFullImage() {
+        return fullImage;
+    }
+
+    public void setScanMode(EnergyScanView.ScanMode scanMode) {
+        this.scanMode = scanMode;
+    }
+
+    public EnergyScanView.ScanMode getScanMode() {
+        return scanMode;
+    }
+}
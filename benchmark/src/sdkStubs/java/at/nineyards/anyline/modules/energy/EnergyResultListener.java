@@ -0,0 +1,11 @@
+/*
+ * Anyline Cordova Plugin
+ * EnergyResultListener.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.energy;
+
+public interface EnergyResultListener {
+    void onResult(EnergyResult result);
+}
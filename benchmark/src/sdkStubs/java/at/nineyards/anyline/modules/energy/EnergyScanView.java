@@ -0,0 +1,42 @@
+/*
+ * Anyline Cordova Plugin
+ * EnergyScanView.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.energy;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+import at.nineyards.anyline.modules.AnylineBaseModuleView;
+import at.nineyards.anyline.modules.barcode.NativeBarcodeResultListener;
+
+public class EnergyScanView extends AnylineBaseModuleView {
+
+    public enum ScanMode {
+        AUTO_ANALOG_DIGITAL_METER, ANALOG_METER, ANALOG_METER_WHITE, ANALOG_METER_4, ANALOG_METER_7, DIAL_METER,
+        DIGITAL_METER, ELECTRIC_METER, ELECTRIC_METER_5_1, ELECTRIC_METER_6_1, GAS_METER, GAS_METER_6,
+        WATER_METER_BLACK, WATER_METER_WHITE, HEAT_METER_4, HEAT_METER_5, HEAT_METER_6, SERIAL_NUMBER
+    }
+
+    private ScanMode scanMode;
+
+    public EnergyScanView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public void setScanMode(ScanMode scanMode) {
+        this.scanMode = scanMode;
+    }
+
+    public ScanMode getScanMode() {
+        return scanMode;
+    }
+
+    public void enableBarcodeDetection(boolean enable, NativeBarcodeResultListener listener) {
+    }
+
+    public void initAnyline(String licenseKey, EnergyResultListener listener) {
+    }
+}
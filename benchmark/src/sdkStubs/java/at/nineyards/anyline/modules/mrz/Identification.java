@@ -0,0 +1,21 @@
+/*
+ * Anyline Cordova Plugin
+ * Identification.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.mrz;
+
+import org.json.JSONObject;
+
+public class Identification {
+    private final JSONObject json;
+
+    public Identification(JSONObject json) {
+        this.json = json;
+    }
+
+    public JSONObject toJSONObject() {
+        return json;
+    }
+}
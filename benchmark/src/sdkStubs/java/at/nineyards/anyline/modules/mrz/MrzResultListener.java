@@ -0,0 +1,11 @@
+/*
+ * Anyline Cordova Plugin
+ * MrzResultListener.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.mrz;
+
+public interface MrzResultListener {
+    void onResult(MrzResult result);
+}
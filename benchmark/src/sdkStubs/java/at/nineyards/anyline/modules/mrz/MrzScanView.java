@@ -0,0 +1,22 @@
+/*
+ * Anyline Cordova Plugin
+ * MrzScanView.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.mrz;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+import at.nineyards.anyline.modules.AnylineBaseModuleView;
+
+public class MrzScanView extends AnylineBaseModuleView {
+
+    public MrzScanView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public void initAnyline(String licenseKey, MrzResultListener listener) {
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Anyline Cordova Plugin
+ * AnylineOcrConfig.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.ocr;
+
+import org.json.JSONObject;
+
+public class AnylineOcrConfig {
+    private String customCmdFile;
+    private String[] tesseractLanguages;
+
+    public AnylineOcrConfig(JSONObject json) {
+    }
+
+    public void setCustomCmdFile(String customCmdFile) {
+        this.customCmdFile = customCmdFile;
+    }
+
+    public String getCustomCmdFile() {
+        return customCmdFile;
+    }
+
+    public void setTesseractLanguages(String... languages) {
+        tesseractLanguages = languages;
+    }
+
+    public String[] getTesseractLanguages() {
+        return tesseractLanguages;
+    }
+}
@@ -0,0 +1,11 @@
+/*
+ * Anyline Cordova Plugin
+ * AnylineOcrResultListener.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.ocr;
+
+public interface AnylineOcrResultListener {
+    void onResult(AnylineOcrResult result);
+}
@@ -0,0 +1,25 @@
+/*
+ * Anyline Cordova Plugin
+ * AnylineOcrScanView.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package at.nineyards.anyline.modules.ocr;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+import at.nineyards.anyline.modules.AnylineBaseModuleView;
+
+public class AnylineOcrScanView extends AnylineBaseModuleView {
+
+    public AnylineOcrScanView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public void setAnylineOcrConfig(AnylineOcrConfig config) {
+    }
+
+    public void initAnyline(String licenseKey, AnylineOcrResultListener listener) {
+    }
+}
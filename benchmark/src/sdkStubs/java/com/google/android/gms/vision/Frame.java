@@ -0,0 +1,34 @@
+/*
+ * Anyline Cordova Plugin
+ * Frame.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package com.google.android.gms.vision;
+
+import android.graphics.Bitmap;
+
+public class Frame {
+    private final Bitmap bitmap;
+
+    private Frame(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public static class Builder {
+        private Bitmap bitmap;
+
+        public Builder setBitmap(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            return this;
+        }
+
+        public Frame build() {
+            return new Frame(bitmap);
+        }
+    }
+}
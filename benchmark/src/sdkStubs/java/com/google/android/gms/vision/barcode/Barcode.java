@@ -0,0 +1,31 @@
+/*
+ * Anyline Cordova Plugin
+ * Barcode.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package com.google.android.gms.vision.barcode;
+
+import android.graphics.Point;
+
+public class Barcode {
+    public static final int ALL_FORMATS = 0;
+    public static final int CODE_128 = 1;
+    public static final int CODE_39 = 2;
+    public static final int CODE_93 = 4;
+    public static final int CODABAR = 8;
+    public static final int DATA_MATRIX = 16;
+    public static final int EAN_13 = 32;
+    public static final int EAN_8 = 64;
+    public static final int ITF = 128;
+    public static final int QR_CODE = 256;
+    public static final int UPC_A = 512;
+    public static final int UPC_E = 1024;
+    public static final int PDF417 = 2048;
+    public static final int AZTEC = 4096;
+
+    public int format;
+    public String rawValue;
+    public String displayValue;
+    public Point[] cornerPoints;
+}
@@ -0,0 +1,45 @@
+/*
+ * Anyline Cordova Plugin
+ * BarcodeDetector.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package com.google.android.gms.vision.barcode;
+
+import android.content.Context;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Frame;
+
+/**
+ * Stand-in for the play services barcode detector, it is never operational.
+ */
+public class BarcodeDetector {
+
+    private BarcodeDetector() {
+    }
+
+    public boolean isOperational() {
+        return false;
+    }
+
+    public SparseArray<Barcode> detect(Frame frame) {
+        return new SparseArray<Barcode>();
+    }
+
+    public void release() {
+    }
+
+    public static class Builder {
+        public Builder(Context context) {
+        }
+
+        public Builder setBarcodeFormats(int formats) {
+            return this;
+        }
+
+        public BarcodeDetector build() {
+            return new BarcodeDetector();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Anyline Cordova Plugin
+ * CordovaInterface.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package org.apache.cordova;
+
+import android.app.Activity;
+import android.content.Intent;
+
+import java.util.concurrent.ExecutorService;
+
+public interface CordovaInterface {
+    void startActivityForResult(CordovaPlugin command, Intent intent, int requestCode);
+
+    Activity getActivity();
+
+    ExecutorService getThreadPool();
+
+    void requestPermission(CordovaPlugin plugin, int requestCode, String permission);
+
+    boolean hasPermission(String permission);
+}
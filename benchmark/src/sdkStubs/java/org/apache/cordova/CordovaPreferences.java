@@ -0,0 +1,29 @@
+/*
+ * Anyline Cordova Plugin
+ * CordovaPreferences.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package org.apache.cordova;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+public class CordovaPreferences {
+    private final Map<String, String> prefs = new HashMap<String, String>();
+
+    public void set(String name, String value) {
+        prefs.put(name.toLowerCase(Locale.ENGLISH), value);
+    }
+
+    public String getString(String name, String defaultValue) {
+        String value = prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value != null ? value : defaultValue;
+    }
+
+    public int getInteger(String name, int defaultValue) {
+        String value = prefs.get(name.toLowerCase(Locale.ENGLISH));
+        return value == null ? defaultValue : (int) Long.decode(value).longValue();
+    }
+}
@@ -0,0 +1,13 @@
+/*
+ * Anyline Cordova Plugin
+ * CordovaWebView.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package org.apache.cordova;
+
+import android.view.View;
+
+public interface CordovaWebView {
+    View getView();
+}
@@ -0,0 +1,13 @@
+/*
+ * Anyline Cordova Plugin
+ * Context.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package android.content;
+
+/**
+ * Stand-in for android.content.Context on a plain JVM. The plugin code compiled here only passes it on.
+ */
+public abstract class Context {
+}
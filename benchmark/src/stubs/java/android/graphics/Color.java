@@ -0,0 +1,31 @@
+/*
+ * Anyline Cordova Plugin
+ * Color.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package android.graphics;
+
+/**
+ * Stand-in for android.graphics.Color on a plain JVM. parseColor supports the #RRGGBB and #AARRGGBB forms,
+ * the color names of Android are not supported.
+ */
+public final class Color {
+
+    private Color() {
+    }
+
+    public static int parseColor(String colorString) {
+        if (colorString.length() > 0 && colorString.charAt(0) == '#') {
+            // same as Android: a NumberFormatException (an IllegalArgumentException) for invalid digits
+            long color = Long.parseLong(colorString.substring(1), 16);
+            if (colorString.length() == 7) {
+                color |= 0x00000000ff000000L;
+            } else if (colorString.length() != 9) {
+                throw new IllegalArgumentException("Unknown color");
+            }
+            return (int) color;
+        }
+        throw new IllegalArgumentException("Unknown color");
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Anyline Cordova Plugin
+ * PointF.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package android.graphics;
+
+/**
+ * Stand-in for android.graphics.PointF on a plain JVM.
+ */
+public class PointF {
+    public float x;
+    public float y;
+
+    public PointF() {
+    }
+
+    public PointF(float x, float y) {
+        this.x = x;
+        this.y = y;
+    }
+}
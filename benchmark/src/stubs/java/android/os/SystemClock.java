@@ -0,0 +1,24 @@
+/*
+ * Anyline Cordova Plugin
+ * SystemClock.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package android.os;
+
+/**
+ * Stand-in for android.os.SystemClock on a plain JVM, backed by the monotonic clock of the JVM.
+ */
+public final class SystemClock {
+
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1000000;
+    }
+}
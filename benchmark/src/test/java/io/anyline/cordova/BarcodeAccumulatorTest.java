@@ -0,0 +1,128 @@
+/*
+ * Anyline Cordova Plugin
+ * BarcodeAccumulatorTest.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BarcodeAccumulatorTest {
+
+    @Test
+    public void sightingsOfTheSameBarcodeAreCounted() throws Exception {
+        BarcodeAccumulator accumulator = new BarcodeAccumulator(10, 0, false, true);
+
+        accumulator.add("123", "EAN_13", 0);
+        accumulator.add("123", "EAN_13", 10);
+        accumulator.add("123", "QR_CODE", 20);
+        accumulator.add(null, "EAN_13", 30);
+
+        JSONArray barcodes = accumulator.takeForReading(40);
+        assertEquals(2, barcodes.length());
+        assertEquals("EAN_13", barcodes.getJSONObject(0).getString("format"));
+        assertEquals(2, barcodes.getJSONObject(0).getInt("hitCount"));
+        assertEquals(1, barcodes.getJSONObject(1).getInt("hitCount"));
+    }
+
+    @Test
+    public void barcodesAreReportedInTheOrderTheyWereFirstSeen() throws Exception {
+        BarcodeAccumulator accumulator = new BarcodeAccumulator(10, 0, false, true);
+
+        accumulator.add("A", "QR_CODE", 0);
+        accumulator.add("B", "QR_CODE", 10);
+        accumulator.add("A", "QR_CODE", 20);
+
+        JSONArray barcodes = accumulator.takeForReading(30);
+        assertEquals("A", barcodes.getJSONObject(0).getString("value"));
+        assertEquals("B", barcodes.getJSONObject(1).getString("value"));
+        JSONObject a = barcodes.getJSONObject(0);
+        assertEquals(20, a.getLong("lastSeen") - a.getLong("firstSeen"));
+    }
+
+    @Test
+    public void theLeastRecentlySeenBarcodeIsDroppedFirst() throws Exception {
+        BarcodeAccumulator accumulator = new BarcodeAccumulator(2, 0, false, true);
+
+        accumulator.add("A", "QR_CODE", 0);
+        accumulator.add("B", "QR_CODE", 10);
+        accumulator.add("A", "QR_CODE", 20);
+        accumulator.add("C", "QR_CODE", 30);
+
+        JSONArray barcodes = accumulator.takeForReading(40);
+        assertEquals(2, barcodes.length());
+        assertEquals("A", barcodes.getJSONObject(0).getString("value"));
+        assertEquals("C", barcodes.getJSONObject(1).getString("value"));
+    }
+
+    @Test
+    public void barcodesExpireAfterTheWindow() throws Exception {
+        BarcodeAccumulator accumulator = new BarcodeAccumulator(10, 100, false, true);
+
+        accumulator.add("A", "QR_CODE", 0);
+        accumulator.add("B", "QR_CODE", 50);
+        accumulator.add("B", "QR_CODE", 120);
+
+        JSONArray barcodes = accumulator.takeForReading(150);
+        assertEquals(1, barcodes.length());
+        assertEquals("B", barcodes.getJSONObject(0).getString("value"));
+    }
+
+    @Test
+    public void clearOnReadingStartsOverAfterEveryReading() throws Exception {
+        BarcodeAccumulator clearing = new BarcodeAccumulator(10, 0, false, true);
+        clearing.add("A", "QR_CODE", 0);
+        clearing.takeForReading(10);
+        assertEquals(0, clearing.takeForReading(20).length());
+
+        BarcodeAccumulator keeping = new BarcodeAccumulator(10, 0, false, false);
+        keeping.add("A", "QR_CODE", 0);
+        keeping.takeForReading(10);
+        assertEquals(1, keeping.takeForReading(20).length());
+        keeping.clear();
+        assertEquals(0, keeping.takeForReading(30).length());
+    }
+
+    @Test
+    public void streamingReportsABarcodeOnlyTheFirstTimeItIsSeen() throws Exception {
+        BarcodeAccumulator accumulator = BarcodeAccumulator.fromJson("{\"delivery\":\"stream\"}");
+        assertTrue(accumulator.isStreaming());
+
+        JSONObject event = accumulator.add("A", "QR_CODE", 0);
+        assertNotNull(event);
+        assertEquals(BarcodeAccumulator.EVENT_BARCODE_DETECTED, event.getString("event"));
+        assertEquals("A", event.getString("value"));
+        assertNull(accumulator.add("A", "QR_CODE", 10));
+    }
+
+    @Test
+    public void theDefaultsAttachTheBarcodesToEveryReading() throws Exception {
+        BarcodeAccumulator accumulator = BarcodeAccumulator.fromJson((String) null);
+        assertFalse(accumulator.isStreaming());
+        assertNull(accumulator.add("A", "QR_CODE", 0));
+
+        for (int i = 0; i < 60; i++) {
+            accumulator.add(String.valueOf(i), "QR_CODE", i);
+        }
+        assertEquals(50, accumulator.takeForReading(100).length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDeliveriesAreRejected() throws Exception {
+        BarcodeAccumulator.fromJson("{\"delivery\":\"batch\"}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void anEmptyAccumulatorIsRejected() throws Exception {
+        BarcodeAccumulator.fromJson("{\"maxSize\":0}");
+    }
+}
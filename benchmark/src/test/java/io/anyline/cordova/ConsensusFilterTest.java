@@ -0,0 +1,126 @@
+/*
+ * Anyline Cordova Plugin
+ * ConsensusFilterTest.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConsensusFilterTest {
+
+    @Test
+    public void nOfMAcceptsTheValueOnItsNthFrame() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.Strategy.N_OF_M, 3, 5, 0, 0, 0, false);
+
+        assertFalse(filter.offer("123", 50, 0));
+        assertFalse(filter.offer("124", 50, 10));
+        assertFalse(filter.offer("123", 50, 20));
+        assertTrue(filter.offer("123", 50, 30));
+        assertEquals(3, filter.getLastAgreement());
+    }
+
+    @Test
+    public void nOfMOnlyCountsTheLastMFrames() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.Strategy.N_OF_M, 2, 3, 0, 0, 0, false);
+
+        assertFalse(filter.offer("A", 50, 0));
+        assertFalse(filter.offer("B", 50, 1));
+        assertFalse(filter.offer("C", 50, 2));
+        // the first A dropped out of the window
+        assertFalse(filter.offer("A", 50, 3));
+        assertTrue(filter.offer("C", 50, 4));
+    }
+
+    @Test
+    public void anAcceptedValueIsNotRepeatedUntilAnotherOneWasAccepted() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.Strategy.N_OF_M, 1, 1, 0, 0, 0, false);
+
+        assertTrue(filter.offer("A", 50, 0));
+        assertFalse(filter.offer("A", 50, 1));
+        assertTrue(filter.offer("B", 50, 2));
+        assertTrue(filter.offer("A", 50, 3));
+    }
+
+    @Test
+    public void emitRepeatsAcceptsTheSameValueAgain() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.Strategy.N_OF_M, 1, 1, 0, 0, 0, true);
+
+        assertTrue(filter.offer("A", 50, 0));
+        assertTrue(filter.offer("A", 50, 1));
+    }
+
+    @Test
+    public void clearForgetsTheLastAcceptedValue() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.Strategy.N_OF_M, 1, 1, 0, 0, 0, false);
+
+        assertTrue(filter.offer("A", 50, 0));
+        filter.clear();
+        assertTrue(filter.offer("A", 50, 1));
+    }
+
+    @Test
+    public void weightedNeedsTheMinimumWeightAndTheHighestWeight() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.Strategy.WEIGHTED, 1, 5, 150, 0, 0, false);
+
+        assertFalse(filter.offer("A", 90, 0));
+        assertFalse(filter.offer("B", 95, 1));
+        // B has 95 + 95 = 190, A only 90
+        assertTrue(filter.offer("B", 95, 2));
+    }
+
+    @Test
+    public void weightedSumsTheConfidencesOfTheLastMFrames() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.Strategy.WEIGHTED, 1, 2, 100, 0, 0, false);
+
+        assertFalse(filter.offer("A", 80, 0));
+        assertFalse(filter.offer("B", 30, 1));
+        // the first A dropped out of the window, 80 + 30 would have been enough otherwise
+        assertFalse(filter.offer("A", 30, 2));
+        assertTrue(filter.offer("A", 70, 3));
+        assertEquals(2, filter.getLastAgreement());
+    }
+
+    @Test
+    public void stableNeedsTheSameValueForTheWholeWindow() {
+        ConsensusFilter filter = new ConsensusFilter(ConsensusFilter.Strategy.STABLE, 1, 1, 0, 100, 2, false);
+
+        assertFalse(filter.offer("A", 50, 0));
+        assertFalse(filter.offer("A", 50, 50));
+        // another value restarts the run
+        assertFalse(filter.offer("B", 50, 60));
+        assertFalse(filter.offer("B", 50, 150));
+        assertTrue(filter.offer("B", 50, 160));
+    }
+
+    @Test
+    public void fromJsonReadsTheStrategyAndDefaults() throws Exception {
+        assertNull(ConsensusFilter.fromJson((String) null));
+        assertNull(ConsensusFilter.fromJson(""));
+
+        ConsensusFilter filter = ConsensusFilter.fromJson(new JSONObject("{\"m\":2}"));
+        // n defaults to min(3, m)
+        assertFalse(filter.offer("A", 50, 0));
+        assertTrue(filter.offer("A", 50, 1));
+
+        filter = ConsensusFilter.fromJson("{\"strategy\":\"STABLE\",\"window\":0,\"minFrames\":1}");
+        assertTrue(filter.offer("A", 50, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownStrategiesAreRejected() throws Exception {
+        ConsensusFilter.fromJson("{\"strategy\":\"majority\"}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nGreaterThanMIsRejected() throws Exception {
+        ConsensusFilter.fromJson("{\"n\":4,\"m\":3}");
+    }
+}
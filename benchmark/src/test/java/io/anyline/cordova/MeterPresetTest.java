@@ -0,0 +1,106 @@
+/*
+ * Anyline Cordova Plugin
+ * MeterPresetTest.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MeterPresetTest {
+
+    @Test
+    public void builtInPresetsOnlyAnnotate() {
+        MeterPreset preset = MeterPreset.find("ANALOG_METER_4", null);
+        assertEquals("ANALOG_METER", preset.getScanMode());
+        assertFalse(preset.isEnforced());
+
+        ResultEncoder result = result();
+        assertTrue(preset.apply(result, "123456"));
+        assertEquals("ANALOG_METER_4", result.get(MeterPreset.METER_PRESET));
+    }
+
+    @Test
+    public void actionsWithoutPresetAreNoMeterActions() {
+        assertNull(MeterPreset.find("BARCODE", null));
+    }
+
+    @Test
+    public void customPresetsAreEnforced() throws Exception {
+        MeterPreset preset = MeterPreset.find("MY_METER", new JSONObject(
+                "{\"meterPresets\":{\"MY_METER\":{\"digits\":6,\"decimals\":2,\"min\":0,\"max\":5000}}}"));
+        assertTrue(preset.isEnforced());
+
+        ResultEncoder result = result();
+        assertTrue(preset.apply(result, " 123456 "));
+        assertEquals("MY_METER", result.get(MeterPreset.METER_PRESET));
+        assertEquals(1234.56, (Double) result.get("readingValue"), 1e-9);
+
+        // wrong digit count, out of range, no digits
+        assertFalse(preset.apply(result(), "12345"));
+        assertFalse(preset.apply(result(), "999999"));
+        assertFalse(preset.apply(result(), "12a456"));
+        assertFalse(preset.apply(result(), ""));
+        assertFalse(preset.apply(result(), null));
+    }
+
+    @Test
+    public void digitsOfOtherScriptsDoNotMatch() throws Exception {
+        MeterPreset preset = MeterPreset.fromJson("ARABIC", new JSONObject("{\"digits\":4}"));
+
+        // Arabic-Indic digits, Character.isDigit accepts them but Double.parseDouble does not
+        ResultEncoder result = result();
+        assertFalse(preset.apply(result, "١٢٣٤"));
+        assertNull(result.get(MeterPreset.METER_PRESET));
+    }
+
+    @Test
+    public void presetsThatAreNotEnforcedAnnotateEveryReading() throws Exception {
+        MeterPreset preset = MeterPreset.fromJson("LOOSE", new JSONObject("{\"digits\":4,\"enforce\":false}"));
+
+        ResultEncoder result = result();
+        assertTrue(preset.apply(result, "12"));
+        assertEquals("LOOSE", result.get(MeterPreset.METER_PRESET));
+        assertNull(result.get("readingValue"));
+    }
+
+    @Test
+    public void resolveSelectsThePresetOfTheModuleConfig() throws Exception {
+        MeterPreset builtIn = MeterPreset.find("GAS_METER", null);
+        assertSame(builtIn, MeterPreset.resolve(builtIn, null));
+
+        MeterPreset selected = MeterPreset.resolve(builtIn, new JSONObject("{\"meterPreset\":\"GAS_METER_6\"}"));
+        assertEquals("GAS_METER_6", selected.getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSelectedPresetsAreRejected() throws Exception {
+        MeterPreset.resolve(null, new JSONObject("{\"meterPreset\":\"NO_METER\"}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void moreDecimalsThanDigitsAreRejected() throws Exception {
+        MeterPreset.fromJson("BROKEN", new JSONObject("{\"digits\":2,\"decimals\":3}"));
+    }
+
+    @Test
+    public void toJsonRoundTrips() throws Exception {
+        MeterPreset preset = new MeterPreset("MY_METER", "DIGITAL_METER", 5, 1, 0, 100, true);
+        MeterPreset copy = MeterPreset.fromJson(preset.toJson());
+
+        assertEquals(preset.toJson().toString(), copy.toJson().toString());
+        assertFalse(MeterPreset.find("DIAL_METER", null).toJson().has(MeterPreset.MIN));
+    }
+
+    private static ResultEncoder result() {
+        return new ResultEncoder(ResultEncoder.SCHEMA_LEGACY).begin("ENERGY");
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Anyline Cordova Plugin
+ * ResultBatcherTest.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResultBatcherTest {
+
+    private static final AtomicInteger nextRequestCode = new AtomicInteger(1000);
+
+    @Test
+    public void immediateDeliveryNeedsNoBatcher() throws Exception {
+        RecordingRequest request = new RecordingRequest();
+
+        assertNull(ResultBatcher.fromJson(request, null));
+        assertNull(ResultBatcher.fromJson(request, new JSONObject("{\"mode\":\"immediate\"}")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownModesAreRejected() throws Exception {
+        ResultBatcher.fromJson(new RecordingRequest(), new JSONObject("{\"mode\":\"stream\"}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOverflowPoliciesAreRejected() throws Exception {
+        ResultBatcher.fromJson(new RecordingRequest(), new JSONObject("{\"mode\":\"batch\",\"overflow\":\"block\"}"));
+    }
+
+    @Test
+    public void aFullBatchIsSentRightAway() throws Exception {
+        RecordingRequest request = new RecordingRequest();
+        ResultBatcher batcher = batcher(request, "{\"mode\":\"batch\",\"interval\":60000,\"maxBatch\":3}");
+
+        batcher.offer(result("1"), false);
+        batcher.offer(result("2"), false);
+        assertEquals(0, request.sent.size());
+        batcher.offer(result("3"), false);
+
+        JSONObject batch = request.batch(0);
+        assertEquals(request.getId(), batch.getString("requestId"));
+        assertEquals(1, batch.getInt("sequence"));
+        assertEquals(3, batch.getJSONArray("batch").length());
+        assertEquals("3", batch.getJSONArray("batch").getJSONObject(2).getString("value"));
+        batcher.close();
+    }
+
+    @Test
+    public void aPartialBatchIsSentAfterTheInterval() throws Exception {
+        RecordingRequest request = new RecordingRequest();
+        ResultBatcher batcher = batcher(request, "{\"mode\":\"batch\",\"interval\":20,\"maxBatch\":10}");
+
+        batcher.offer(result("1"), false);
+        request.awaitSent(1);
+
+        assertEquals(1, request.batch(0).getJSONArray("batch").length());
+        assertFalse(request.finals.get(0));
+        batcher.close();
+    }
+
+    @Test
+    public void aFinalResultIsSentAfterThePendingBatchAndCloses() throws Exception {
+        RecordingRequest request = new RecordingRequest();
+        ResultBatcher batcher = batcher(request, "{\"mode\":\"batch\",\"interval\":60000,\"maxBatch\":10}");
+
+        batcher.offer(result("1"), false);
+        ResultEncoder.EncodedResult last = result("2");
+        batcher.offer(last, true);
+
+        assertEquals(2, request.sent.size());
+        assertEquals(1, request.batch(0).getJSONArray("batch").length());
+        assertSame(last, request.sent.get(1));
+        assertTrue(request.finals.get(1));
+        assertFalse(ResultBatcher.acknowledge(request.getId()));
+
+        batcher.offer(result("3"), false);
+        assertEquals(2, request.sent.size());
+    }
+
+    @Test
+    public void binaryResultsAreNeverBatched() throws Exception {
+        RecordingRequest request = new RecordingRequest();
+        ResultBatcher batcher = batcher(request, "{\"mode\":\"batch\",\"interval\":60000,\"maxBatch\":10}");
+
+        batcher.offer(result("1"), false);
+        byte[] image = new byte[]{1, 2, 3};
+        batcher.offer(image, false);
+
+        assertEquals(2, request.sent.size());
+        assertSame(image, request.sent.get(1));
+        batcher.close();
+    }
+
+    @Test
+    public void batchesWaitForTheAcknowledgementAndDropTheOldestResults() throws Exception {
+        RecordingRequest request = new RecordingRequest();
+        ResultBatcher batcher = batcher(request,
+                "{\"mode\":\"batch\",\"interval\":60000,\"maxBatch\":2,\"maxInFlight\":1,\"maxPending\":3}");
+
+        batcher.offer(result("1"), false);
+        batcher.offer(result("2"), false);
+        assertEquals(1, request.sent.size());
+
+        // javascript did not acknowledge the first batch yet
+        for (int i = 3; i <= 7; i++) {
+            batcher.offer(result(String.valueOf(i)), false);
+        }
+        assertEquals(1, request.sent.size());
+
+        assertTrue(ResultBatcher.acknowledge(request.getId()));
+        assertEquals(2, request.sent.size());
+        JSONObject batch = request.batch(1);
+        assertEquals(2, batch.getInt("sequence"));
+        assertEquals(2, batch.getInt("dropped"));
+        JSONArray results = batch.getJSONArray("batch");
+        assertEquals(3, results.length());
+        assertEquals("5", results.getJSONObject(0).getString("value"));
+        assertEquals("7", results.getJSONObject(2).getString("value"));
+        batcher.close();
+    }
+
+    @Test
+    public void dropDuplicateKeepsTheNewestResultOfAValue() throws Exception {
+        RecordingRequest request = new RecordingRequest();
+        ResultBatcher batcher = batcher(request,
+                "{\"mode\":\"batch\",\"interval\":60000,\"maxBatch\":10,\"overflow\":\"dropDuplicate\"}");
+
+        batcher.offer(result("A"), false);
+        batcher.offer(result("B"), false);
+        batcher.offer(result("A"), false);
+        batcher.close();
+
+        JSONObject batch = request.batch(0);
+        assertEquals(1, batch.getInt("coalesced"));
+        JSONArray results = batch.getJSONArray("batch");
+        assertEquals(2, results.length());
+        assertEquals("B", results.getJSONObject(0).getString("value"));
+        assertEquals("A", results.getJSONObject(1).getString("value"));
+    }
+
+    @Test
+    public void theRequestRoutesResultsThroughItsBatcher() throws Exception {
+        RecordingRequest request = new RecordingRequest();
+        ResultBatcher batcher = batcher(request, "{\"mode\":\"batch\",\"interval\":60000,\"maxBatch\":2}");
+        request.setBatcher(batcher);
+
+        request.onResult(result("1"), false);
+        assertEquals(0, request.sent.size());
+        request.onCancel();
+
+        assertEquals(1, request.sent.size());
+        assertEquals(1, request.batch(0).getJSONArray("batch").length());
+        assertFalse(ResultBatcher.acknowledge(request.getId()));
+    }
+
+    private static ResultBatcher batcher(ScanRequest request, String json) throws Exception {
+        return ResultBatcher.fromJson(request, new JSONObject(json));
+    }
+
+    private static ResultEncoder.EncodedResult result(String value) {
+        return new ResultEncoder(ResultEncoder.SCHEMA_LEGACY).begin("BARCODE").putValue("value", value).encode();
+    }
+
+    /**
+     * Records what would be sent to javascript.
+     */
+    private static class RecordingRequest extends ScanRequest {
+        final List<Object> sent = new ArrayList<Object>();
+        final List<Boolean> finals = new ArrayList<Boolean>();
+
+        RecordingRequest() {
+            super(nextRequestCode.getAndIncrement(), "BARCODE", new JSONArray(), new CallbackContext("test"));
+        }
+
+        @Override
+        synchronized void send(Object result, boolean isFinalResult) {
+            sent.add(result);
+            finals.add(isFinalResult);
+            notifyAll();
+        }
+
+        synchronized void awaitSent(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (sent.size() < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            assertEquals(count, sent.size());
+        }
+
+        synchronized JSONObject batch(int index) throws Exception {
+            return new JSONObject(sent.get(index).toString());
+        }
+    }
+}
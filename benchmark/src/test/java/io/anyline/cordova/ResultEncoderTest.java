@@ -0,0 +1,157 @@
+/*
+ * Anyline Cordova Plugin
+ * ResultEncoderTest.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.graphics.PointF;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultEncoderTest {
+
+    private static final List<PointF> OUTLINE = Arrays.asList(new PointF(1, 2), new PointF(3.5f, 4),
+            new PointF(5, 6), new PointF(7, 8.25f));
+
+    @Test
+    public void legacySchemaKeepsTheModuleKeyAndWritesTheOutlineAsString() throws Exception {
+        ResultEncoder encoder = new ResultEncoder(ResultEncoder.SCHEMA_LEGACY);
+        encoder.begin("BARCODE").putValue("value", "4012345678901").put("barcodeFormat", "EAN_13");
+        encoder.putOutline(OUTLINE);
+
+        ResultEncoder.EncodedResult encoded = encoder.encode();
+        JSONObject json = new JSONObject(encoded.toString());
+
+        assertEquals("4012345678901", json.getString("value"));
+        assertEquals("EAN_13", json.getString("barcodeFormat"));
+        assertFalse(json.has("module"));
+        assertEquals("4012345678901", encoded.getValue());
+
+        JSONObject outline = new JSONObject(json.getString("outline"));
+        assertEquals(1, outline.getJSONObject("upLeft").getInt("x"));
+        assertEquals(3.5, outline.getJSONObject("upRight").getDouble("x"), 0);
+        assertEquals(6, outline.getJSONObject("downRight").getInt("y"));
+        assertEquals(8.25, outline.getJSONObject("downLeft").getDouble("y"), 0);
+    }
+
+    @Test
+    public void compactSchemaIsVersionedAndWritesTheOutlineAsArray() throws Exception {
+        ResultEncoder encoder = new ResultEncoder(ResultEncoder.SCHEMA_COMPACT);
+        encoder.begin("ANYLINE_OCR").putValue("text", "AB12").put("confidence", 87);
+        encoder.putOutline(OUTLINE);
+
+        JSONObject json = new JSONObject(encoder.encode().toString());
+
+        assertEquals(ResultEncoder.SCHEMA_COMPACT, json.getInt("schemaVersion"));
+        assertEquals("ANYLINE_OCR", json.getString("module"));
+        assertEquals("AB12", json.getString("value"));
+        assertFalse(json.has("text"));
+        assertEquals(87, json.getInt("confidence"));
+        JSONArray outline = json.getJSONArray("outline");
+        assertEquals(8, outline.length());
+        assertEquals(3.5, outline.getDouble(2), 0);
+        assertEquals(8.25, outline.getDouble(7), 0);
+    }
+
+    @Test
+    public void unknownSchemaFallsBackToLegacy() {
+        assertEquals(ResultEncoder.SCHEMA_LEGACY, new ResultEncoder(7).getSchema());
+    }
+
+    @Test
+    public void putReplacesAnExistingKeyInPlace() {
+        ResultEncoder encoder = new ResultEncoder(ResultEncoder.SCHEMA_LEGACY);
+        encoder.begin("MRZ").put("a", 1).put("b", 2).put("a", 3);
+
+        assertEquals("{\"a\":3,\"b\":2}", encoder.encode().toString());
+    }
+
+    @Test
+    public void putValueReplacesThePreviousValueKey() throws Exception {
+        ResultEncoder encoder = new ResultEncoder(ResultEncoder.SCHEMA_LEGACY);
+        encoder.begin("ENERGY").putValue("reading", "123").putValue("value", "456");
+
+        JSONObject json = new JSONObject(encoder.encode().toString());
+        assertFalse(json.has("reading"));
+        assertEquals("456", json.getString("value"));
+
+        encoder.replaceValue("789");
+        assertEquals("789", encoder.getValue());
+    }
+
+    @Test
+    public void beginClearsThePreviousResult() {
+        ResultEncoder encoder = new ResultEncoder(ResultEncoder.SCHEMA_LEGACY);
+        encoder.begin("BARCODE").putValue("value", "1").putOutline(OUTLINE);
+        encoder.begin("BARCODE");
+
+        assertEquals("{}", encoder.encode().toString());
+        assertNull(encoder.getValue());
+        assertNull(encoder.encode().getValue());
+    }
+
+    @Test
+    public void incompleteOutlinesAreIgnored() {
+        ResultEncoder encoder = new ResultEncoder(ResultEncoder.SCHEMA_COMPACT);
+        encoder.begin("BARCODE").putOutline(OUTLINE.subList(0, 3)).putOutline(null);
+
+        assertFalse(encoder.encode().toString().contains("outline"));
+    }
+
+    @Test
+    public void valuesAreEncodedLikeJsonObject() throws Exception {
+        JSONObject nested = new JSONObject().put("x", 1);
+        ResultEncoder encoder = new ResultEncoder(ResultEncoder.SCHEMA_LEGACY);
+        encoder.begin("BARCODE")
+                .put("text", "quote \" slash / backslash \\ tab \t newline \n bell \u0007 umlaut ä")
+                .put("integralFloat", 2.0f)
+                .put("fraction", 0.5)
+                .put("long", 12345678901L)
+                .put("nan", Double.NaN)
+                .put("flag", true)
+                .put("null", null)
+                .put("jsonNull", JSONObject.NULL)
+                .put("object", nested)
+                .put("array", new JSONArray().put("a").put(2))
+                .put("other", new StringBuilder("sb"));
+
+        String encoded = encoder.encode().toString();
+        JSONObject json = new JSONObject(encoded);
+
+        assertEquals("quote \" slash / backslash \\ tab \t newline \n bell \u0007 umlaut ä",
+                json.getString("text"));
+        assertTrue(encoded.contains("\"integralFloat\":2,"));
+        assertEquals(0.5, json.getDouble("fraction"), 0);
+        assertEquals(12345678901L, json.getLong("long"));
+        assertTrue(json.isNull("nan"));
+        assertTrue(json.getBoolean("flag"));
+        assertTrue(json.isNull("null"));
+        assertTrue(json.isNull("jsonNull"));
+        assertEquals(1, json.getJSONObject("object").getInt("x"));
+        assertEquals(2, json.getJSONArray("array").getInt(1));
+        assertEquals("sb", json.getString("other"));
+    }
+
+    @Test
+    public void putAllCopiesEveryField() throws Exception {
+        ResultEncoder encoder = new ResultEncoder(ResultEncoder.SCHEMA_LEGACY);
+        encoder.begin("MRZ").putAll(new JSONObject("{\"surname\":\"DOE\",\"givenNames\":\"JOHN\"}"));
+
+        assertEquals("DOE", encoder.get("surname"));
+        assertEquals("JOHN", encoder.get("givenNames"));
+        encoder.remove("surname");
+        assertNull(encoder.get("surname"));
+    }
+}
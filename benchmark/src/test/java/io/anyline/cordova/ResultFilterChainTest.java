@@ -0,0 +1,172 @@
+/*
+ * Anyline Cordova Plugin
+ * ResultFilterChainTest.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResultFilterChainTest {
+
+    // set by the static initializer of NoStage, reading a field of NoStage would initialize it
+    private static boolean noStageInitialized;
+
+    @Before
+    public void setUp() {
+        ResultFilterChain.resetStats();
+    }
+
+    @Test
+    public void noFiltersNeedNoChain() throws Exception {
+        assertNull(ResultFilterChain.fromJson((String) null));
+        assertNull(ResultFilterChain.fromJson("[]"));
+    }
+
+    @Test
+    public void normalizeRunsBeforeTheValidators() throws Exception {
+        ResultFilterChain chain = ResultFilterChain.fromJson("["
+                + "{\"type\":\"normalize\",\"removeWhitespace\":true,\"case\":\"upper\",\"remove\":\"[-.]\"},"
+                + "{\"type\":\"length\",\"min\":6,\"max\":6},"
+                + "{\"type\":\"regex\",\"pattern\":\"[A-Z]{2}[0-9]{4}\"}]");
+
+        ResultEncoder result = result("BARCODE", " ab-12 3.4 ");
+        assertTrue(chain.process(result));
+        assertEquals("AB1234", result.getValue());
+
+        assertFalse(chain.process(result("BARCODE", "ab-123")));
+        assertFalse(chain.process(result("BARCODE", "123456")));
+    }
+
+    @Test
+    public void validatorsCanCheckAnotherField() throws Exception {
+        ResultFilterChain chain = ResultFilterChain.fromJson(
+                "[{\"type\":\"regex\",\"pattern\":\"EAN_13|QR_CODE\",\"field\":\"barcodeFormat\"}]");
+
+        assertTrue(chain.process(result("BARCODE", "1").put("barcodeFormat", "QR_CODE")));
+        assertFalse(chain.process(result("BARCODE", "1").put("barcodeFormat", "CODE_128")));
+        // a result without the field is rejected
+        assertFalse(chain.process(result("BARCODE", "1")));
+    }
+
+    @Test
+    public void confidencePassesResultsWithoutConfidence() throws Exception {
+        ResultFilterChain chain = ResultFilterChain.fromJson("[{\"type\":\"confidence\",\"min\":60}]");
+
+        assertTrue(chain.process(result("BARCODE", "1")));
+        assertTrue(chain.process(result("ANYLINE_OCR", "1").put("confidence", 60)));
+        assertFalse(chain.process(result("ANYLINE_OCR", "1").put("confidence", 59)));
+    }
+
+    @Test
+    public void stagesOnlyRunForTheirModules() throws Exception {
+        ResultFilterChain chain = ResultFilterChain.fromJson(
+                "[{\"type\":\"length\",\"min\":5,\"modules\":[\"MRZ\"]}]");
+
+        assertTrue(chain.process(result("BARCODE", "1")));
+        assertFalse(chain.process(result("MRZ", "1")));
+    }
+
+    @Test
+    public void statsCountPerModuleAndStageName() throws Exception {
+        ResultFilterChain chain = ResultFilterChain.fromJson("["
+                + "{\"type\":\"length\",\"min\":2,\"name\":\"minLength\"},"
+                + "{\"type\":\"regex\",\"pattern\":\"[0-9]+\"}]");
+
+        chain.process(result("BARCODE", "1"));
+        chain.process(result("BARCODE", "12"));
+        chain.process(result("BARCODE", "ab"));
+
+        JSONObject stats = ResultFilterChain.getStats().getJSONObject("modules").getJSONObject("BARCODE");
+        assertEquals(3, stats.getJSONObject("minLength").getInt("processed"));
+        assertEquals(1, stats.getJSONObject("minLength").getInt("rejected"));
+        assertEquals(2, stats.getJSONObject("regex").getInt("processed"));
+        assertEquals(1, stats.getJSONObject("regex").getInt("rejected"));
+    }
+
+    @Test
+    public void customStagesAreCreatedFromTheirClass() throws Exception {
+        ResultFilterChain chain = ResultFilterChain.fromJson("[{\"type\":\"custom\",\"class\":\""
+                + PrefixStage.class.getName() + "\",\"prefix\":\"40\"}]");
+
+        assertTrue(chain.process(result("BARCODE", "4012345")));
+        assertFalse(chain.process(result("BARCODE", "5012345")));
+    }
+
+    @Test
+    public void customClassesThatAreNoStageAreRejectedWithoutInitializingThem() throws Exception {
+        try {
+            ResultFilterChain.fromJson("[{\"type\":\"custom\",\"class\":\"" + NoStage.class.getName() + "\"}]");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("is no result filter stage"));
+        }
+        assertFalse(noStageInitialized);
+    }
+
+    @Test
+    public void registeredFactoriesCreateTheirType() throws Exception {
+        ResultFilterChain.registerFactory(new ResultFilterChain.StageFactory() {
+            @Override
+            public String getType() {
+                return "prefix";
+            }
+
+            @Override
+            public ResultFilterChain.Stage create(JSONObject config) {
+                return new PrefixStage(config);
+            }
+        });
+        ResultFilterChain chain = ResultFilterChain.fromJson("[{\"type\":\"prefix\",\"prefix\":\"97\"}]");
+
+        assertTrue(chain.process(result("BARCODE", "9781234")));
+        assertFalse(chain.process(result("BARCODE", "4012345")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownTypesAreRejected() throws Exception {
+        ResultFilterChain.fromJson("[{\"type\":\"checksum\"}]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPatternsAreRejected() throws Exception {
+        ResultFilterChain.fromJson("[{\"type\":\"regex\",\"pattern\":\"[0-9\"}]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLengthsAreRejected() throws Exception {
+        ResultFilterChain.fromJson("[{\"type\":\"length\",\"min\":5,\"max\":4}]");
+    }
+
+    private static ResultEncoder result(String module, String value) {
+        return new ResultEncoder(ResultEncoder.SCHEMA_LEGACY).begin(module).putValue("value", value);
+    }
+
+    public static class PrefixStage implements ResultFilterChain.Stage {
+        private final String prefix;
+
+        public PrefixStage(JSONObject config) {
+            prefix = config.optString("prefix");
+        }
+
+        @Override
+        public boolean process(ResultEncoder result) {
+            return String.valueOf(result.getValue()).startsWith(prefix);
+        }
+    }
+
+    public static class NoStage {
+        static {
+            noStageInitialized = true;
+        }
+    }
+}
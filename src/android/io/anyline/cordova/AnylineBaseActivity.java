@@ -11,18 +11,23 @@ package io.anyline.cordova;
 import android.app.Activity;
 import android.content.Intent;
 import android.hardware.Camera;
-import android.graphics.PointF;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.WindowManager;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.List;
+import java.io.IOException;
 
+import at.nineyards.anyline.AnylineDebugListener;
+import at.nineyards.anyline.camera.AnylineViewConfig;
 import at.nineyards.anyline.camera.CameraController;
 import at.nineyards.anyline.camera.CameraOpenListener;
+import at.nineyards.anyline.core.RunFailure;
+import at.nineyards.anyline.models.AnylineImage;
 
 public abstract class AnylineBaseActivity extends Activity
         implements CameraOpenListener, Thread.UncaughtExceptionHandler {
@@ -31,14 +36,308 @@ public abstract class AnylineBaseActivity extends Activity
 
     protected String licenseKey;
     protected String configJson;
+    protected String profileId;
+    protected ScanProfile profile;
+    private JSONObject parsedConfigJson;
+    // written on the ui thread when a resident activity is reused, read from the worker thread on results
+    protected volatile String requestId;
+
+    // builds, filters and reports the results, shared with the embedded scanner
+    protected ResultPipeline resultPipeline;
+    // the parts of the pipeline the modules use directly
+    protected ImageOutputPolicy imageOutputPolicy;
+    // only set if a consensus is configured, used in continuous scanning
+    protected ConsensusFilter consensusFilter;
+    // only set if a composite scan is configured
+    protected CompositeScan compositeScan;
+    protected FrameDiagnostics frameDiagnostics;
+
+    protected boolean persistentSession;
+    private long idleTimeout;
+    private String hostActivityClassName;
+    private final Handler sessionHandler = new Handler();
+
+    // finishes a parked activity if it was not reused within the idle timeout
+    private final Runnable idleTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Log.d(TAG, "Persistent session idle timeout reached, releasing scan view.");
+            WarmScanSession.detach(AnylineBaseActivity.this);
+            finish();
+        }
+    };
+
+    // reports a diagnostics sample to the request while the activity is in the foreground
+    private final Runnable diagnosticsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            ResultReporter.onResult(requestId, frameDiagnostics.sample(SystemClock.elapsedRealtime()), false);
+            sessionHandler.postDelayed(this, frameDiagnostics.getInterval());
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
-        licenseKey = getIntent().getExtras().getString(AnylinePlugin.EXTRA_LICENSE_KEY, "");
-        configJson = getIntent().getExtras().getString(AnylinePlugin.EXTRA_CONFIG_JSON, "");
+        Bundle extras = getIntent().getExtras();
+        licenseKey = extras.getString(AnylinePlugin.EXTRA_LICENSE_KEY, "");
+        configJson = extras.getString(AnylinePlugin.EXTRA_CONFIG_JSON, "");
+        profileId = extras.getString(AnylinePlugin.EXTRA_PROFILE_ID);
+        if (profileId != null) {
+            profile = ScanProfile.get(profileId);
+            if (profile != null) {
+                licenseKey = profile.getLicenseKey();
+            }
+        }
+        requestId = extras.getString(AnylinePlugin.EXTRA_REQUEST_ID);
+        ScanTracer.mark(requestId, ScanTracer.STAGE_ACTIVITY_CREATED);
+        resultPipeline = ResultPipeline.fromExtras(this, extras, getDefaultImageQuality());
+        imageOutputPolicy = resultPipeline.getImageOutputPolicy();
+        consensusFilter = resultPipeline.getConsensusFilter();
+        compositeScan = resultPipeline.getCompositeScan();
+        try {
+            frameDiagnostics = FrameDiagnostics.fromJson(extras.getString(AnylinePlugin.EXTRA_DIAGNOSTICS_JSON));
+        } catch (Exception e) {
+            // already validated by the plugin
+            Log.e(TAG, "Invalid diagnostics config, diagnostics are disabled.", e);
+        }
+
+        persistentSession = supportsPersistentSession()
+                && extras.getBoolean(AnylinePlugin.EXTRA_PERSISTENT_SESSION, false);
+        if (persistentSession) {
+            idleTimeout = extras.getLong(AnylinePlugin.EXTRA_SESSION_IDLE_TIMEOUT, WarmScanSession.DEFAULT_IDLE_TIMEOUT);
+            hostActivityClassName = extras.getString(AnylinePlugin.EXTRA_HOST_ACTIVITY);
+            WarmScanSession.attach(this, extras.getString(AnylinePlugin.EXTRA_SESSION_KEY));
+        }
+    }
+
+    /**
+     * @return the view config, parsed only once (or the one of the registered profile)
+     * @throws JSONException if the config is invalid or the profile is not registered
+     */
+    protected JSONObject getConfigJson() throws JSONException {
+        if (profileId != null) {
+            if (profile == null) {
+                throw new JSONException(Resources.getString(this, "error_unknown_profile") + profileId);
+            }
+            return profile.getViewConfigJson();
+        }
+        if (parsedConfigJson == null) {
+            parsedConfigJson = new JSONObject(configJson);
+        }
+        return parsedConfigJson;
+    }
+
+    /**
+     * @param json the view config (see {@link #getConfigJson()})
+     * @return the sdk view config, built from the json or the prebuilt one of the profile
+     */
+    protected AnylineViewConfig getAnylineViewConfig(JSONObject json) {
+        return profile != null ? profile.getViewConfig() : new AnylineViewConfig(this, json);
+    }
+
+    /**
+     * Called when a resident activity is brought back to the front for a new scan (persistent session mode).
+     * The scan view is already initialized, scanning is restarted in onResume. The state of the previous
+     * request (consensus history, sampled barcodes) is cleared, subclasses clear their own state.
+     */
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        requestId = intent.getStringExtra(AnylinePlugin.EXTRA_REQUEST_ID);
+        ScanTracer.mark(requestId, ScanTracer.STAGE_ACTIVITY_CREATED);
+        resultPipeline.clear();
+        sessionHandler.removeCallbacks(idleTimeoutRunnable);
+        Log.d(TAG, "Reusing resident scan session.");
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        sessionHandler.removeCallbacks(idleTimeoutRunnable);
+        if (frameDiagnostics != null) {
+            frameDiagnostics.reset();
+            frameDiagnostics.sample(SystemClock.elapsedRealtime());
+            sessionHandler.postDelayed(diagnosticsRunnable, frameDiagnostics.getInterval());
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        sessionHandler.removeCallbacks(diagnosticsRunnable);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        sessionHandler.removeCallbacks(idleTimeoutRunnable);
+        sessionHandler.removeCallbacks(diagnosticsRunnable);
+        WarmScanSession.detach(this);
+        if (resultPipeline != null) {
+            resultPipeline.release();
+        }
+    }
+
+    @Override
+    public void onBackPressed() {
+        if (persistentSession) {
+            ResultReporter.onCancel(requestId);
+            parkSession();
+        } else {
+            super.onBackPressed();
+        }
+    }
+
+    /**
+     * @return the image quality used if the image output config sets none
+     */
+    protected int getDefaultImageQuality() {
+        return 90;
+    }
+
+    /**
+     * @return true if the activity can be kept resident between scans, override to opt out
+     */
+    protected boolean supportsPersistentSession() {
+        return true;
+    }
+
+    /**
+     * Starts a new result. The returned encoder is reused for every result of this activity, so it must
+     * only be used until the result is reported.
+     *
+     * @param module the module of the result (e.g. BARCODE)
+     */
+    protected ResultEncoder beginResult(String module) {
+        return resultPipeline.begin(module);
+    }
+
+    /**
+     * @return a debug listener for the scan view, it feeds the frame diagnostics (if enabled) and
+     * {@link #onFrameProcessed()}
+     */
+    protected AnylineDebugListener createDebugListener() {
+        return new AnylineDebugListener() {
+            @Override
+            public void onDebug(String name, Object value) {
+                onFrameProcessed();
+                FrameDiagnostics diagnostics = frameDiagnostics;
+                if (diagnostics == null || value == null) {
+                    return;
+                }
+                if (BRIGHTNESS_VARIABLE_NAME.equals(name) && value.getClass().equals(BRIGHTNESS_VARIABLE_CLASS)) {
+                    diagnostics.onBrightness(BRIGHTNESS_VARIABLE_CLASS.cast(value).doubleValue());
+                } else if (CONTOURS_VARIABLE_NAME.equals(name)) {
+                    diagnostics.onContours();
+                }
+            }
+
+            @Override
+            public void onRunSkipped(RunFailure runFailure) {
+                onFrameProcessed();
+                FrameDiagnostics diagnostics = frameDiagnostics;
+                if (diagnostics != null) {
+                    diagnostics.onRunSkipped(runFailure == null ? null : runFailure.toString());
+                }
+            }
+        };
+    }
+
+    /**
+     * Called for every frame the scan view processed. Only modules with a debug listener report frames
+     * (ocr, energy), the other scans have no firstFrameMs.
+     */
+    protected void onFrameProcessed() {
+        ScanTracer.mark(requestId, ScanTracer.STAGE_FIRST_FRAME);
+    }
+
+    /**
+     * @see ResultPipeline#passesFilters
+     */
+    protected boolean passesFilters(ResultEncoder result) {
+        return resultPipeline.passesFilters(result);
+    }
+
+    /**
+     * @see ResultPipeline#passesConsensus
+     */
+    protected boolean passesConsensus(ResultEncoder result, boolean cancelOnResult) {
+        return resultPipeline.passesConsensus(result, cancelOnResult);
+    }
+
+    /**
+     * @see ResultPipeline#applyComposite
+     */
+    protected boolean applyComposite(ResultEncoder result, AnylineImage frame) {
+        return resultPipeline.applyComposite(result, frame);
+    }
+
+    /**
+     * @see ResultPipeline#saveImage
+     */
+    protected void saveImage(ResultEncoder jsonResult, String key, AnylineImage image)
+            throws IOException, JSONException {
+        resultPipeline.saveImage(requestId, jsonResult, key, image);
+    }
+
+    /**
+     * @see ResultPipeline#saveCutoutImage
+     */
+    protected void saveCutoutImage(ResultEncoder jsonResult, AnylineImage image)
+            throws IOException, JSONException {
+        resultPipeline.saveCutoutImage(requestId, jsonResult, image);
+    }
+
+    /**
+     * Builds, filters and reports a result of a {@link ScanEngine} (see {@link ResultPipeline#buildEngineResult}).
+     *
+     * @param module the module of the result (e.g. BARCODE)
+     */
+    protected void reportEngineResult(String module, ScanEngine.Result result, boolean cancelOnResult) {
+        ResultEncoder jsonResult = resultPipeline.buildEngineResult(requestId, module, result, cancelOnResult);
+        if (jsonResult != null) {
+            reportResult(jsonResult, cancelOnResult);
+        }
+    }
+
+    /**
+     * Serializes the result, reports it to the plugin and ends the scan if cancelOnResult is set.
+     */
+    protected void reportResult(ResultEncoder result, boolean cancelOnResult) {
+        resultPipeline.deliver(requestId, result, cancelOnResult);
+        if (cancelOnResult) {
+            finishScan();
+        }
+    }
+
+    /**
+     * Ends the scan successfully. In persistent session mode the activity is parked instead of finished.
+     */
+    protected void finishScan() {
+        if (persistentSession) {
+            parkSession();
+        } else {
+            setResult(AnylinePlugin.RESULT_OK);
+            finish();
+        }
+    }
+
+    /**
+     * Brings the cordova activity back to the front and keeps this activity (and its scan view) alive
+     * until it is reused or the idle timeout is reached.
+     */
+    private void parkSession() {
+        sessionHandler.removeCallbacks(idleTimeoutRunnable);
+        sessionHandler.postDelayed(idleTimeoutRunnable, idleTimeout);
+
+        Intent hostIntent = new Intent();
+        hostIntent.setClassName(this, hostActivityClassName);
+        hostIntent.addFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
+        startActivity(hostIntent);
     }
 
     /**
@@ -63,6 +362,13 @@ public abstract class AnylineBaseActivity extends Activity
     }
 
     protected void finishWithError(String errorMessage) {
+        if (persistentSession) {
+            // not started for result, so report the error directly
+            WarmScanSession.detach(this);
+            ResultReporter.onError(requestId, errorMessage);
+            finish();
+            return;
+        }
         Intent data = new Intent();
         data.putExtra(AnylinePlugin.EXTRA_ERROR_MESSAGE, errorMessage);
         setResult(AnylinePlugin.RESULT_ERROR, data);
@@ -72,6 +378,7 @@ public abstract class AnylineBaseActivity extends Activity
     @Override
     public void onCameraOpened(CameraController cameraController, int width, int height) {
         Log.d(TAG, "Camera opened. Frame size " + width + " x " + height + ".");
+        ScanTracer.mark(requestId, ScanTracer.STAGE_CAMERA_OPENED);
     }
 
     @Override
@@ -79,39 +386,4 @@ public abstract class AnylineBaseActivity extends Activity
         finishWithError(Resources.getString(this, "error_accessing_camera") + "\n" + e.getLocalizedMessage());
     }
 
-    protected String jsonForOutline(List<PointF> pointList) {
-
-        JSONObject upLeft = new JSONObject();
-        JSONObject upRight = new JSONObject();
-        JSONObject downRight = new JSONObject();
-        JSONObject downLeft = new JSONObject();
-        JSONObject outline = new JSONObject();
-
-        try {
-            upLeft.put("x", pointList.get(0).x);
-            upLeft.put("y", pointList.get(0).y);
-
-            upRight.put("x", pointList.get(1).x);
-            upRight.put("y", pointList.get(1).y);
-
-            downRight.put("x", pointList.get(2).x);
-            downRight.put("y", pointList.get(2).y);
-
-            downLeft.put("x", pointList.get(3).x);
-            downLeft.put("y", pointList.get(3).y);
-
-            outline.put("upLeft", upLeft);
-            outline.put("upRight", upRight);
-            outline.put("downRight", downRight);
-            outline.put("downLeft", downLeft);
-
-
-        } catch (JSONException e) {
-            Log.d(TAG, e.toString());
-            e.printStackTrace();
-        }
-
-        return outline.toString();
-    }
-
 }
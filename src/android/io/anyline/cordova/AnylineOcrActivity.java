@@ -18,27 +18,23 @@ import org.json.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
 
-import at.nineyards.anyline.AnylineDebugListener;
-import at.nineyards.anyline.core.RunFailure;
-import at.nineyards.anyline.core.Vector_Contour;
 import at.nineyards.anyline.modules.ocr.AnylineOcrResultListener;
 
 
-import at.nineyards.anyline.camera.AnylineViewConfig;
 import at.nineyards.anyline.modules.ocr.AnylineOcrConfig;
 import at.nineyards.anyline.modules.ocr.AnylineOcrResult;
 import at.nineyards.anyline.modules.ocr.AnylineOcrScanView;
-import at.nineyards.anyline.util.AssetUtil;
-import at.nineyards.anyline.util.TempFileUtil;
 
 public class AnylineOcrActivity extends AnylineBaseActivity {
     private static final String TAG = AnylineOcrActivity.class.getSimpleName();
 
     private AnylineOcrScanView anylineOcrScanView;
     private boolean drawTextOutline;
+    private boolean anylineInitialized;
+    private boolean resumed;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -47,106 +43,128 @@ public class AnylineOcrActivity extends AnylineBaseActivity {
         String ocrConfigString = getIntent().getExtras().getString(AnylinePlugin.EXTRA_OCR_CONFIG_JSON, "");
 
         anylineOcrScanView = new AnylineOcrScanView(this, null);
+        final List<String> traineddataFiles;
+        final AnylineOcrConfig ocrConfig;
         try {
-            JSONObject json = new JSONObject(configJson);
-            anylineOcrScanView.setConfig(new AnylineViewConfig(this, json));
+            JSONObject json = getConfigJson();
+            anylineOcrScanView.setConfig(getAnylineViewConfig(json));
 
             if (json.has("reportingEnabled")) {
                 anylineOcrScanView.setReportingEnabled(json.optBoolean("reportingEnabled", true));
             }
 
-            json = new JSONObject(ocrConfigString);
-            AnylineOcrConfig ocrConfig = new AnylineOcrConfig(json);
-
-            //get custom Ale File
-            if (json.has("aleFile")) {
-                String customCmdFile = json.getString("aleFile");
-                ocrConfig.setCustomCmdFile(customCmdFile);
-                if (ocrConfig.getCustomCmdFile() != null) {
-                    //custom cmd file in cordova is relative to www, so add www
-                    ocrConfig.setCustomCmdFile("www/" + ocrConfig.getCustomCmdFile());
-                }
-            }
-    
-            JSONArray tesseractArray = json.optJSONArray("traineddataFiles");
-            if (tesseractArray != null) {
-                String[] languages = new String[tesseractArray.length()];
-                for (int i = 0; i < languages.length; i++) {
-                    long start = System.currentTimeMillis();
-                    File dirToCopyTo = new File(this.getFilesDir(), "anyline/module_anyline_ocr/tessdata/");
-                    String traineddataFilePath = tesseractArray.getString(i);
-
-                    int lastFileSeparatorIndex = traineddataFilePath.lastIndexOf(File.separator);
-                    int lastDotIndex = traineddataFilePath.lastIndexOf(".");
-                    if (lastDotIndex > lastFileSeparatorIndex) {
-                        //start after the "/" or with 0 if no fileseperator was found
-                        languages[i] = traineddataFilePath.substring(lastFileSeparatorIndex + 1, lastDotIndex);
-                    } else {
-                        //maybe it should just fail here, case propably not useful
-                        languages[i] = traineddataFilePath.substring(lastFileSeparatorIndex + 1);
-                    }
-                    AssetUtil.copyAssetFileWithoutPath(this, "www/" + traineddataFilePath, dirToCopyTo, false);
-                    Log.v(TAG, "Copy traineddata duration: " + (System.currentTimeMillis() - start));
-                }
-                ocrConfig.setTesseractLanguages(languages);
+            if (profile != null && profile.getOcrConfig() != null) {
+                json = profile.getModuleConfigJson();
+                ocrConfig = profile.getOcrConfig();
+                traineddataFiles = profile.getTraineddataFiles();
+            } else {
+                json = new JSONObject(ocrConfigString);
+                traineddataFiles = new ArrayList<String>();
+                ocrConfig = buildOcrConfig(json, traineddataFiles);
             }
 
             drawTextOutline = json.optBoolean("drawTextOutline", true);
 
-            anylineOcrScanView.setAnylineOcrConfig(ocrConfig);
-
         } catch (Exception e) {
             // JSONException or IllegalArgumentException is possible for errors in json
-            // IOException is possible for errors during asset copying
             finishWithError(Resources.getString(this, "error_invalid_json_data") + "\n" + e.getLocalizedMessage());
             return;
         }
 
         setContentView(anylineOcrScanView);
 
-        setDebugListener();
-        initAnyline();
+        // the traineddata files are usually installed already (at plugin load or by an earlier scan), otherwise
+        // the camera preview is shown while they are copied in the background
+        AssetInstaller.getInstance(this).installTraineddata(traineddataFiles,
+                new AssetInstaller.OnInstalledListener() {
+                    @Override
+                    public void onInstalled() {
+                        if (isFinishing()) {
+                            return;
+                        }
+                        anylineOcrScanView.setAnylineOcrConfig(ocrConfig);
+                        setDebugListener();
+                        initAnyline();
+                        anylineInitialized = true;
+                        if (resumed) {
+                            anylineOcrScanView.startScanning();
+                        }
+                    }
+
+                    @Override
+                    public void onInstallError(IOException e) {
+                        finishWithError(Resources.getString(AnylineOcrActivity.this, "error_invalid_json_data")
+                                + "\n" + e.getLocalizedMessage());
+                    }
+                });
+    }
+
+    /**
+     * Builds the ocr config from the module config of the plugin.
+     *
+     * @param json             the module config
+     * @param traineddataFiles the traineddata files of the config (relative to www) are added to this list
+     */
+    static AnylineOcrConfig buildOcrConfig(JSONObject json, List<String> traineddataFiles) throws JSONException {
+        AnylineOcrConfig ocrConfig = new AnylineOcrConfig(json);
+
+        //get custom Ale File
+        if (json.has("aleFile")) {
+            String customCmdFile = json.getString("aleFile");
+            ocrConfig.setCustomCmdFile(customCmdFile);
+            if (ocrConfig.getCustomCmdFile() != null) {
+                //custom cmd file in cordova is relative to www, so add www
+                ocrConfig.setCustomCmdFile("www/" + ocrConfig.getCustomCmdFile());
+            }
+        }
+
+        JSONArray tesseractArray = json.optJSONArray("traineddataFiles");
+        if (tesseractArray != null) {
+            String[] languages = new String[tesseractArray.length()];
+            for (int i = 0; i < languages.length; i++) {
+                String traineddataFilePath = tesseractArray.getString(i);
+
+                int lastFileSeparatorIndex = traineddataFilePath.lastIndexOf(File.separator);
+                int lastDotIndex = traineddataFilePath.lastIndexOf(".");
+                if (lastDotIndex > lastFileSeparatorIndex) {
+                    //start after the "/" or with 0 if no fileseperator was found
+                    languages[i] = traineddataFilePath.substring(lastFileSeparatorIndex + 1, lastDotIndex);
+                } else {
+                    //maybe it should just fail here, case propably not useful
+                    languages[i] = traineddataFilePath.substring(lastFileSeparatorIndex + 1);
+                }
+                traineddataFiles.add(traineddataFilePath);
+            }
+            ocrConfig.setTesseractLanguages(languages);
+        }
+        return ocrConfig;
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        anylineOcrScanView.startScanning();
+        resumed = true;
+        if (anylineInitialized) {
+            anylineOcrScanView.startScanning();
+        }
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        resumed = false;
 
-        anylineOcrScanView.cancelScanning();
-        anylineOcrScanView.releaseCameraInBackground();
+        // the scanner is initialized once the traineddata files are installed, the activity may pause before
+        if (anylineInitialized) {
+            anylineOcrScanView.cancelScanning();
+            anylineOcrScanView.releaseCameraInBackground();
+        }
     }
 
 
 
     private void setDebugListener() {
-        anylineOcrScanView.setDebugListener(new AnylineDebugListener() {
-            @Override
-            public void onDebug(String name, Object value) {
-
-                if(name.equals(AnylineDebugListener.BRIGHTNESS_VARIABLE_NAME) && value.getClass().equals
-                        (AnylineDebugListener.BRIGHTNESS_VARIABLE_CLASS)){
-                    Double val = AnylineDebugListener.BRIGHTNESS_VARIABLE_CLASS.cast(value);
-
-                    Log.d(TAG, name +": " +val.doubleValue());
-                }
-                if(name.equals(CONTOURS_VARIABLE_NAME) && value.getClass().equals(CONTOURS_VARIABLE_CLASS)){
-                    Vector_Contour contour = CONTOURS_VARIABLE_CLASS.cast(value);
-                    Log.d(TAG, name +": " +contour.toString());
-                }
-
-            }
-
-            @Override
-            public void onRunSkipped(RunFailure runFailure) {
-                Log.w(TAG, "run skipped: " +runFailure);
-            }
-        });
+        anylineOcrScanView.setDebugListener(createDebugListener());
     }
 
 
@@ -158,19 +176,25 @@ public class AnylineOcrActivity extends AnylineBaseActivity {
             @Override
             public void onResult(AnylineOcrResult result) {
 
-                JSONObject jsonResult = new JSONObject();
+                ResultEncoder jsonResult = beginResult("ANYLINE_OCR");
 
                 try {
-                    jsonResult.put("text", result.getResult().trim());
+                    jsonResult.putValue("text", result.getResult().trim());
 
-                    jsonResult.put("outline", jsonForOutline(result.getOutline()));
+                    jsonResult.putOutline(result.getOutline());
                     jsonResult.put("confidence", result.getConfidence());
 
+                    if (!passesFilters(jsonResult)) {
+                        return;
+                    }
+                    if (!applyComposite(jsonResult, result.getFullImage())) {
+                        return;
+                    }
+                    if (!passesConsensus(jsonResult, anylineOcrScanView.getConfig().isCancelOnResult())) {
+                        return;
+                    }
 
-                    File imageFile = TempFileUtil.createTempFileCheckCache(AnylineOcrActivity.this,
-                            UUID.randomUUID().toString(), ".jpg");
-                    result.getCutoutImage().save(imageFile, 90);
-                    jsonResult.put("imagePath", imageFile.getAbsolutePath());
+                    saveCutoutImage(jsonResult, result.getCutoutImage());
 
                 } catch (IOException e) {
                     Log.e(TAG, "Image file could not be saved.", e);
@@ -180,13 +204,7 @@ public class AnylineOcrActivity extends AnylineBaseActivity {
                     Log.e(TAG, "Error while puting result data to json.", jsonException);
                 }
 
-                if (anylineOcrScanView.getConfig().isCancelOnResult()) {
-                    ResultReporter.onResult(jsonResult, true);
-                    setResult(AnylinePlugin.RESULT_OK);
-                    finish();
-                } else {
-                    ResultReporter.onResult(jsonResult, false);
-                }
+                reportResult(jsonResult, anylineOcrScanView.getConfig().isCancelOnResult());
             }
 
         });
@@ -11,21 +11,24 @@ package io.anyline.cordova;
 
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.graphics.Color;
 import android.os.Build;
 import android.util.Log;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaPlugin;
-import org.apache.cordova.PluginResult;
-import org.apache.cordova.PluginResult.Status;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import at.nineyards.anyline.modules.energy.EnergyScanView;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
-
-public class AnylinePlugin extends CordovaPlugin implements ResultReporter.OnResultListener {
+public class AnylinePlugin extends CordovaPlugin {
 
     private static final String TAG = AnylinePlugin.class.getSimpleName();
 
@@ -35,6 +38,51 @@ public class AnylinePlugin extends CordovaPlugin implements ResultReporter.OnRes
     public static final String EXTRA_SCAN_MODE = "EXTRA_SCAN_MODE";
     public static final String EXTRA_ERROR_MESSAGE = "EXTRA_ERROR_MESSAGE";
     public static final String EXTRA_SCAN_NATIVE_BARCODE = "EXTRA_SCAN_NATIVE_BARCOE";
+    public static final String EXTRA_PERSISTENT_SESSION = "EXTRA_PERSISTENT_SESSION";
+    public static final String EXTRA_SESSION_IDLE_TIMEOUT = "EXTRA_SESSION_IDLE_TIMEOUT";
+    public static final String EXTRA_SESSION_KEY = "EXTRA_SESSION_KEY";
+    public static final String EXTRA_HOST_ACTIVITY = "EXTRA_HOST_ACTIVITY";
+    public static final String EXTRA_REQUEST_ID = "EXTRA_REQUEST_ID";
+    public static final String EXTRA_ASYNC_IMAGE_SAVE = "EXTRA_ASYNC_IMAGE_SAVE";
+    public static final String EXTRA_RESULT_SCHEMA = "EXTRA_RESULT_SCHEMA";
+    public static final String EXTRA_CONSENSUS_JSON = "EXTRA_CONSENSUS_JSON";
+    public static final String EXTRA_PROFILE_ID = "EXTRA_PROFILE_ID";
+    public static final String EXTRA_DIAGNOSTICS_JSON = "EXTRA_DIAGNOSTICS_JSON";
+    public static final String EXTRA_COMPOSITE_JSON = "EXTRA_COMPOSITE_JSON";
+    public static final String EXTRA_METER_PRESET_JSON = "EXTRA_METER_PRESET_JSON";
+    public static final String EXTRA_RESULT_FILTERS_JSON = "EXTRA_RESULT_FILTERS_JSON";
+    public static final String EXTRA_NATIVE_BARCODE_ACCUMULATION_JSON = "EXTRA_NATIVE_BARCODE_ACCUMULATION_JSON";
+    public static final String EXTRA_IMAGE_OUTPUT_JSON = "EXTRA_IMAGE_OUTPUT_JSON";
+    public static final String EXTRA_IMAGE_DELIVERY_MODE = "EXTRA_IMAGE_DELIVERY_MODE";
+    public static final String EXTRA_IMAGE_DELIVERY_MAX_DIMENSION = "EXTRA_IMAGE_DELIVERY_MAX_DIMENSION";
+    public static final String EXTRA_IMAGE_DELIVERY_QUALITY = "EXTRA_IMAGE_DELIVERY_QUALITY";
+
+    public static final String ACTION_GET_IMAGE_WRITER_METRICS = "getImageWriterMetrics";
+    public static final String ACTION_CONFIGURE_IMAGE_CACHE = "configureImageCache";
+    public static final String ACTION_GET_IMAGE_CACHE_STATS = "getImageCacheStats";
+    public static final String ACTION_RELEASE_IMAGE = "releaseImage";
+    public static final String ACTION_TOUCH_IMAGE = "touchImage";
+    public static final String ACTION_CLEAR_IMAGES = "clearImages";
+    public static final String ACTION_ACK_RESULTS = "ackResults";
+    public static final String ACTION_GET_DELIVERY_STATS = "getDeliveryStats";
+    public static final String ACTION_INSTALL_TRAINEDDATA = "installTraineddata";
+    public static final String ACTION_REGISTER_PROFILE = "registerProfile";
+    public static final String ACTION_UNREGISTER_PROFILE = "unregisterProfile";
+    public static final String ACTION_PREWARM = "prewarm";
+    public static final String ACTION_GET_METRICS = "getMetrics";
+    public static final String ACTION_RESET_METRICS = "resetMetrics";
+    public static final String ACTION_SCAN_IMAGES = "scanImages";
+    public static final String ACTION_CANCEL_SCAN_IMAGES = "cancelScanImages";
+    public static final String ACTION_HIDE_EMBEDDED = "hideEmbedded";
+    public static final String ACTION_SET_EMBEDDED_RECT = "setEmbeddedRect";
+    public static final String ACTION_CLOSE_EMBEDDED = "closeEmbedded";
+    public static final String ACTION_GET_RESULT_IMAGE = "getResultImage";
+    public static final String ACTION_RELEASE_RESULT_IMAGE = "releaseResultImage";
+    public static final String ACTION_CONFIGURE_IMAGE_POOL = "configureImagePool";
+    public static final String ACTION_GET_IMAGE_POOL_STATS = "getImagePoolStats";
+    public static final String ACTION_GET_BITMAP_POOL_STATS = "getBitmapPoolStats";
+    public static final String ACTION_GET_FILTER_STATS = "getFilterStats";
+    public static final String ACTION_RESET_FILTER_STATS = "resetFilterStats";
 
     public static final int RESULT_CANCELED = 0;
     public static final int RESULT_OK = 1;
@@ -49,23 +97,51 @@ public class AnylinePlugin extends CordovaPlugin implements ResultReporter.OnRes
     public static final int DIGITAL_METER = 6;
     public static final int ANALOG_METER = 7;
 
-    private CallbackContext mCallbackContext;
-    private String mAction;
-    private JSONArray mArgs;
+    // request codes are used for permission requests and activity results, so they have to fit into 16 bit
+    private static final int REQUEST_CODE_MASK = 0xffff;
+
+    private final AtomicInteger requestCounter = new AtomicInteger();
+    private final Map<Integer, ScanRequest> pendingPermissionRequests = new ConcurrentHashMap<Integer, ScanRequest>();
+    // created on the main thread when the first embedded scan is started
+    private EmbeddedScanner embeddedScanner;
+
+    @Override
+    protected void pluginInitialize() {
+        // install the configured traineddata files before the first ocr scan, so it does not wait for them
+        String traineddataFiles = preferences.getString(AssetInstaller.PREFERENCE_TRAINEDDATA_FILES, null);
+        if (traineddataFiles != null && traineddataFiles.trim().length() > 0) {
+            List<String> files = new ArrayList<String>();
+            for (String file : traineddataFiles.split(",")) {
+                if (file.trim().length() > 0) {
+                    files.add(file.trim());
+                }
+            }
+            AssetInstaller.getInstance(cordova.getActivity()).installTraineddata(files, null);
+        }
+    }
 
     @Override
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) {
-        mCallbackContext = callbackContext;
-        mAction = action;
-        mArgs = args;
-        Log.d(TAG, "Starting action: " + action);
+        if (executeUtilityAction(action, args, callbackContext)) {
+            return true;
+        }
+        if ("ANYLINE_OCR".equals(action)) {
+            // start copying the traineddata files while the permission is checked and the activity is started
+            installTraineddata(args.optJSONObject(2));
+        }
+
+        final ScanRequest request = new ScanRequest(requestCounter.incrementAndGet() & REQUEST_CODE_MASK,
+                action, args, callbackContext);
+        ResultReporter.register(request.getId(), request);
+        ScanTracer.begin(request.getId(), action);
+        Log.d(TAG, "Starting action: " + action + " (request " + request.getId() + ")");
 
         cordova.getThreadPool().execute(new Runnable() {
             public void run() {
                 try {
-                    checkPermission();
+                    checkPermission(request);
                 } catch (Exception e) {
-                    mCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Camera permission denied"));
+                    ResultReporter.onError(request.getId(), "Camera permission denied");
                 }
             }
         });
@@ -73,175 +149,566 @@ public class AnylinePlugin extends CordovaPlugin implements ResultReporter.OnRes
         return true;
     }
 
-    private void checkPermission() {
+    /**
+     * Handles the actions that do not start a scan (and therefore need no camera permission).
+     *
+     * @return true if the action was handled
+     */
+    private boolean executeUtilityAction(String action, JSONArray args, CallbackContext callbackContext) {
+        if (ACTION_GET_IMAGE_WRITER_METRICS.equals(action)) {
+            callbackContext.success(ImageWriter.getInstance().getMetrics());
+            return true;
+        }
+
+        if (ACTION_ACK_RESULTS.equals(action)) {
+            callbackContext.success(ResultBatcher.acknowledge(args.optString(0)) ? 1 : 0);
+            return true;
+        }
+        if (ACTION_GET_DELIVERY_STATS.equals(action)) {
+            callbackContext.success(ResultBatcher.getStats());
+            return true;
+        }
+
+        if (ACTION_GET_METRICS.equals(action)) {
+            callbackContext.success(ScanTracer.getMetrics());
+            return true;
+        }
+        if (ACTION_RESET_METRICS.equals(action)) {
+            ScanTracer.reset();
+            callbackContext.success();
+            return true;
+        }
+        if (ACTION_GET_RESULT_IMAGE.equals(action)) {
+            getResultImage(args, callbackContext);
+            return true;
+        }
+        if (ACTION_RELEASE_RESULT_IMAGE.equals(action)) {
+            int released = 0;
+            for (int i = 0; i < args.length(); i++) {
+                if (ImagePool.getInstance().release(args.optString(i))) {
+                    released++;
+                }
+            }
+            callbackContext.success(released);
+            return true;
+        }
+        if (ACTION_CONFIGURE_IMAGE_POOL.equals(action)) {
+            JSONObject config = args.optJSONObject(0);
+            if (config != null) {
+                ImagePool.getInstance().configure(config);
+            }
+            callbackContext.success(ImagePool.getInstance().getStats());
+            return true;
+        }
+        if (ACTION_GET_IMAGE_POOL_STATS.equals(action)) {
+            callbackContext.success(ImagePool.getInstance().getStats());
+            return true;
+        }
+        if (ACTION_GET_BITMAP_POOL_STATS.equals(action)) {
+            callbackContext.success(BitmapPool.getInstance().getStats());
+            return true;
+        }
+        if (ACTION_GET_FILTER_STATS.equals(action)) {
+            callbackContext.success(ResultFilterChain.getStats());
+            return true;
+        }
+        if (ACTION_RESET_FILTER_STATS.equals(action)) {
+            ResultFilterChain.resetStats();
+            callbackContext.success();
+            return true;
+        }
+        if (ACTION_SCAN_IMAGES.equals(action)) {
+            String mode = args.optString(0);
+            JSONArray paths = args.optJSONArray(1);
+            if (!ImageBatchScanner.isSupported(mode)) {
+                callbackContext.error(Resources.getString(cordova.getActivity(), "error_mode_not_supported_for_images")
+                        + mode);
+                return true;
+            }
+            if (paths == null) {
+                callbackContext.error(Resources.getString(cordova.getActivity(), "error_invalid_json_data"));
+                return true;
+            }
+            JSONObject options = args.optJSONObject(2);
+            ScanRequest request = new ScanRequest(requestCounter.incrementAndGet() & REQUEST_CODE_MASK,
+                    action, args, callbackContext);
+            request.setBatcher(ResultBatcher.fromJson(request,
+                    options == null ? null : options.optJSONObject(ResultBatcher.DELIVERY)));
+            ResultReporter.register(request.getId(), request);
+            ImageBatchScanner.start(cordova.getActivity(), request.getId(), paths, options);
+            return true;
+        }
+        if (ACTION_CANCEL_SCAN_IMAGES.equals(action)) {
+            callbackContext.success(ImageBatchScanner.cancel(args.optString(0)) ? 1 : 0);
+            return true;
+        }
+        if (ACTION_HIDE_EMBEDDED.equals(action) || ACTION_SET_EMBEDDED_RECT.equals(action)
+                || ACTION_CLOSE_EMBEDDED.equals(action)) {
+            executeEmbeddedAction(action, args, callbackContext);
+            return true;
+        }
+        if (ACTION_PREWARM.equals(action)) {
+            final CallbackContext callback = callbackContext;
+            final JSONArray modes = args.optJSONArray(0) != null ? args.optJSONArray(0) : new JSONArray();
+            final JSONObject options = args.optJSONObject(1);
+            cordova.getThreadPool().execute(new Runnable() {
+                public void run() {
+                    Prewarmer.prewarm(cordova.getActivity(), modes, options, new Prewarmer.OnPrewarmedListener() {
+                        @Override
+                        public void onPrewarmed(JSONObject report) {
+                            callback.success(report);
+                        }
+                    });
+                }
+            });
+            return true;
+        }
+        if (ACTION_REGISTER_PROFILE.equals(action)) {
+            try {
+                ScanProfile profile = ScanProfile.register(cordova.getActivity(), args.getString(0),
+                        args.getString(1), args.getJSONObject(2), args.optJSONObject(3),
+                        args.isNull(4) ? null : args.optString(4));
+                // the traineddata files of the profile can be installed right away
+                if (!profile.getTraineddataFiles().isEmpty()) {
+                    AssetInstaller.getInstance(cordova.getActivity())
+                            .installTraineddata(profile.getTraineddataFiles(), null);
+                }
+                callbackContext.success(profile.getId());
+            } catch (Exception e) {
+                //JSONException or IllegalArgumentException is possible, return it to javascript
+                callbackContext.error(Resources.getString(cordova.getActivity(), "error_invalid_json_data")
+                        + "\n" + e.getLocalizedMessage());
+            }
+            return true;
+        }
+        if (ACTION_UNREGISTER_PROFILE.equals(action)) {
+            callbackContext.success(ScanProfile.unregister(args.optString(0)) ? 1 : 0);
+            return true;
+        }
+        if (ACTION_INSTALL_TRAINEDDATA.equals(action)) {
+            final CallbackContext callback = callbackContext;
+            List<String> files = new ArrayList<String>();
+            for (int i = 0; i < args.length(); i++) {
+                files.add(args.optString(i));
+            }
+            AssetInstaller.getInstance(cordova.getActivity()).installTraineddata(files,
+                    new AssetInstaller.OnInstalledListener() {
+                        @Override
+                        public void onInstalled() {
+                            callback.success();
+                        }
+
+                        @Override
+                        public void onInstallError(IOException e) {
+                            callback.error(e.getLocalizedMessage());
+                        }
+                    });
+            return true;
+        }
+
+        ImageCache imageCache = ImageCache.getInstance(cordova.getActivity());
+        if (ACTION_CONFIGURE_IMAGE_CACHE.equals(action)) {
+            JSONObject config = args.optJSONObject(0);
+            if (config != null) {
+                imageCache.configure(config);
+            }
+            callbackContext.success(imageCache.getStats());
+            return true;
+        }
+        if (ACTION_GET_IMAGE_CACHE_STATS.equals(action)) {
+            callbackContext.success(imageCache.getStats());
+            return true;
+        }
+        if (ACTION_RELEASE_IMAGE.equals(action)) {
+            int released = 0;
+            for (int i = 0; i < args.length(); i++) {
+                if (imageCache.release(args.optString(i))) {
+                    released++;
+                }
+            }
+            callbackContext.success(released);
+            return true;
+        }
+        if (ACTION_TOUCH_IMAGE.equals(action)) {
+            int touched = 0;
+            for (int i = 0; i < args.length(); i++) {
+                if (imageCache.touch(args.optString(i))) {
+                    touched++;
+                }
+            }
+            callbackContext.success(touched);
+            return true;
+        }
+        if (ACTION_CLEAR_IMAGES.equals(action)) {
+            imageCache.clear();
+            callbackContext.success(imageCache.getStats());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Encodes a pooled result image in the background and returns it as ArrayBuffer.
+     * Arguments: handle, format (jpeg, png or webp, default jpeg), maxSize (default 0, original size) and quality
+     * (default 80).
+     */
+    private void getResultImage(final JSONArray args, final CallbackContext callbackContext) {
+        cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                String handle = args.optString(0);
+                try {
+                    String format = args.isNull(1) ? ImageOutputPolicy.FORMAT_JPEG : args.optString(1);
+                    BinaryImageEncoder.EncodedImage image = ImagePool.getInstance().encode(handle, format,
+                            args.optInt(2, 0), args.optInt(3, BinaryImageEncoder.DEFAULT_QUALITY));
+                    if (image == null) {
+                        callbackContext.error(Resources.getString(cordova.getActivity(), "error_unknown_image_handle")
+                                + handle);
+                    } else {
+                        callbackContext.success(image.getData());
+                    }
+                } catch (IllegalArgumentException e) {
+                    callbackContext.error(e.getLocalizedMessage());
+                }
+            }
+        });
+    }
+
+    private void executeEmbeddedAction(final String action, final JSONArray args,
+                                       final CallbackContext callbackContext) {
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                if (embeddedScanner == null) {
+                    callbackContext.success(0);
+                } else if (ACTION_HIDE_EMBEDDED.equals(action)) {
+                    callbackContext.success(embeddedScanner.hide() ? 1 : 0);
+                } else if (ACTION_SET_EMBEDDED_RECT.equals(action)) {
+                    embeddedScanner.setRect(args.optJSONObject(0));
+                    callbackContext.success(1);
+                } else {
+                    embeddedScanner.close();
+                    callbackContext.success(1);
+                }
+            }
+        });
+    }
+
+    private void installTraineddata(JSONObject ocrConfig) {
+        JSONArray traineddataFiles = ocrConfig == null ? null : ocrConfig.optJSONArray("traineddataFiles");
+        if (traineddataFiles == null) {
+            return;
+        }
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < traineddataFiles.length(); i++) {
+            files.add(traineddataFiles.optString(i));
+        }
+        AssetInstaller.getInstance(cordova.getActivity()).installTraineddata(files, null);
+    }
+
+    private void checkPermission(ScanRequest request) {
         boolean result = cordova.hasPermission("android.permission.CAMERA");
         if (result) {
-            startScanning(mAction, mArgs);
+            startScanning(request);
         } else {
-            cordova.requestPermission(this, 55433, "android.permission.CAMERA");
+            pendingPermissionRequests.put(request.getRequestCode(), request);
+            cordova.requestPermission(this, request.getRequestCode(), "android.permission.CAMERA");
         }
     }
 
     public void onRequestPermissionResult(int requestCode, String[] permissions,
                                           int[] grantResults) throws JSONException
     {
+        ScanRequest request = pendingPermissionRequests.remove(requestCode);
+        if (request == null) {
+            Log.w(TAG, "Permission result for unknown request " + requestCode);
+            return;
+        }
         for(int r:grantResults) {
             if (r == PackageManager.PERMISSION_DENIED) {
-                this.mCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Camera permission denied"));
+                ResultReporter.onError(request.getId(), "Camera permission denied");
                 return;
             }
         }
-        startScanning(mAction, mArgs);
+        startScanning(request);
     }
 
-    private void startScanning(String action, JSONArray args) {
+    private void startScanning(ScanRequest request) {
+        ScanTracer.mark(request.getId(), ScanTracer.STAGE_PERMISSION_GRANTED);
+        String action = request.getAction();
         switch (action) {
-            case "AUTO_ANALOG_DIGITAL_METER":
-                scanEnergy(args, EnergyScanView.ScanMode.AUTO_ANALOG_DIGITAL_METER);
-                break;
-            case "DIAL_METER":
-                scanEnergy(args, EnergyScanView.ScanMode.DIAL_METER);
-                break;
-            case "DIGITAL_METER":
-                scanEnergy(args, EnergyScanView.ScanMode.DIGITAL_METER);
-                break;
-            case "ANALOG_METER":
-                scanEnergy(args, EnergyScanView.ScanMode.ANALOG_METER);
-                break;
             case "scanBarcode":
             case "BARCODE":
-                scan(BarcodeActivity.class, REQUEST_BARCODE, args);
+                scan(BarcodeActivity.class, REQUEST_BARCODE, request);
                 break;
             case "scanMRZ":
             case "MRZ":
-                scan(MrzActivity.class, REQUEST_MRZ, args);
+                scan(MrzActivity.class, REQUEST_MRZ, request);
                 break;
             case "DOCUMENT":
-                scan(DocumentActivity.class, REQUEST_DOCUMENT, args);
-                break;
-            case "scanElectricMeter":
-            case "ELECTRIC_METER":
-                scanEnergy(args, EnergyScanView.ScanMode.ANALOG_METER);
-                break;
-            case "ELECTRIC_METER_5_1":
-                scanEnergy(args, EnergyScanView.ScanMode.ANALOG_METER);
-                break;
-            case "ANALOG_METER_4":
-                scanEnergy(args, EnergyScanView.ScanMode.ANALOG_METER);
-                break;
-            case "ANALOG_METER_7":
-                scanEnergy(args, EnergyScanView.ScanMode.ANALOG_METER);
-                break;
-            case "ANALOG_METER_WHITE":
-                scanEnergy(args, EnergyScanView.ScanMode.ANALOG_METER);
-                break;
-            case "scanGasMeter":
-            case "GAS_METER":
-                scanEnergy(args, EnergyScanView.ScanMode.ANALOG_METER);
-                break;
-            case "GAS_METER_6":
-                scanEnergy(args, EnergyScanView.ScanMode.ANALOG_METER);
-                break;
-            case "WATER_METER_WHITE":
-                scanEnergy(args, EnergyScanView.ScanMode.ANALOG_METER);
-                break;
-            case "WATER_METER_BLACK":
-                scanEnergy(args, EnergyScanView.ScanMode.ANALOG_METER);
-                break;
-            case "HEAT_METER_4":
-                scanEnergy(args, EnergyScanView.ScanMode.HEAT_METER_4);
-                break;
-            case "HEAT_METER_5":
-                scanEnergy(args, EnergyScanView.ScanMode.HEAT_METER_5);
-                break;
-            case "HEAT_METER_6":
-                scanEnergy(args, EnergyScanView.ScanMode.HEAT_METER_6);
-                break;
-            case "SERIAL_NUMBER":
-                scanEnergy(args, EnergyScanView.ScanMode.SERIAL_NUMBER);
+                scan(DocumentActivity.class, REQUEST_DOCUMENT, request);
                 break;
             case "ANYLINE_OCR":
-                scan(AnylineOcrActivity.class, REQUEST_ANYLINE_OCR, args);
+                scan(AnylineOcrActivity.class, REQUEST_ANYLINE_OCR, request);
                 break;
             default:
-                mCallbackContext.error(Resources.getString(cordova.getActivity(),
-                        "error_unkown_scan_mode") + " " + action);
+                // every meter action is described by a preset (built in, or custom in the module config)
+                MeterPreset preset;
+                try {
+                    preset = MeterPreset.find(action, getModuleConfig(request));
+                } catch (IllegalArgumentException e) {
+                    ResultReporter.onError(request.getId(), Resources.getString(cordova.getActivity(),
+                            "error_invalid_json_data") + "\n" + e.getLocalizedMessage());
+                    return;
+                }
+                if (preset == null) {
+                    ResultReporter.onError(request.getId(), Resources.getString(cordova.getActivity(),
+                            "error_unkown_scan_mode") + " " + action);
+                    return;
+                }
+                scan(EnergyActivity.class, REQUEST_METER, request, preset);
         }
     }
 
-    private void scan(Class<?> activityToStart, int requestCode, JSONArray data) {
-        scan(activityToStart, requestCode, data, null);
+    /**
+     * @return the module config of the scan (or of its profile), null if it has none
+     */
+    private JSONObject getModuleConfig(ScanRequest request) {
+        ScanProfile profile = ScanProfile.get(ScanProfile.getProfileId(request.getArgs()));
+        if (profile != null) {
+            return profile.getModuleConfigJson();
+        }
+        return request.getArgs().optJSONObject(2);
     }
 
-    private void scanEnergy(JSONArray data, EnergyScanView.ScanMode modeEnum) {
-        scan(EnergyActivity.class, REQUEST_METER, data, modeEnum.name());
+    private void scan(Class<?> activityToStart, int scanType, ScanRequest request) {
+        scan(activityToStart, scanType, request, null);
     }
 
-    private void scan(Class<?> activityToStart, int requestCode, JSONArray data, String mode) {
+    /**
+     * @param meterPreset the preset of a meter scan, null for every other scan
+     */
+    private void scan(Class<?> activityToStart, int scanType, ScanRequest request, MeterPreset meterPreset) {
         Intent intent = new Intent(cordova.getActivity(), activityToStart);
+        intent.putExtra(EXTRA_REQUEST_ID, request.getId());
+        JSONArray data = request.getArgs();
+        boolean persistentSession = false;
+
+        String profileId = ScanProfile.getProfileId(data);
+        ScanProfile profile = ScanProfile.get(profileId);
+        if (profileId != null && profile == null) {
+            ResultReporter.onError(request.getId(), Resources.getString(cordova.getActivity(),
+                    "error_unknown_profile") + profileId);
+            return;
+        }
 
+        String licenseKey;
+        String viewConfigString;
+        JSONObject viewConfig;
+        String moduleConfigString;
+        JSONObject moduleConfig;
+        // the name of the EnergyScanView.ScanMode, kept as string so the plugin does not load sdk classes
+        String mode = null;
         try {
-            intent.putExtra(EXTRA_LICENSE_KEY, data.getString(0));
-            if (data.length() > 1) {
-                intent.putExtra(EXTRA_CONFIG_JSON, data.getString(1));
+            if (profile != null) {
+                // the activity uses the prebuilt configs of the profile, only the id is passed
+                intent.putExtra(EXTRA_PROFILE_ID, profileId);
+                licenseKey = profile.getLicenseKey();
+                viewConfigString = profile.getViewConfigString();
+                viewConfig = profile.getViewConfigJson();
+                moduleConfigString = profile.getModuleConfigString();
+                moduleConfig = profile.getModuleConfigJson();
+            } else {
+                licenseKey = data.getString(0);
+                intent.putExtra(EXTRA_LICENSE_KEY, licenseKey);
+                viewConfigString = data.length() > 1 ? data.getString(1) : null;
+                viewConfig = data.optJSONObject(1);
+                if (viewConfigString != null) {
+                    intent.putExtra(EXTRA_CONFIG_JSON, viewConfigString);
+                }
+                moduleConfigString = data.length() > 2 ? data.getString(2) : null;
+                //currently we only support native barcode for energy, which will not have a OCR config, so this will be enough
+                moduleConfig = data.length() > 2 ? data.getJSONObject(2) : null;
             }
-            if (data.length() > 2) {
 
-                //currently we only support native barcode for energy, which will not have a OCR config, so this will be enough
-                JSONObject json = data.getJSONObject(2);
+            if (viewConfig != null) {
+                intent.putExtra(EXTRA_RESULT_SCHEMA, viewConfig.optInt(ResultEncoder.RESULT_SCHEMA,
+                        ResultEncoder.SCHEMA_LEGACY));
+                intent.putExtra(EXTRA_ASYNC_IMAGE_SAVE, viewConfig.optBoolean(ImageWriter.ASYNC_IMAGE_SAVE, false));
 
-                //check if a mode is set. when not it's OCR. When it's set, it's energy
-                if (mode == null) {
-                    intent.putExtra(EXTRA_OCR_CONFIG_JSON, data.getString(2));
-                } else {
-                    boolean nativeBarcodeEnabled = json.optBoolean("nativeBarcodeEnabled", false);
-                    intent.putExtra(EXTRA_SCAN_NATIVE_BARCODE, nativeBarcodeEnabled);
+                JSONObject consensus = viewConfig.optJSONObject(ConsensusFilter.CONSENSUS);
+                if (consensus != null) {
+                    // validate here, so an invalid config is reported before the activity is started
+                    ConsensusFilter.fromJson(consensus);
+                    intent.putExtra(EXTRA_CONSENSUS_JSON, consensus.toString());
+                }
+
+                JSONArray resultFilters = viewConfig.optJSONArray(ResultFilterChain.RESULT_FILTERS);
+                if (resultFilters != null && ResultFilterChain.fromJson(resultFilters) != null) {
+                    // validated above, so an unknown stage is reported before the activity is started
+                    intent.putExtra(EXTRA_RESULT_FILTERS_JSON, resultFilters.toString());
+                }
+
+                JSONObject imageOutput = viewConfig.optJSONObject(ImageOutputPolicy.IMAGE_OUTPUT);
+                if (imageOutput != null) {
+                    // validate here, so an invalid config is reported before the activity is started
+                    ImageOutputPolicy.fromJson(imageOutput, 90);
+                    intent.putExtra(EXTRA_IMAGE_OUTPUT_JSON, imageOutput.toString());
+                }
+
+                JSONObject imageDelivery = viewConfig.optJSONObject(BinaryImageEncoder.IMAGE_DELIVERY);
+                if (imageDelivery != null) {
+                    intent.putExtra(EXTRA_IMAGE_DELIVERY_MODE, imageDelivery.optString(
+                            BinaryImageEncoder.IMAGE_DELIVERY_MODE, BinaryImageEncoder.MODE_PATH));
+                    intent.putExtra(EXTRA_IMAGE_DELIVERY_MAX_DIMENSION, imageDelivery.optInt(
+                            BinaryImageEncoder.IMAGE_DELIVERY_MAX_DIMENSION, BinaryImageEncoder.DEFAULT_MAX_DIMENSION));
+                    intent.putExtra(EXTRA_IMAGE_DELIVERY_QUALITY, imageDelivery.optInt(
+                            BinaryImageEncoder.IMAGE_DELIVERY_QUALITY, BinaryImageEncoder.DEFAULT_QUALITY));
+                }
+
+                JSONObject diagnostics = viewConfig.optJSONObject(FrameDiagnostics.DIAGNOSTICS);
+                if (diagnostics != null && FrameDiagnostics.fromJson(diagnostics) != null) {
+                    intent.putExtra(EXTRA_DIAGNOSTICS_JSON, diagnostics.toString());
+                }
+
+                JSONObject composite = viewConfig.optJSONObject(CompositeScan.COMPOSITE);
+                if (composite != null && CompositeScan.fromJson(composite) != null) {
+                    if (scanType != REQUEST_MRZ && scanType != REQUEST_ANYLINE_OCR && scanType != REQUEST_METER) {
+                        throw new IllegalArgumentException("A composite scan is not supported for "
+                                + request.getAction());
+                    }
+                    intent.putExtra(EXTRA_COMPOSITE_JSON, composite.toString());
                 }
 
+                request.setBatcher(ResultBatcher.fromJson(request,
+                        viewConfig.optJSONObject(ResultBatcher.DELIVERY)));
+            }
+            if (scanType != REQUEST_DOCUMENT && WarmScanSession.isPersistent(viewConfig)) {
+                persistentSession = true;
+                intent.putExtra(EXTRA_PERSISTENT_SESSION, true);
+                intent.putExtra(EXTRA_SESSION_IDLE_TIMEOUT, WarmScanSession.getIdleTimeout(viewConfig));
+                intent.putExtra(EXTRA_HOST_ACTIVITY, cordova.getActivity().getClass().getName());
+            }
+
+            if (moduleConfig != null) {
+                //check if a meter preset is set. when not it's OCR. When it's set, it's energy
+                if (meterPreset == null) {
+                    if (profile == null) {
+                        intent.putExtra(EXTRA_OCR_CONFIG_JSON, moduleConfigString);
+                    }
+                } else {
+                    boolean nativeBarcodeEnabled = moduleConfig.optBoolean("nativeBarcodeEnabled", false);
+                    intent.putExtra(EXTRA_SCAN_NATIVE_BARCODE, nativeBarcodeEnabled);
 
+                    JSONObject accumulation = moduleConfig.optJSONObject(BarcodeAccumulator.NATIVE_BARCODE_ACCUMULATION);
+                    if (nativeBarcodeEnabled && accumulation != null) {
+                        // validate here, so an invalid config is reported before the activity is started
+                        BarcodeAccumulator.fromJson(accumulation);
+                        intent.putExtra(EXTRA_NATIVE_BARCODE_ACCUMULATION_JSON, accumulation.toString());
+                    }
+                }
             }
 
-            if (mode != null) {
+            if (meterPreset != null) {
+                meterPreset = MeterPreset.resolve(meterPreset, moduleConfig);
+                mode = meterPreset.getScanMode();
                 intent.putExtra(EXTRA_SCAN_MODE, mode);
+                intent.putExtra(EXTRA_METER_PRESET_JSON, meterPreset.toJson().toString());
             }
 
 
         } catch (JSONException e) {
-            mCallbackContext.error(Resources.getString(cordova.getActivity(), "error_invalid_json_data"));
+            ResultReporter.onError(request.getId(), Resources.getString(cordova.getActivity(), "error_invalid_json_data"));
+            return;
+        } catch (IllegalArgumentException e) {
+            ResultReporter.onError(request.getId(), Resources.getString(cordova.getActivity(), "error_invalid_json_data")
+                    + "\n" + e.getLocalizedMessage());
             return;
         }
-        ResultReporter.setListener(this);
-        cordova.startActivityForResult(this, intent, requestCode);
+
+        if (EmbeddedScanner.isEmbedded(viewConfig)
+                && (scanType == REQUEST_BARCODE || scanType == REQUEST_MRZ)) {
+            showEmbedded(request, scanType == REQUEST_BARCODE ? "BARCODE" : "MRZ", licenseKey, viewConfig, profile);
+            return;
+        }
+
+        if (persistentSession) {
+            // the preset is applied by the activity, so it is part of the session
+            String sessionKey = WarmScanSession.keyFor(activityToStart,
+                    meterPreset == null ? null : meterPreset.toJson().toString(), licenseKey,
+                    viewConfigString, moduleConfigString);
+            intent.putExtra(EXTRA_SESSION_KEY, sessionKey);
+
+            if (WarmScanSession.isResident(activityToStart, sessionKey)) {
+                // the resident activity is brought to the front and receives the intent in onNewIntent
+                intent.addFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
+            } else {
+                WarmScanSession.finishResident();
+            }
+            // results, errors and cancel are all reported through the ResultReporter in this mode
+            cordova.getActivity().startActivity(intent);
+        } else {
+            WarmScanSession.finishResident();
+            cordova.startActivityForResult(this, intent, request.getRequestCode());
+        }
+    }
+
+    private void showEmbedded(final ScanRequest request, final String module, final String licenseKey,
+                              final JSONObject viewConfig, final ScanProfile profile) {
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            public void run() {
+                if (embeddedScanner == null) {
+                    // cordova sets the BackgroundColor preference to the web view, white is the default of a WebView
+                    embeddedScanner = new EmbeddedScanner(cordova.getActivity(), webView.getView(),
+                            preferences.getInteger("BackgroundColor", Color.WHITE));
+                }
+                try {
+                    embeddedScanner.show(request.getId(), module, licenseKey, viewConfig, profile);
+                } catch (Exception e) {
+                    //JSONException, IOException or IllegalArgumentException is possible, return it to javascript
+                    ResultReporter.onError(request.getId(), Resources.getString(cordova.getActivity(),
+                            "error_invalid_json_data") + "\n" + e.getLocalizedMessage());
+                }
+            }
+        });
     }
 
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
-        ResultReporter.setListener(null);
+        String requestId = String.valueOf(requestCode);
         if (resultCode == RESULT_OK) {
-            //nothing todo, handeled with ResultReporter
+            //nothing todo, handeled with ResultReporter (pending image events may still follow)
         } else if (resultCode == RESULT_CANCELED) {
-            mCallbackContext.error("Canceled");
+            ResultReporter.onCancel(requestId);
 
         } else if (resultCode == RESULT_ERROR) {
-            mCallbackContext.error(data.getStringExtra(EXTRA_ERROR_MESSAGE));
+            ResultReporter.onError(requestId, data.getStringExtra(EXTRA_ERROR_MESSAGE));
         }
     }
 
     @Override
-    public void onResult(Object result, boolean isFinalResult) {
-
-        PluginResult pluginResult;
-        if (result instanceof JSONObject) {
-            pluginResult = new PluginResult(Status.OK, (JSONObject) result);
-        } else if (result instanceof JSONArray) {
-            pluginResult = new PluginResult(Status.OK, (JSONArray) result);
-        } else {
-            pluginResult = new PluginResult(Status.OK, result.toString());
+    public void onPause(boolean multitasking) {
+        super.onPause(multitasking);
+        if (embeddedScanner != null) {
+            embeddedScanner.onPause();
         }
-        if (!isFinalResult) {
-            pluginResult.setKeepCallback(true);
+    }
+
+    @Override
+    public void onResume(boolean multitasking) {
+        super.onResume(multitasking);
+        if (embeddedScanner != null) {
+            embeddedScanner.onResume();
         }
+    }
 
-        mCallbackContext.sendPluginResult(pluginResult);
+    @Override
+    public void onDestroy() {
+        if (embeddedScanner != null) {
+            embeddedScanner.close();
+            embeddedScanner = null;
+        }
+        WarmScanSession.finishResident();
+        pendingPermissionRequests.clear();
+        ResultReporter.unregisterAll();
+        super.onDestroy();
     }
 }
@@ -0,0 +1,413 @@
+/*
+ * Anyline Cordova Plugin
+ * AssetInstaller.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Installs files from the www assets (e.g. traineddata files) to the files directory, where the sdk reads them.
+ * <p/>
+ * A manifest records the content hash and the app version of every installed file. As long as the app is not
+ * updated and the file is still there, nothing is read at all. After an update the asset is hashed, and only
+ * copied if its content changed. Files are installed in parallel on background threads, and a file that is
+ * already being installed is not installed twice.
+ */
+public class AssetInstaller {
+
+    private static final String TAG = AssetInstaller.class.getSimpleName();
+
+    public static final String TESSDATA_DIR = "anyline/module_anyline_ocr/tessdata/";
+
+    /**
+     * config.xml preference with the traineddata files (relative to www, comma separated) that are installed
+     * when the plugin is loaded.
+     */
+    public static final String PREFERENCE_TRAINEDDATA_FILES = "AnylineTraineddataFiles";
+
+    private static final String MANIFEST_FILE = "anyline/asset_manifest.json";
+    private static final String WWW = "www/";
+    private static final int THREAD_COUNT = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static AssetInstaller instance;
+
+    private final Context context;
+    private final File manifestFile;
+    private final String appVersion;
+    private final ExecutorService executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // target path -> installation, running or done
+    private final Map<String, Installation> installations = new HashMap<String, Installation>();
+    private JSONObject manifest;
+
+    public interface OnInstalledListener {
+        /**
+         * Called on the main thread once all files are installed.
+         */
+        void onInstalled();
+
+        /**
+         * Called on the main thread if a file could not be installed.
+         */
+        void onInstallError(IOException e);
+    }
+
+    public static synchronized AssetInstaller getInstance(Context context) {
+        if (instance == null) {
+            instance = new AssetInstaller(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AssetInstaller(Context context) {
+        this.context = context;
+        manifestFile = new File(context.getFilesDir(), MANIFEST_FILE);
+        appVersion = readAppVersion(context);
+        executor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "AnylineAssetInstaller");
+            }
+        });
+    }
+
+    public static File getTessdataDir(Context context) {
+        return new File(context.getFilesDir(), TESSDATA_DIR);
+    }
+
+    /**
+     * Installs the traineddata files to the tessdata directory of the ocr module.
+     *
+     * @param traineddataFiles the paths relative to www
+     * @param listener         notified once the files are installed, may be null
+     */
+    public void installTraineddata(List<String> traineddataFiles, OnInstalledListener listener) {
+        install(traineddataFiles, getTessdataDir(context), listener);
+    }
+
+    /**
+     * Installs the given assets to the directory. Returns immediately, the files are installed in the background.
+     *
+     * @param assets   the paths relative to www
+     * @param dir      the directory to install the files to (the name of the asset is kept)
+     * @param listener notified once all files are installed, may be null
+     */
+    public void install(List<String> assets, File dir, final OnInstalledListener listener) {
+        final List<Installation> pending = new ArrayList<Installation>();
+        synchronized (this) {
+            for (String asset : assets) {
+                File target = new File(dir, new File(asset).getName());
+                String key = target.getAbsolutePath();
+                Installation installation = installations.get(key);
+                if (installation == null || installation.isFailed()) {
+                    installation = new Installation(WWW + asset, target);
+                    installations.put(key, installation);
+                    executor.execute(installation);
+                }
+                pending.add(installation);
+            }
+        }
+        if (listener == null) {
+            return;
+        }
+
+        Runnable onDone = new Runnable() {
+            private int remaining = pending.size();
+            private IOException error;
+
+            @Override
+            public void run() {
+                synchronized (this) {
+                    remaining--;
+                    if (remaining > 0) {
+                        return;
+                    }
+                    for (Installation installation : pending) {
+                        if (installation.error != null) {
+                            error = installation.error;
+                        }
+                    }
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (error != null) {
+                            listener.onInstallError(error);
+                        } else {
+                            listener.onInstalled();
+                        }
+                    }
+                });
+            }
+        };
+        if (pending.isEmpty()) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onInstalled();
+                }
+            });
+            return;
+        }
+        for (Installation installation : pending) {
+            installation.whenDone(onDone);
+        }
+    }
+
+    private synchronized JSONObject getManifest() {
+        if (manifest == null) {
+            manifest = new JSONObject();
+            if (manifestFile.exists()) {
+                try {
+                    manifest = new JSONObject(readFile(manifestFile));
+                } catch (Exception e) {
+                    Log.w(TAG, "Asset manifest could not be read, all assets are verified again.", e);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    private synchronized JSONObject getManifestEntry(String key) {
+        return getManifest().optJSONObject(key);
+    }
+
+    private synchronized void putManifestEntry(String key, String hash, long size) {
+        JSONObject entry = new JSONObject();
+        try {
+            entry.put("hash", hash);
+            entry.put("size", size);
+            entry.put("version", appVersion);
+            getManifest().put(key, entry);
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting manifest entry to json.", e);
+            return;
+        }
+
+        File tmp = new File(manifestFile.getPath() + ".tmp");
+        try {
+            manifestFile.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(manifest.toString().getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(manifestFile)) {
+                throw new IOException("Could not rename " + tmp);
+            }
+        } catch (IOException e) {
+            // the asset is verified again next time
+            Log.w(TAG, "Asset manifest could not be written.", e);
+        }
+    }
+
+    private static String readAppVersion(Context context) {
+        try {
+            return String.valueOf(context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).lastUpdateTime);
+        } catch (PackageManager.NameNotFoundException e) {
+            // verify the assets on every start
+            return "";
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            return new String(data, 0, offset, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The installation of one file.
+     */
+    private class Installation implements Runnable {
+        private final String asset;
+        private final File target;
+        private final List<Runnable> listeners = new ArrayList<Runnable>();
+        private boolean done;
+        private volatile IOException error;
+
+        Installation(String asset, File target) {
+            this.asset = asset;
+            this.target = target;
+        }
+
+        synchronized boolean isFailed() {
+            return done && error != null;
+        }
+
+        void whenDone(Runnable listener) {
+            synchronized (this) {
+                if (!done) {
+                    listeners.add(listener);
+                    return;
+                }
+            }
+            listener.run();
+        }
+
+        @Override
+        public void run() {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                install();
+            } catch (IOException e) {
+                Log.e(TAG, "Asset " + asset + " could not be installed.", e);
+                error = e;
+            }
+            Log.v(TAG, "Install " + asset + " duration: " + (SystemClock.elapsedRealtime() - start));
+
+            List<Runnable> toNotify;
+            synchronized (this) {
+                done = true;
+                toNotify = new ArrayList<Runnable>(listeners);
+                listeners.clear();
+            }
+            for (Runnable listener : toNotify) {
+                listener.run();
+            }
+        }
+
+        private void install() throws IOException {
+            String key = target.getAbsolutePath();
+            JSONObject entry = getManifestEntry(key);
+            boolean installed = entry != null && target.exists() && target.length() == entry.optLong("size", -1);
+            if (installed && appVersion.length() > 0 && appVersion.equals(entry.optString("version"))) {
+                // the assets can only change with an app update
+                return;
+            }
+
+            String hash = hashAsset();
+            if (installed && hash.equals(entry.optString("hash"))) {
+                putManifestEntry(key, hash, target.length());
+                return;
+            }
+            long size = copy(hash);
+            putManifestEntry(key, hash, size);
+        }
+
+        private String hashAsset() throws IOException {
+            MessageDigest digest = newDigest();
+            InputStream in = new DigestInputStream(context.getAssets().open(asset), digest);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (in.read(buffer) >= 0) {
+                    // read to the end to hash the content
+                }
+            } finally {
+                in.close();
+            }
+            return toHex(digest.digest());
+        }
+
+        /**
+         * Copies the asset to a temporary file that replaces the target once it is complete, so a file that was
+         * interrupted while copying is never used.
+         *
+         * @param expectedHash the hash of the asset content
+         * @return the size of the file
+         */
+        private long copy(String expectedHash) throws IOException {
+            target.getParentFile().mkdirs();
+            File tmp = new File(target.getPath() + ".tmp");
+            MessageDigest digest = newDigest();
+            InputStream in = new DigestInputStream(new BufferedInputStream(context.getAssets().open(asset),
+                    BUFFER_SIZE), digest);
+            long size = 0;
+            try {
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE);
+                try {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        out.write(buffer, 0, read);
+                        size += read;
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+
+            if (!expectedHash.equals(toHex(digest.digest()))) {
+                tmp.delete();
+                throw new IOException("Asset " + asset + " changed while it was copied");
+            }
+            if ((target.exists() && !target.delete()) || !tmp.renameTo(target)) {
+                tmp.delete();
+                throw new IOException("Could not move " + tmp + " to " + target);
+            }
+            return size;
+        }
+    }
+}
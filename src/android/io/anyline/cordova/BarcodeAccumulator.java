@@ -0,0 +1,212 @@
+/*
+ * Anyline Cordova Plugin
+ * BarcodeAccumulator.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the barcodes the native barcode detector finds while a meter is scanned. Configured with
+ * "nativeBarcodeAccumulation" in the module config (next to "nativeBarcodeEnabled"):
+ * <pre>
+ * "nativeBarcodeAccumulation": {
+ *     "maxSize": 50,             // barcodes kept, the least recently seen are dropped first
+ *     "window": 0,               // milliseconds a barcode is kept after it was last seen, 0 keeps it
+ *     "delivery": "perReading",  // perReading: attached to every reading as detectedBarcodes
+ *                                // stream: reported as event as soon as a barcode is seen for the first time
+ *     "clearOnReading": true     // perReading only, start over after every reading
+ * }
+ * </pre>
+ * Barcodes are identified by format and value. The entries are kept in the order they were last seen, so
+ * the window and size limits only ever look at the oldest entries.
+ * <p/>
+ * Thread safe, barcodes and readings are reported on different threads.
+ */
+public class BarcodeAccumulator {
+
+    private static final String TAG = BarcodeAccumulator.class.getSimpleName();
+
+    public static final String NATIVE_BARCODE_ACCUMULATION = "nativeBarcodeAccumulation";
+    public static final String MAX_SIZE = "maxSize";
+    public static final String WINDOW = "window";
+    public static final String DELIVERY = "delivery";
+    public static final String CLEAR_ON_READING = "clearOnReading";
+
+    public static final String DELIVERY_PER_READING = "perReading";
+    public static final String DELIVERY_STREAM = "stream";
+
+    public static final String EVENT_BARCODE_DETECTED = "barcodeDetected";
+
+    private final int maxSize;
+    private final long window;
+    private final boolean stream;
+    private final boolean clearOnReading;
+
+    // access ordered, the eldest entry is the one that was not seen for the longest time
+    private final LinkedHashMap<String, Entry> entries;
+
+    public BarcodeAccumulator(int maxSize, long window, boolean stream, boolean clearOnReading) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+        this.window = window;
+        this.stream = stream;
+        this.clearOnReading = clearOnReading;
+        entries = new LinkedHashMap<String, Entry>(Math.min(maxSize, 64), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > BarcodeAccumulator.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param json the accumulation json, may be null or empty
+     * @return the accumulator, the defaults attach up to 50 barcodes to every reading
+     */
+    public static BarcodeAccumulator fromJson(String json) throws JSONException {
+        return fromJson(json == null || json.length() == 0 ? new JSONObject() : new JSONObject(json));
+    }
+
+    public static BarcodeAccumulator fromJson(JSONObject json) {
+        String delivery = json.optString(DELIVERY, DELIVERY_PER_READING);
+        if (!DELIVERY_PER_READING.equals(delivery) && !DELIVERY_STREAM.equals(delivery)) {
+            throw new IllegalArgumentException("Unknown barcode delivery: " + delivery);
+        }
+        return new BarcodeAccumulator(json.optInt(MAX_SIZE, 50), Math.max(0, json.optLong(WINDOW, 0)),
+                DELIVERY_STREAM.equals(delivery), json.optBoolean(CLEAR_ON_READING, true));
+    }
+
+    /**
+     * @return true if new barcodes are reported as events instead of being attached to the readings
+     */
+    public boolean isStreaming() {
+        return stream;
+    }
+
+    /**
+     * Adds a sighting of a barcode.
+     *
+     * @param value  the raw value
+     * @param format the format name
+     * @param now    the current time in milliseconds (monotonic)
+     * @return the barcode as event json if it was seen for the first time, null otherwise
+     */
+    public synchronized JSONObject add(String value, String format, long now) {
+        if (value == null) {
+            return null;
+        }
+        expire(now);
+        String key = format + ':' + value;
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.lastSeen = now;
+            entry.hits++;
+            return null;
+        }
+
+        entry = new Entry(value, format, now);
+        entries.put(key, entry);
+        if (!stream) {
+            return null;
+        }
+        JSONObject event = entry.toJson();
+        try {
+            event.put("event", EVENT_BARCODE_DETECTED);
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting barcode event to json.", e);
+        }
+        return event;
+    }
+
+    /**
+     * @param now the current time in milliseconds (monotonic)
+     * @return the barcodes within the window, in the order they were first seen, clears them if configured
+     */
+    public synchronized JSONArray takeForReading(long now) {
+        expire(now);
+        Entry[] sorted = entries.values().toArray(new Entry[entries.size()]);
+        Arrays.sort(sorted, FIRST_SEEN_ORDER);
+        JSONArray array = new JSONArray();
+        for (Entry entry : sorted) {
+            array.put(entry.toJson());
+        }
+        if (clearOnReading) {
+            entries.clear();
+        }
+        return array;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private void expire(long now) {
+        if (window <= 0) {
+            return;
+        }
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastSeen <= window) {
+                // the remaining entries were seen later
+                return;
+            }
+            it.remove();
+        }
+    }
+
+    private static final Comparator<Entry> FIRST_SEEN_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            return lhs.firstSeen < rhs.firstSeen ? -1 : (lhs.firstSeen == rhs.firstSeen ? 0 : 1);
+        }
+    };
+
+    private static class Entry {
+        private final String value;
+        private final String format;
+        private final long firstSeen;
+        private long lastSeen;
+        private int hits = 1;
+
+        Entry(String value, String format, long now) {
+            this.value = value;
+            this.format = format;
+            this.firstSeen = now;
+            this.lastSeen = now;
+        }
+
+        JSONObject toJson() {
+            // report wall clock times, the entries are kept in monotonic time
+            long offset = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+            JSONObject json = new JSONObject();
+            try {
+                json.put("value", value);
+                json.put("format", format);
+                json.put("firstSeen", firstSeen + offset);
+                json.put("lastSeen", lastSeen + offset);
+                json.put("hitCount", hits);
+            } catch (JSONException e) {
+                //should not be possible
+                Log.e(TAG, "Error while putting barcode to json.", e);
+            }
+            return json;
+        }
+    }
+}
@@ -11,45 +11,34 @@ package io.anyline.cordova;
 import android.os.Bundle;
 import android.util.Log;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.UUID;
-
-import at.nineyards.anyline.camera.AnylineViewConfig;
 import at.nineyards.anyline.camera.CameraController;
 import at.nineyards.anyline.camera.CameraOpenListener;
 
-import at.nineyards.anyline.models.AnylineImage;
-import at.nineyards.anyline.modules.barcode.BarcodeResult;
-import at.nineyards.anyline.modules.barcode.BarcodeResultListener;
-import at.nineyards.anyline.modules.barcode.BarcodeScanView;
-import at.nineyards.anyline.util.TempFileUtil;
-
 public class BarcodeActivity extends AnylineBaseActivity implements CameraOpenListener{
     private static final String TAG = BarcodeActivity.class.getSimpleName();
 
-    private BarcodeScanView barcodeScanView;
+    private ScanEngine scanEngine;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        barcodeScanView = new BarcodeScanView(this, null);
         try {
-            JSONObject json = new JSONObject(configJson);
-            barcodeScanView.setConfig(new AnylineViewConfig(this, json));
+            JSONObject json = getConfigJson();
+            if (ReplayScanEngine.isEnabled(json)) {
+                scanEngine = new ReplayScanEngine(this, json, "value");
+            } else {
+                scanEngine = new BarcodeScanEngine(this, getAnylineViewConfig(json));
+            }
         } catch (Exception e) {
-            //JSONException or IllegalArgumentException is possible, return it to javascript
+            //JSONException, IOException or IllegalArgumentException is possible, return it to javascript
             finishWithError(Resources.getString(this, "error_invalid_json_data") + "\n" + e.getLocalizedMessage());
             return;
         }
 
-        barcodeScanView.setCameraOpenListener(this);
-
-        setContentView(barcodeScanView);
+        setContentView(scanEngine.getView());
 
         initAnyline();
     }
@@ -57,14 +46,21 @@ public class BarcodeActivity extends AnylineBaseActivity implements CameraOpenLi
     @Override
     protected void onResume() {
         super.onResume();
-        barcodeScanView.startScanning();
+        scanEngine.startScanning();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        barcodeScanView.cancelScanning();
-        barcodeScanView.releaseCameraInBackground();
+        scanEngine.stopScanning();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (scanEngine != null) {
+            scanEngine.release();
+        }
     }
 
     @Override
@@ -82,45 +78,12 @@ public class BarcodeActivity extends AnylineBaseActivity implements CameraOpenLi
     }
 
     private void initAnyline() {
-        barcodeScanView.setCameraOpenListener(this);
-
-        barcodeScanView.initAnyline(licenseKey, new BarcodeResultListener() {
+        scanEngine.init(licenseKey, this, this, new ScanEngine.Listener() {
             @Override
-            public void onResult(BarcodeResult result) {
-
-                JSONObject jsonResult = new JSONObject();
-                try {
-
-                    jsonResult.put("value", result.getResult());
-                    jsonResult.put("format", result.getBarcodeFormat());
-
-                    jsonResult.put("outline", jsonForOutline(result.getOutline()));
-                    jsonResult.put("confidence", result.getConfidence());
-
-                    File imageFile = TempFileUtil.createTempFileCheckCache(BarcodeActivity.this,
-                            UUID.randomUUID().toString(), ".jpg");
-
-                    result.getCutoutImage().save(imageFile, 90);
-                    jsonResult.put("imagePath", imageFile.getAbsolutePath());
-
-                } catch (IOException e) {
-                    Log.e(TAG, "Image file could not be saved.", e);
-
-                } catch (JSONException jsonException) {
-                    //should not be possible
-                    Log.e(TAG, "Error while putting image path to json.", jsonException);
-                }
-
-                if (barcodeScanView.getConfig().isCancelOnResult()) {
-                    ResultReporter.onResult(jsonResult, true);
-                    setResult(AnylinePlugin.RESULT_OK);
-                    finish();
-                } else {
-                    ResultReporter.onResult(jsonResult, false);
-                }
+            public void onResult(ScanEngine.Result result) {
+                reportEngineResult("BARCODE", result, scanEngine.isCancelOnResult());
             }
         });
-        barcodeScanView.getAnylineController().setWorkerThreadUncaughtExceptionHandler(this);
     }
 
 }
@@ -0,0 +1,65 @@
+/*
+ * Anyline Cordova Plugin
+ * BarcodeFormats.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import com.google.android.gms.vision.barcode.Barcode;
+
+import at.nineyards.anyline.modules.barcode.BarcodeScanView;
+
+/**
+ * Maps the formats of the native barcode detector (play services vision) to the format names of the sdk.
+ */
+public class BarcodeFormats {
+
+    private BarcodeFormats() {
+    }
+
+    public static String toFormatName(int format) {
+        if (format == Barcode.AZTEC) {
+            return BarcodeScanView.BarcodeFormat.AZTEC.toString();
+        }
+        if (format == Barcode.CODABAR) {
+            return BarcodeScanView.BarcodeFormat.CODABAR.toString();
+        }
+        if (format == Barcode.CODE_39) {
+            return BarcodeScanView.BarcodeFormat.CODE_39.toString();
+        }
+        if (format == Barcode.CODE_93) {
+            return BarcodeScanView.BarcodeFormat.CODE_93.toString();
+        }
+        if (format == Barcode.CODE_128) {
+            return BarcodeScanView.BarcodeFormat.CODE_128.toString();
+        }
+        if (format == Barcode.DATA_MATRIX) {
+            return BarcodeScanView.BarcodeFormat.DATA_MATRIX.toString();
+        }
+        if (format == Barcode.EAN_8) {
+            return BarcodeScanView.BarcodeFormat.EAN_8.toString();
+        }
+        if (format == Barcode.EAN_13) {
+            return BarcodeScanView.BarcodeFormat.EAN_13.toString();
+        }
+        if (format == Barcode.ITF) {
+            return BarcodeScanView.BarcodeFormat.ITF.toString();
+        }
+        if (format == Barcode.PDF417) {
+            return BarcodeScanView.BarcodeFormat.PDF_417.toString();
+        }
+        if (format == Barcode.QR_CODE) {
+            return BarcodeScanView.BarcodeFormat.QR_CODE.toString();
+        }
+        if (format == Barcode.UPC_A) {
+            return BarcodeScanView.BarcodeFormat.UPC_A.toString();
+        }
+        if (format == Barcode.UPC_E) {
+            return BarcodeScanView.BarcodeFormat.UPC_E.toString();
+        }
+
+        //others are currently not supported by the native scanner (RSS_14, RSS_EXPANDED, UPC_EAN_EXTENSION)
+        return BarcodeScanView.BarcodeFormat.UNKNOWN.toString();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Anyline Cordova Plugin
+ * BarcodeScanEngine.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.View;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import at.nineyards.anyline.camera.AnylineViewConfig;
+import at.nineyards.anyline.camera.CameraOpenListener;
+import at.nineyards.anyline.modules.barcode.BarcodeResult;
+import at.nineyards.anyline.modules.barcode.BarcodeResultListener;
+import at.nineyards.anyline.modules.barcode.BarcodeScanView;
+
+/**
+ * {@link ScanEngine} backed by the {@link BarcodeScanView} of the sdk.
+ */
+public class BarcodeScanEngine implements ScanEngine {
+
+    private static final String TAG = BarcodeScanEngine.class.getSimpleName();
+
+    private final BarcodeScanView barcodeScanView;
+
+    public BarcodeScanEngine(Context context, AnylineViewConfig config) {
+        barcodeScanView = new BarcodeScanView(context, null);
+        barcodeScanView.setConfig(config);
+    }
+
+    @Override
+    public View getView() {
+        return barcodeScanView;
+    }
+
+    @Override
+    public void init(String licenseKey, CameraOpenListener cameraOpenListener,
+                     Thread.UncaughtExceptionHandler errorHandler, final Listener listener) {
+        barcodeScanView.setCameraOpenListener(cameraOpenListener);
+        barcodeScanView.initAnyline(licenseKey, new BarcodeResultListener() {
+            @Override
+            public void onResult(BarcodeResult result) {
+                JSONObject fields = new JSONObject();
+                try {
+                    fields.put("format", result.getBarcodeFormat());
+                } catch (JSONException jsonException) {
+                    //should not be possible
+                    Log.e(TAG, "Error while putting barcode format to json.", jsonException);
+                }
+                listener.onResult(new Result("value", result.getResult(), fields, result.getOutline(),
+                        result.getConfidence(), result.getCutoutImage(), null));
+            }
+        });
+        barcodeScanView.getAnylineController().setWorkerThreadUncaughtExceptionHandler(errorHandler);
+    }
+
+    @Override
+    public boolean isCancelOnResult() {
+        return barcodeScanView.getConfig().isCancelOnResult();
+    }
+
+    @Override
+    public void startScanning() {
+        barcodeScanView.startScanning();
+    }
+
+    @Override
+    public void stopScanning() {
+        barcodeScanView.cancelScanning();
+        barcodeScanView.releaseCameraInBackground();
+    }
+
+    @Override
+    public void release() {
+        // the scan view is released with its activity
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Anyline Cordova Plugin
+ * BinaryImageEncoder.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.graphics.Bitmap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+
+import at.nineyards.anyline.models.AnylineImage;
+
+/**
+ * Encodes result images in memory, so they can be sent to javascript as an ArrayBuffer without writing a file.
+ */
+public class BinaryImageEncoder {
+
+    public static final String IMAGE_DELIVERY = "imageDelivery";
+    public static final String IMAGE_DELIVERY_MODE = "mode";
+    public static final String IMAGE_DELIVERY_MAX_DIMENSION = "maxDimension";
+    public static final String IMAGE_DELIVERY_QUALITY = "quality";
+
+    /** the cutout is written to a file and the path is reported (default) */
+    public static final String MODE_PATH = "path";
+    /** the cutout is sent as ArrayBuffer right after the result, no file is written */
+    public static final String MODE_BINARY = "binary";
+    /** both of the above */
+    public static final String MODE_BOTH = "both";
+    /** the images are kept in the {@link ImagePool} and a handle is reported, they are encoded on request */
+    public static final String MODE_HANDLE = "handle";
+
+    public static final int DEFAULT_MAX_DIMENSION = 0;
+    public static final int DEFAULT_QUALITY = 80;
+
+    /**
+     * Encodes the image as jpeg.
+     *
+     * @param image        the image to encode
+     * @param maxDimension the maximum width or height, the image is scaled down to fit (0 for no limit)
+     * @param quality      the jpeg quality
+     * @return the encoded image
+     */
+    public static EncodedImage encode(AnylineImage image, int maxDimension, int quality) {
+        Bitmap bitmap = image.getBitmap();
+        Bitmap scaled = scaleDown(bitmap, maxDimension);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(scaled.getWidth() * scaled.getHeight() / 4);
+        scaled.compress(Bitmap.CompressFormat.JPEG, quality, out);
+
+        EncodedImage encoded = new EncodedImage(out.toByteArray(), scaled.getWidth(), scaled.getHeight());
+        if (scaled != bitmap) {
+            BitmapPool.getInstance().put(scaled);
+        }
+        return encoded;
+    }
+
+    /**
+     * @return the bitmap scaled down to fit the max dimension, in a bitmap of the {@link BitmapPool} (return it
+     * there when it is not used any more), or the given bitmap if it fits
+     */
+    static Bitmap scaleDown(Bitmap bitmap, int maxDimension) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (maxDimension <= 0 || (width <= maxDimension && height <= maxDimension)) {
+            return bitmap;
+        }
+        float scale = (float) maxDimension / Math.max(width, height);
+        int scaledWidth = Math.max(1, Math.round(width * scale));
+        int scaledHeight = Math.max(1, Math.round(height * scale));
+        return BitmapPool.getInstance().scale(bitmap, scaledWidth, scaledHeight, true);
+    }
+
+    /**
+     * An image encoded in memory.
+     */
+    public static class EncodedImage {
+        private final byte[] data;
+        private final int width;
+        private final int height;
+
+        public EncodedImage(byte[] data, int width, int height) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return the description of the image that is put to the result, the data follows as ArrayBuffer
+         */
+        public JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("mimeType", "image/jpeg");
+            json.put("width", width);
+            json.put("height", height);
+            json.put("byteLength", data.length);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Anyline Cordova Plugin
+ * BitmapPool.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Recycles the bitmaps the plugin only needs for a moment (thumbnails, scaled copies for encoding, decoded
+ * stored images), so multi page captures and continuous scanning do not allocate a new large bitmap for each
+ * of them.
+ * <p/>
+ * Bitmaps are bucketed by their allocation size. From KitKat on a pooled bitmap is reused for any smaller size
+ * (reconfigured, or as inBitmap of the decoder), up to {@link #MAX_SIZE_FACTOR} times the needed bytes, so a
+ * small thumbnail does not hold a frame sized buffer. Before KitKat only bitmaps of the exact size and config
+ * are reused.
+ * <p/>
+ * The pool holds at most maxBytes (default a sixteenth of the heap), the bitmaps that were returned first are
+ * recycled first. A bitmap returned with {@link #put} must not be used by the caller any more.
+ * {@link #getStats()} returns the hits, misses and resident bytes.
+ */
+public class BitmapPool {
+
+    private static final String TAG = BitmapPool.class.getSimpleName();
+
+    public static final int MAX_SIZE_FACTOR = 4;
+
+    private static BitmapPool instance;
+
+    // allocation size -> bitmaps of that size
+    private final TreeMap<Integer, LinkedList<Bitmap>> buckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+    // every pooled bitmap, the first one was returned first
+    private final LinkedHashSet<Bitmap> pooled = new LinkedHashSet<Bitmap>();
+
+    private final long maxBytes = Runtime.getRuntime().maxMemory() / 16;
+    private long residentBytes;
+
+    private long hits;
+    private long misses;
+    private long returned;
+    private long evicted;
+
+    public static synchronized BitmapPool getInstance() {
+        if (instance == null) {
+            instance = new BitmapPool();
+        }
+        return instance;
+    }
+
+    /**
+     * @return a mutable bitmap of the size, cleared to transparent, from the pool if one fits
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(width, height, config);
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Scales the bitmap into a pooled one (or a new mutable one, so it can be pooled afterwards).
+     *
+     * @param filter true for bilinear filtering
+     * @return the scaled bitmap, return it with {@link #put} once it is not used any more
+     */
+    public Bitmap scale(Bitmap source, int width, int height, boolean filter) {
+        Bitmap.Config config = source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap scaled = take(width, height, config);
+        if (scaled == null) {
+            scaled = Bitmap.createBitmap(width, height, config);
+        }
+        // every pixel is drawn, the previous content needs no clearing
+        Paint paint = new Paint(Paint.DITHER_FLAG);
+        paint.setFilterBitmap(filter);
+        new Canvas(scaled).drawBitmap(source, null, new Rect(0, 0, width, height), paint);
+        return scaled;
+    }
+
+    /**
+     * Decodes the file into a pooled bitmap if one fits (inBitmap, from KitKat on). The options must have the
+     * bounds of the file (outWidth, outHeight) and the sample size set.
+     *
+     * @return the decoded bitmap, mutable so it can be returned to the pool, or null if the file could not be
+     * decoded
+     */
+    public Bitmap decodeFile(String path, BitmapFactory.Options options) {
+        options.inMutable = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && options.outWidth > 0 && options.outHeight > 0) {
+            int sampleSize = Math.max(1, options.inSampleSize);
+            Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig
+                    : Bitmap.Config.ARGB_8888;
+            // the decoder rounds the sampled size up for some formats
+            int width = (options.outWidth + sampleSize - 1) / sampleSize;
+            int height = (options.outHeight + sampleSize - 1) / sampleSize;
+            Bitmap reusable = take(width, height, config);
+            if (reusable != null) {
+                options.inBitmap = reusable;
+                try {
+                    Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+                    if (bitmap != null) {
+                        return bitmap;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // the format can not be decoded into an existing bitmap
+                    Log.d(TAG, "Could not decode into a pooled bitmap: " + e.getMessage());
+                }
+                options.inBitmap = null;
+                put(reusable);
+            }
+        }
+        return BitmapFactory.decodeFile(path, options);
+    }
+
+    /**
+     * Returns a bitmap to the pool. Immutable bitmaps can not be reused and bitmaps bigger than the pool are not
+     * kept, both are recycled.
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int size = sizeOf(bitmap);
+        if (!bitmap.isMutable() || size > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        synchronized (this) {
+            if (pooled.contains(bitmap)) {
+                return;
+            }
+            LinkedList<Bitmap> bucket = buckets.get(size);
+            if (bucket == null) {
+                bucket = new LinkedList<Bitmap>();
+                buckets.put(size, bucket);
+            }
+            bucket.add(bitmap);
+            pooled.add(bitmap);
+            residentBytes += size;
+            returned++;
+            trim();
+        }
+    }
+
+    /**
+     * Recycles all pooled bitmaps.
+     */
+    public synchronized void clear() {
+        for (Bitmap bitmap : pooled) {
+            bitmap.recycle();
+        }
+        pooled.clear();
+        buckets.clear();
+        residentBytes = 0;
+    }
+
+    public synchronized JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("bitmapCount", pooled.size());
+            json.put("residentBytes", residentBytes);
+            json.put("maxBytes", maxBytes);
+            json.put("hits", hits);
+            json.put("misses", misses);
+            json.put("returned", returned);
+            json.put("evicted", evicted);
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting stats to json.", e);
+        }
+        return json;
+    }
+
+    /**
+     * @return a pooled bitmap of the size, reconfigured where needed, or null if none fits
+     */
+    private synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+        int needed = width * height * bytesPerPixel(config);
+        boolean reconfigurable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        Map.Entry<Integer, LinkedList<Bitmap>> entry = buckets.ceilingEntry(needed);
+        while (entry != null && entry.getKey() <= (long) needed * MAX_SIZE_FACTOR) {
+            Iterator<Bitmap> it = entry.getValue().iterator();
+            while (it.hasNext()) {
+                Bitmap bitmap = it.next();
+                boolean exact = bitmap.getWidth() == width && bitmap.getHeight() == height
+                        && bitmap.getConfig() == config;
+                if (exact || reconfigurable) {
+                    it.remove();
+                    if (entry.getValue().isEmpty()) {
+                        buckets.remove(entry.getKey());
+                    }
+                    pooled.remove(bitmap);
+                    residentBytes -= entry.getKey();
+                    if (!exact) {
+                        reconfigure(bitmap, width, height, config);
+                    }
+                    hits++;
+                    return bitmap;
+                }
+            }
+            if (!reconfigurable) {
+                // only the exact size fits
+                break;
+            }
+            entry = buckets.higherEntry(entry.getKey());
+        }
+        misses++;
+        return null;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void reconfigure(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+        bitmap.reconfigure(width, height, config);
+    }
+
+    /**
+     * Recycles the bitmaps that were returned first until the pool fits into maxBytes.
+     */
+    private void trim() {
+        Iterator<Bitmap> it = pooled.iterator();
+        while (residentBytes > maxBytes && it.hasNext()) {
+            Bitmap bitmap = it.next();
+            it.remove();
+            int size = sizeOf(bitmap);
+            LinkedList<Bitmap> bucket = buckets.get(size);
+            bucket.remove(bitmap);
+            if (bucket.isEmpty()) {
+                buckets.remove(size);
+            }
+            residentBytes -= size;
+            evicted++;
+            bitmap.recycle();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static int sizeOf(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+}
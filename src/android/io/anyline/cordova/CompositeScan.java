@@ -0,0 +1,201 @@
+/*
+ * Anyline Cordova Plugin
+ * CompositeScan.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.barcode.Barcode;
+import com.google.android.gms.vision.barcode.BarcodeDetector;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+import at.nineyards.anyline.models.AnylineImage;
+
+/**
+ * Runs the native barcode detector next to the module of the scan, on the frames of the same camera session,
+ * and merges what it finds into the result. Configured with "composite" in the view config:
+ * <pre>
+ * "composite": { "barcode": { "sampleInterval": 500, "required": true, "maxAge": 1500 } }
+ * </pre>
+ * For MRZ and ANYLINE_OCR the detector runs on the full frame of a result, at most every sampleInterval
+ * milliseconds (0 every result). In between, the barcodes of the last detection are used. For meters the
+ * native barcode detection of the scan view is enabled and its frames are sampled at the same rate.
+ * <p/>
+ * Detected barcodes are used for at most maxAge milliseconds (default three times the sample interval, at
+ * least {@link #MIN_MAX_AGE}), so the barcode of a record scanned before is not merged into the next one.
+ * <p/>
+ * The barcodes are put to the result as "detectedBarcodes". With "required" a result is only reported once
+ * a barcode was found, so a record that needs both fields is complete.
+ * <p/>
+ * The barcode detection runs on the worker thread of the sdk, one detection at a time.
+ */
+public class CompositeScan {
+
+    private static final String TAG = CompositeScan.class.getSimpleName();
+
+    public static final String COMPOSITE = "composite";
+    public static final String MODULE_BARCODE = "barcode";
+    public static final String SAMPLE_INTERVAL = "sampleInterval";
+    public static final String REQUIRED = "required";
+    public static final String MAX_AGE = "maxAge";
+
+    public static final long MIN_MAX_AGE = 1000;
+
+    public static final String KEY_DETECTED_BARCODES = "detectedBarcodes";
+
+    private final long sampleInterval;
+    private final boolean barcodeRequired;
+    private final long maxAge;
+
+    private BarcodeDetector detector;
+    private long lastSample = -1;
+    private JSONArray lastBarcodes = new JSONArray();
+    private long lastBarcodesAt = -1;
+
+    /**
+     * @param maxAge how long detected barcodes are used in milliseconds, 0 for the default
+     */
+    public CompositeScan(long sampleInterval, boolean barcodeRequired, long maxAge) {
+        this.sampleInterval = Math.max(0, sampleInterval);
+        this.barcodeRequired = barcodeRequired;
+        this.maxAge = maxAge > 0 ? maxAge : Math.max(MIN_MAX_AGE, 3 * this.sampleInterval);
+    }
+
+    /**
+     * @param json the composite json, may be null or empty
+     * @return the composite scan, or null if none is configured
+     */
+    public static CompositeScan fromJson(String json) throws JSONException {
+        if (json == null || json.length() == 0) {
+            return null;
+        }
+        return fromJson(new JSONObject(json));
+    }
+
+    /**
+     * @throws IllegalArgumentException if a module is not supported
+     */
+    public static CompositeScan fromJson(JSONObject json) {
+        if (json == null) {
+            return null;
+        }
+        Iterator<String> modules = json.keys();
+        while (modules.hasNext()) {
+            String module = modules.next();
+            if (!MODULE_BARCODE.equals(module)) {
+                throw new IllegalArgumentException("Unsupported composite module: " + module);
+            }
+        }
+        JSONObject barcode = json.optJSONObject(MODULE_BARCODE);
+        if (barcode == null) {
+            return null;
+        }
+        return new CompositeScan(barcode.optLong(SAMPLE_INTERVAL, 0), barcode.optBoolean(REQUIRED, false),
+                barcode.optLong(MAX_AGE, 0));
+    }
+
+    public boolean isBarcodeRequired() {
+        return barcodeRequired;
+    }
+
+    /**
+     * @param now the current time in milliseconds (monotonic)
+     * @return true if a frame should be passed to the barcode detector now
+     */
+    public synchronized boolean shouldSample(long now) {
+        if (lastSample >= 0 && now - lastSample < sampleInterval) {
+            return false;
+        }
+        lastSample = now;
+        return true;
+    }
+
+    /**
+     * Detects the barcodes in the frame if it is due (see {@link #shouldSample}).
+     *
+     * @param frame the full frame of the result, may be null
+     * @param now   the current time in milliseconds (monotonic)
+     * @return the barcodes of the last detection, empty if they are older than maxAge
+     */
+    public synchronized JSONArray detectBarcodes(Context context, AnylineImage frame, long now) {
+        if (frame == null || !shouldSample(now)) {
+            return getLastBarcodes(now);
+        }
+        if (detector == null) {
+            detector = new BarcodeDetector.Builder(context.getApplicationContext())
+                    .setBarcodeFormats(Barcode.ALL_FORMATS).build();
+        }
+        if (!detector.isOperational()) {
+            // the detector dependencies are downloaded by play services on first use
+            Log.w(TAG, "The native barcode detector is not available yet.");
+            return getLastBarcodes(now);
+        }
+        SparseArray<Barcode> barcodes = detector.detect(new Frame.Builder().setBitmap(frame.getBitmap()).build());
+        JSONArray json = new JSONArray();
+        try {
+            for (int i = 0; i < barcodes.size(); i++) {
+                json.put(toJson(barcodes.valueAt(i).rawValue, barcodes.valueAt(i).format));
+            }
+        } catch (JSONException jsonException) {
+            //should not be possible
+            Log.e(TAG, "Error while putting barcode to json.", jsonException);
+        }
+        onBarcodesDetected(json, now);
+        return json;
+    }
+
+    /**
+     * Remembers barcodes the scan view detected itself (meters), they are used like detected ones.
+     *
+     * @param now the time they were detected in milliseconds (monotonic)
+     */
+    public synchronized void onBarcodesDetected(JSONArray barcodes, long now) {
+        lastBarcodes = barcodes;
+        lastBarcodesAt = now;
+    }
+
+    /**
+     * @param now the current time in milliseconds (monotonic)
+     * @return the barcodes of the last detection, empty if they are older than maxAge
+     */
+    public synchronized JSONArray getLastBarcodes(long now) {
+        if (lastBarcodesAt < 0 || now - lastBarcodesAt > maxAge) {
+            return new JSONArray();
+        }
+        return lastBarcodes;
+    }
+
+    /**
+     * Forgets the sampled barcodes, e.g. when a new scan request starts. The detector is kept.
+     */
+    public synchronized void reset() {
+        lastSample = -1;
+        lastBarcodes = new JSONArray();
+        lastBarcodesAt = -1;
+    }
+
+    public synchronized void release() {
+        if (detector != null) {
+            detector.release();
+            detector = null;
+        }
+    }
+
+    public static JSONObject toJson(String value, int format) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("value", value);
+        json.put("format", BarcodeFormats.toFormatName(format));
+        return json;
+    }
+}
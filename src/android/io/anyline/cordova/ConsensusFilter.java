@@ -0,0 +1,242 @@
+/*
+ * Anyline Cordova Plugin
+ * ConsensusFilter.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Holds back the results of continuous scanning until the reading is stable over several frames.
+ * Configured with "consensus" in the view config:
+ * <pre>
+ * "consensus": { "strategy": "nOfM", "n": 3, "m": 5 }           // the same value in n of the last m frames
+ * "consensus": { "strategy": "weighted", "m": 5, "minWeight": 200 } // the confidences of the value in the last
+ *                                                                  // m frames sum up to minWeight, and no other
+ *                                                                  // value has more
+ * "consensus": { "strategy": "stable", "window": 800, "minFrames": 2 } // the same value in every frame for
+ *                                                                      // window milliseconds
+ * </pre>
+ * Once a value is accepted the history is cleared. With "emitRepeats": false (default) the same value is not
+ * accepted again until another value was accepted.
+ * <p/>
+ * Thread safe, results are offered on the worker thread of the sdk while the history may be reset from the
+ * main thread (e.g. when the scan mode changes).
+ */
+public class ConsensusFilter {
+
+    public static final String CONSENSUS = "consensus";
+    public static final String STRATEGY = "strategy";
+    public static final String N = "n";
+    public static final String M = "m";
+    public static final String MIN_WEIGHT = "minWeight";
+    public static final String WINDOW = "window";
+    public static final String MIN_FRAMES = "minFrames";
+    public static final String EMIT_REPEATS = "emitRepeats";
+
+    public enum Strategy {
+        N_OF_M("nOfM"),
+        WEIGHTED("weighted"),
+        STABLE("stable");
+
+        private final String configName;
+
+        Strategy(String configName) {
+            this.configName = configName;
+        }
+
+        public static Strategy fromConfigName(String name) {
+            for (Strategy strategy : values()) {
+                if (strategy.configName.equalsIgnoreCase(name)) {
+                    return strategy;
+                }
+            }
+            throw new IllegalArgumentException("Unknown consensus strategy: " + name);
+        }
+    }
+
+    private final Strategy strategy;
+    private final int n;
+    private final int minWeight;
+    private final long window;
+    private final int minFrames;
+    private final boolean emitRepeats;
+
+    // the last m values, used by N_OF_M and WEIGHTED
+    private final String[] values;
+    private final int[] confidences;
+    private int head;
+    private int count;
+
+    // the current run of identical values, used by STABLE
+    private String runValue;
+    private long runStart;
+    private int runLength;
+
+    private String lastAccepted;
+    private int lastAgreement;
+
+    public ConsensusFilter(Strategy strategy, int n, int m, int minWeight, long window, int minFrames,
+                           boolean emitRepeats) {
+        if (m < 1 || n < 1 || n > m) {
+            throw new IllegalArgumentException("Invalid consensus config: n must be between 1 and m");
+        }
+        this.strategy = strategy;
+        this.n = n;
+        this.minWeight = minWeight;
+        this.window = window;
+        this.minFrames = minFrames;
+        this.emitRepeats = emitRepeats;
+        values = new String[m];
+        confidences = new int[m];
+    }
+
+    /**
+     * @param json the consensus json, may be null or empty
+     * @return the filter, or null if no consensus is configured
+     */
+    public static ConsensusFilter fromJson(String json) throws JSONException {
+        if (json == null || json.length() == 0) {
+            return null;
+        }
+        return fromJson(new JSONObject(json));
+    }
+
+    public static ConsensusFilter fromJson(JSONObject json) {
+        Strategy strategy = Strategy.fromConfigName(json.optString(STRATEGY, Strategy.N_OF_M.configName));
+        int m = json.optInt(M, 5);
+        return new ConsensusFilter(strategy,
+                json.optInt(N, Math.min(3, m)),
+                m,
+                json.optInt(MIN_WEIGHT, 200),
+                json.optLong(WINDOW, 800),
+                json.optInt(MIN_FRAMES, 2),
+                json.optBoolean(EMIT_REPEATS, false));
+    }
+
+    /**
+     * Offers the value of one frame.
+     *
+     * @param value      the value of the frame
+     * @param confidence the confidence of the value (0-100)
+     * @param now        the current time in milliseconds (monotonic)
+     * @return true if the value reached consensus and should be reported
+     */
+    public synchronized boolean offer(String value, int confidence, long now) {
+        if (value == null) {
+            return false;
+        }
+        boolean accepted;
+        switch (strategy) {
+            case STABLE:
+                accepted = offerStable(value, now);
+                break;
+            case WEIGHTED:
+                add(value, confidence);
+                accepted = isWeightedWinner(value);
+                break;
+            default:
+                add(value, confidence);
+                lastAgreement = countOf(value);
+                accepted = lastAgreement >= n;
+                break;
+        }
+        if (!accepted) {
+            return false;
+        }
+
+        reset();
+        if (!emitRepeats && value.equals(lastAccepted)) {
+            return false;
+        }
+        lastAccepted = value;
+        return true;
+    }
+
+    /**
+     * @return the number of frames that agreed on the last offered value
+     */
+    public synchronized int getLastAgreement() {
+        return lastAgreement;
+    }
+
+    /**
+     * Clears the history, e.g. when the scan mode changes.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = null;
+        }
+        head = 0;
+        count = 0;
+        runValue = null;
+        runLength = 0;
+    }
+
+    /**
+     * Clears the history and forgets the last accepted value, e.g. when a new scan request starts.
+     */
+    public synchronized void clear() {
+        reset();
+        lastAccepted = null;
+        lastAgreement = 0;
+    }
+
+    private boolean offerStable(String value, long now) {
+        if (!value.equals(runValue)) {
+            runValue = value;
+            runStart = now;
+            runLength = 0;
+        }
+        runLength++;
+        lastAgreement = runLength;
+        return runLength >= minFrames && now - runStart >= window;
+    }
+
+    private boolean isWeightedWinner(String value) {
+        int weight = weightOf(value);
+        lastAgreement = countOf(value);
+        if (weight < minWeight) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            String other = values[i];
+            if (!other.equals(value) && weightOf(other) > weight) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(String value, int confidence) {
+        values[head] = value;
+        confidences[head] = confidence;
+        head = (head + 1) % values.length;
+        if (count < values.length) {
+            count++;
+        }
+    }
+
+    private int countOf(String value) {
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            if (value.equals(values[i])) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private int weightOf(String value) {
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            if (value.equals(values[i])) {
+                result += confidences[i];
+            }
+        }
+        return result;
+    }
+}
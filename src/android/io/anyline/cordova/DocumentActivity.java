@@ -26,7 +26,6 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
-import at.nineyards.anyline.camera.AnylineViewConfig;
 import at.nineyards.anyline.camera.CameraController;
 import at.nineyards.anyline.camera.CameraOpenListener;
 import at.nineyards.anyline.models.AnylineImage;
@@ -44,12 +43,15 @@ public class DocumentActivity extends AnylineBaseActivity implements CameraOpenL
     private DocumentScanView documentScanView;
     private Toast notificationToast;
     private ImageView imageViewResult;
+    // shown in imageViewResult, from the bitmap pool
+    private Bitmap thumbnail;
     private ProgressDialog progressDialog;
     private List<PointF> lastOutline;
     private ObjectAnimator errorMessageAnimator;
     private FrameLayout errorMessageLayout;
     private TextView errorMessage;
     private long lastErrorRecieved = 0;
+    private boolean cancelOnResult = true;
 
     private android.os.Handler handler = new android.os.Handler();
 
@@ -98,14 +100,15 @@ public class DocumentActivity extends AnylineBaseActivity implements CameraOpenL
         JSONObject jsonObject;
 
         try {
-            jsonObject = new JSONObject(configJson);
+            jsonObject = getConfigJson();
         } catch (Exception e) {
             //JSONException or IllegalArgumentException is possible, return it to javascript
             finishWithError(Resources.getString(this, "error_invalid_json_data") + "\n" + e.getLocalizedMessage());
             return;
         }
 
-        documentScanView.setConfig(new AnylineViewConfig(this, jsonObject));
+        documentScanView.setConfig(getAnylineViewConfig(jsonObject));
+        cancelOnResult = jsonObject.optBoolean("cancelOnResult", true);
 
         // Optional: Set a ratio you want the documents to be restricted to. default is set to DIN_AX
         documentScanView.setDocumentRatios(DocumentScanView.DocumentRatio.DIN_AX_PORTRAIT.getRatio(), DocumentScanView.DocumentRatio.DIN_AX_LANDSCAPE.getRatio());
@@ -146,7 +149,11 @@ public class DocumentActivity extends AnylineBaseActivity implements CameraOpenL
                                     imageViewResult.getLayoutParams().height = heightDP;
                                 }
 
-                                imageViewResult.setImageBitmap(Bitmap.createScaledBitmap(transformedImage.getBitmap(), widthDP, heightDP, false));
+                                // the thumbnail is drawn into a recycled bitmap, the one it replaces goes back to the pool
+                                Bitmap previousThumbnail = thumbnail;
+                                thumbnail = BitmapPool.getInstance().scale(bmpTransformedImage, widthDP, heightDP, false);
+                                imageViewResult.setImageBitmap(thumbnail);
+                                BitmapPool.getInstance().put(previousThumbnail);
 
                 /**
                  * IMPORTANT: cache provided frames here, and release them at the end of this onResult. Because
@@ -160,15 +167,10 @@ public class DocumentActivity extends AnylineBaseActivity implements CameraOpenL
                  */
                 File outDir = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES), "ok");
                 outDir.mkdir();
-                // change the file ending to png if you want a png
-                File outFile = new File(outDir, "" + System.currentTimeMillis() + ".jpg");
+                // the format, size and quality are defined by the image output policy
+                File outFile = new File(outDir, "" + System.currentTimeMillis() + imageOutputPolicy.getExtension());
                 try {
-                    // convert the transformed image into a gray scaled image internally
-                    // transformedImage.getGrayCvMat(false);
-                    // get the transformed image as bitmap
-                    // Bitmap bmp = transformedImage.getBitmap();
-                    // save the image with quality 100 (only used for jpeg, ignored for png)
-                    transformedImage.save(outFile, 100);
+                    imageOutputPolicy.write(transformedImage, outFile);
                     showToast(getString(getResources().getIdentifier("document_image_saved_to", "string", getPackageName())) + " " + outFile.getAbsolutePath());
                 } catch (IOException e) {
                     e.printStackTrace();
@@ -179,35 +181,12 @@ public class DocumentActivity extends AnylineBaseActivity implements CameraOpenL
                 fullFrame.release();
 
 
-                JSONObject jsonResult = new JSONObject();
-                try {
-                    jsonResult.put("imagePath", outFile.getAbsolutePath());
-
-                    jsonResult.put("outline", jsonForOutline(documentResult.getOutline()));
-                    jsonResult.put("confidence", documentResult.getConfidence());
-
-                } catch (Exception jsonException) {
-                    //should not be possible
-                    Log.e(TAG, "Error while putting image path to json.", jsonException);
-                }
-
-                Boolean cancelOnResult = true;
+                ResultEncoder jsonResult = beginResult("DOCUMENT");
+                jsonResult.put("imagePath", outFile.getAbsolutePath());
+                jsonResult.putOutline(documentResult.getOutline());
+                jsonResult.put("confidence", documentResult.getConfidence());
 
-                JSONObject jsonObject;
-                try {
-                    jsonObject = new JSONObject(configJson);
-                    cancelOnResult = jsonObject.getBoolean("cancelOnResult");
-                } catch (Exception e) {
-                    Log.d(TAG, e.getLocalizedMessage());
-                }
-
-                if (cancelOnResult) {
-                    ResultReporter.onResult(jsonResult, true);
-                    setResult(AnylinePlugin.RESULT_OK);
-                    finish();
-                } else {
-                    ResultReporter.onResult(jsonResult, false);
-                }
+                reportResult(jsonResult, cancelOnResult);
 
 
             }
@@ -238,14 +217,15 @@ public class DocumentActivity extends AnylineBaseActivity implements CameraOpenL
 
                 // if there is a problem, here is how images could be saved in the error case
                 // this will be a full, not cropped, not transformed image
-                AnylineImage image = documentScanView.getCurrentFullImage();
+                AnylineImage image = imageOutputPolicy.isFullFrameEnabled() ? documentScanView.getCurrentFullImage() : null;
 
                 if (image != null) {
                     File outDir = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES), "error");
                     outDir.mkdir();
-                    File outFile = new File(outDir, "" + System.currentTimeMillis() + documentError.name() + ".jpg");
+                    File outFile = new File(outDir, "" + System.currentTimeMillis() + documentError.name()
+                            + imageOutputPolicy.getExtension());
                     try {
-                        image.save(outFile, 100);
+                        imageOutputPolicy.write(image, outFile);
                         Log.d(TAG, "error image saved to " + outFile.getAbsolutePath());
                     } catch (IOException e) {
                         e.printStackTrace();
@@ -297,6 +277,16 @@ public class DocumentActivity extends AnylineBaseActivity implements CameraOpenL
 
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (thumbnail != null) {
+            imageViewResult.setImageBitmap(null);
+            BitmapPool.getInstance().put(thumbnail);
+            thumbnail = null;
+        }
+    }
+
 
     private void showErrorMessageFor(DocumentScanView.DocumentError documentError) {
         showErrorMessageFor(documentError, false);
@@ -406,6 +396,17 @@ public class DocumentActivity extends AnylineBaseActivity implements CameraOpenL
         documentScanView.releaseCameraInBackground();
     }
 
+    @Override
+    protected int getDefaultImageQuality() {
+        return 100;
+    }
+
+    @Override
+    protected boolean supportsPersistentSession() {
+        // the error message handler is torn down in onStop, so this activity cannot be parked
+        return false;
+    }
+
     @Override
     protected void onStop() {
         super.onStop();
@@ -0,0 +1,347 @@
+/*
+ * Anyline Cordova Plugin
+ * EmbeddedScanner.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.WebView;
+import android.widget.FrameLayout;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+import at.nineyards.anyline.camera.AnylineViewConfig;
+import at.nineyards.anyline.camera.CameraController;
+import at.nineyards.anyline.camera.CameraOpenListener;
+
+/**
+ * Shows the scan view inside the cordova activity, at a rect of the web view, instead of starting a scan
+ * activity. Enabled with "embedded" in the view config of a BARCODE or MRZ scan:
+ * <pre>
+ * "embedded": { "x": 0, "y": 80, "width": 360, "height": 240, "position": "above" }
+ * </pre>
+ * The rect is in css pixels of the web view. With "position": "behind" the scan view is put behind the web
+ * view, which is made transparent, so the page can draw its own ui on top of the camera. Its own background
+ * is restored once the scan view is above it again or closed.
+ * <p/>
+ * The scan view is kept when it is hidden. Another scan with the same license and view config (apart from
+ * the rect) only shows it again and restarts scanning, a different config replaces it. Results go through
+ * the same {@link ResultPipeline} as in the scan activities.
+ * <p/>
+ * Must be used on the main thread.
+ */
+public class EmbeddedScanner implements CameraOpenListener, Thread.UncaughtExceptionHandler {
+
+    private static final String TAG = EmbeddedScanner.class.getSimpleName();
+
+    public static final String EMBEDDED = "embedded";
+    public static final String X = "x";
+    public static final String Y = "y";
+    public static final String WIDTH = "width";
+    public static final String HEIGHT = "height";
+    public static final String POSITION = "position";
+
+    public static final String POSITION_ABOVE = "above";
+    public static final String POSITION_BEHIND = "behind";
+
+    private final Activity activity;
+    private final View webView;
+    private final int webViewBackgroundColor;
+
+    private ScanEngine engine;
+    private String engineKey;
+    private String module;
+    private boolean behind;
+    private boolean visible;
+    // the background of a web view that is no WebView, saved while the scan view is behind it
+    private Drawable originalBackground;
+
+    // read on the worker thread of the engine
+    private volatile String requestId;
+    private volatile ResultPipeline resultPipeline;
+    private volatile boolean cancelOnResult;
+
+    /**
+     * @param webViewBackgroundColor the background color of the page (the BackgroundColor preference of the app),
+     *                               a WebView does not expose it
+     */
+    public EmbeddedScanner(Activity activity, View webView, int webViewBackgroundColor) {
+        this.activity = activity;
+        this.webView = webView;
+        this.webViewBackgroundColor = webViewBackgroundColor;
+    }
+
+    /**
+     * @return true if the view config asks for an embedded scan view
+     */
+    public static boolean isEmbedded(JSONObject viewConfig) {
+        return viewConfig != null && viewConfig.optJSONObject(EMBEDDED) != null;
+    }
+
+    /**
+     * Shows the scan view for the request and starts scanning. A request that is still running is canceled.
+     *
+     * @param module  the module (BARCODE or MRZ)
+     * @param profile the profile of the scan, its prebuilt view config is used, may be null
+     * @throws JSONException            if the view config is invalid
+     * @throws IOException              if the replay recording could not be read
+     * @throws IllegalArgumentException if the view config is invalid
+     */
+    public void show(String requestId, String module, String licenseKey, JSONObject viewConfig, ScanProfile profile)
+            throws JSONException, IOException {
+        JSONObject engineConfig = new JSONObject(viewConfig.toString());
+        engineConfig.remove(EMBEDDED);
+        String key = module + "\n" + licenseKey + "\n" + engineConfig.toString();
+
+        cancelRequest();
+        if (!key.equals(engineKey)) {
+            close();
+            ScanEngine newEngine = createEngine(module, viewConfig, profile);
+            newEngine.init(licenseKey, this, this, new ScanEngine.Listener() {
+                @Override
+                public void onResult(ScanEngine.Result result) {
+                    reportResult(result);
+                }
+            });
+            engine = newEngine;
+            engineKey = key;
+            this.module = module;
+        }
+
+        ResultPipeline previousPipeline = resultPipeline;
+        resultPipeline = ResultPipeline.fromViewConfig(activity, viewConfig, 90);
+        if (previousPipeline != null) {
+            previousPipeline.release();
+        }
+        cancelOnResult = engine.isCancelOnResult();
+        this.requestId = requestId;
+
+        JSONObject embedded = viewConfig.getJSONObject(EMBEDDED);
+        attach(POSITION_BEHIND.equals(embedded.optString(POSITION, POSITION_ABOVE)));
+        setRect(embedded);
+        engine.getView().setVisibility(View.VISIBLE);
+        visible = true;
+        engine.startScanning();
+    }
+
+    private ScanEngine createEngine(String module, JSONObject viewConfig, ScanProfile profile)
+            throws JSONException, IOException {
+        boolean barcode = "BARCODE".equals(module);
+        if (ReplayScanEngine.isEnabled(viewConfig)) {
+            return new ReplayScanEngine(activity, viewConfig, barcode ? "value" : null);
+        }
+        AnylineViewConfig config = profile != null ? profile.getViewConfig()
+                : new AnylineViewConfig(activity, viewConfig);
+        return barcode ? new BarcodeScanEngine(activity, config) : new MrzScanEngine(activity, config);
+    }
+
+    /**
+     * Moves and resizes the scan view.
+     *
+     * @param rect x, y, width and height in css pixels of the web view
+     */
+    public void setRect(JSONObject rect) {
+        if (engine == null || rect == null) {
+            return;
+        }
+        float density = activity.getResources().getDisplayMetrics().density;
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+                Math.round(rect.optInt(WIDTH, 0) * density), Math.round(rect.optInt(HEIGHT, 0) * density));
+        params.leftMargin = webView.getLeft() + Math.round(rect.optInt(X, 0) * density);
+        params.topMargin = webView.getTop() + Math.round(rect.optInt(Y, 0) * density);
+        engine.getView().setLayoutParams(params);
+    }
+
+    /**
+     * Stops scanning and hides the scan view, it is kept for the next scan. The running request is canceled.
+     *
+     * @return true if the scan view was visible
+     */
+    public boolean hide() {
+        cancelRequest();
+        return hideView();
+    }
+
+    /**
+     * Removes and releases the scan view. The running request is canceled.
+     */
+    public void close() {
+        hide();
+        if (engine == null) {
+            return;
+        }
+        View view = engine.getView();
+        if (view.getParent() != null) {
+            ((ViewGroup) view.getParent()).removeView(view);
+        }
+        if (behind) {
+            restoreBackground();
+            behind = false;
+        }
+        engine.release();
+        engine = null;
+        engineKey = null;
+        ResultPipeline pipeline = resultPipeline;
+        if (pipeline != null) {
+            pipeline.release();
+        }
+    }
+
+    /**
+     * Stops scanning while the cordova activity is paused.
+     */
+    public void onPause() {
+        if (engine != null && visible) {
+            engine.stopScanning();
+        }
+    }
+
+    public void onResume() {
+        if (engine != null && visible) {
+            engine.startScanning();
+        }
+    }
+
+    private boolean hideView() {
+        if (engine == null || !visible) {
+            return false;
+        }
+        engine.stopScanning();
+        engine.getView().setVisibility(View.GONE);
+        visible = false;
+        return true;
+    }
+
+    private void cancelRequest() {
+        String id = requestId;
+        requestId = null;
+        if (id != null) {
+            ResultReporter.onCancel(id);
+        }
+    }
+
+    private void attach(boolean behind) {
+        View view = engine.getView();
+        ViewGroup content = (ViewGroup) activity.findViewById(android.R.id.content);
+        if (view.getParent() != null && this.behind == behind) {
+            return;
+        }
+        if (view.getParent() != null) {
+            ((ViewGroup) view.getParent()).removeView(view);
+        }
+        if (behind) {
+            content.addView(view, 0);
+            if (!this.behind) {
+                makeBackgroundTransparent();
+            }
+        } else {
+            content.addView(view);
+            if (this.behind) {
+                restoreBackground();
+            }
+        }
+        this.behind = behind;
+    }
+
+    @SuppressWarnings("deprecation")
+    private void makeBackgroundTransparent() {
+        if (webView instanceof WebView) {
+            // sets the background of the page
+            webView.setBackgroundColor(Color.TRANSPARENT);
+        } else {
+            // setBackgroundColor would change a color drawable in place, so it is replaced instead
+            originalBackground = webView.getBackground();
+            webView.setBackgroundDrawable(new ColorDrawable(Color.TRANSPARENT));
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void restoreBackground() {
+        if (webView instanceof WebView) {
+            webView.setBackgroundColor(webViewBackgroundColor);
+        } else {
+            webView.setBackgroundDrawable(originalBackground);
+            originalBackground = null;
+        }
+    }
+
+    /**
+     * Builds, filters and reports a result, on the worker thread of the engine.
+     */
+    private void reportResult(ScanEngine.Result result) {
+        String id = requestId;
+        ResultPipeline pipeline = resultPipeline;
+        if (id == null || pipeline == null) {
+            // the request ended while the frame was processed
+            return;
+        }
+        boolean cancelOnResult = this.cancelOnResult;
+
+        ResultEncoder jsonResult = pipeline.buildEngineResult(id, module, result, cancelOnResult);
+        if (jsonResult == null) {
+            return;
+        }
+        if (cancelOnResult) {
+            requestId = null;
+            pipeline.deliver(id, jsonResult, true);
+            activity.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    hideView();
+                }
+            });
+        } else {
+            pipeline.deliver(id, jsonResult, false);
+        }
+    }
+
+    @Override
+    public void onCameraOpened(CameraController cameraController, int width, int height) {
+        Log.d(TAG, "Camera opened. Frame size " + width + " x " + height + ".");
+        ScanTracer.mark(requestId, ScanTracer.STAGE_CAMERA_OPENED);
+    }
+
+    @Override
+    public void onCameraError(Exception e) {
+        String id = requestId;
+        requestId = null;
+        ResultReporter.onError(id, Resources.getString(activity, "error_accessing_camera") + "\n"
+                + e.getLocalizedMessage());
+        close();
+    }
+
+    /**
+     * Errors of the worker thread of the engine, the request ends with the error and the scan view is closed.
+     */
+    @Override
+    public void uncaughtException(Thread thread, Throwable e) {
+        Log.e(TAG, "Cached uncaught exception", e);
+        String msg = e.getMessage();
+        String errorMessage;
+        if (msg != null && (msg.contains("license") || msg.contains("License"))) {
+            errorMessage = Resources.getString(activity, "error_licence_invalid") + "\n\n" + msg;
+        } else {
+            errorMessage = Resources.getString(activity, "error_occured") + "\n\n" + e.getLocalizedMessage();
+        }
+        String id = requestId;
+        requestId = null;
+        ResultReporter.onError(id, errorMessage);
+        activity.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+    }
+}
@@ -8,37 +8,31 @@
  */
 package io.anyline.cordova;
 
+import android.content.Intent;
 import android.content.res.ColorStateList;
 import android.graphics.Rect;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.widget.RadioButton;
 import android.widget.RadioGroup;
 import android.widget.RelativeLayout;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONArray;
-
-import java.util.ArrayList;
-import java.util.List;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.UUID;
 
-import at.nineyards.anyline.camera.AnylineViewConfig;
 import at.nineyards.anyline.camera.CameraController;
 import at.nineyards.anyline.models.AnylineImage;
 import at.nineyards.anyline.modules.energy.EnergyResultListener;
 import at.nineyards.anyline.modules.energy.EnergyScanView;
 import at.nineyards.anyline.modules.energy.EnergyResult;
-import at.nineyards.anyline.util.TempFileUtil;
 import at.nineyards.anyline.modules.barcode.NativeBarcodeResultListener;
-import at.nineyards.anyline.modules.barcode.BarcodeScanView;
 
 import android.util.SparseArray;
 
@@ -52,8 +46,10 @@ public class EnergyActivity extends AnylineBaseActivity {
     private RadioGroup radioGroup;
     private CordovaUIConfig cordovaUiConfig;
     private boolean nativeBarcodeEnabled;
-    private List<String> barcodeList;
-    private JSONArray jsonArray;
+    private BarcodeAccumulator barcodeAccumulator;
+    private volatile EnergyScanView.ScanMode currentScanMode;
+    private ModeSwitchTracker modeSwitchTracker;
+    private MeterPreset meterPreset;
 
 
     @Override
@@ -61,26 +57,48 @@ public class EnergyActivity extends AnylineBaseActivity {
         super.onCreate(savedInstanceState);
 
         String scanModeString = getIntent().getStringExtra(AnylinePlugin.EXTRA_SCAN_MODE);
-        nativeBarcodeEnabled = getIntent().getBooleanExtra(AnylinePlugin.EXTRA_SCAN_NATIVE_BARCODE, false);
+        nativeBarcodeEnabled = getIntent().getBooleanExtra(AnylinePlugin.EXTRA_SCAN_NATIVE_BARCODE, false)
+                || compositeScan != null;
+        if (nativeBarcodeEnabled) {
+            try {
+                barcodeAccumulator = BarcodeAccumulator.fromJson(
+                        getIntent().getStringExtra(AnylinePlugin.EXTRA_NATIVE_BARCODE_ACCUMULATION_JSON));
+            } catch (Exception e) {
+                // already validated by the plugin
+                Log.e(TAG, "Invalid native barcode accumulation config, using the defaults.", e);
+                barcodeAccumulator = new BarcodeAccumulator(50, 0, false, true);
+            }
+        }
+
+        String meterPresetJson = getIntent().getStringExtra(AnylinePlugin.EXTRA_METER_PRESET_JSON);
+        if (meterPresetJson != null) {
+            try {
+                meterPreset = MeterPreset.fromJson(new JSONObject(meterPresetJson));
+            } catch (Exception e) {
+                // already validated by the plugin
+                Log.e(TAG, "Invalid meter preset, reporting every reading.", e);
+            }
+        }
 
         energyScanView = new EnergyScanView(this, null);
 
         JSONObject jsonObject;
         try {
-            jsonObject = new JSONObject(configJson);
+            jsonObject = getConfigJson();
         } catch (Exception e) {
             //JSONException or IllegalArgumentException is possible, return it to javascript
             finishWithError(Resources.getString(this, "error_invalid_json_data") + "\n" + e.getLocalizedMessage());
             return;
         }
 
-        energyScanView.setConfig(new AnylineViewConfig(this, jsonObject));
+        energyScanView.setConfig(getAnylineViewConfig(jsonObject));
         if (jsonObject.has("reportingEnabled")) {
             energyScanView.setReportingEnabled(jsonObject.optBoolean("reportingEnabled", true));
         }
-        energyScanView.setScanMode(EnergyScanView.ScanMode.valueOf(scanModeString));
+        currentScanMode = EnergyScanView.ScanMode.valueOf(scanModeString);
+        energyScanView.setScanMode(currentScanMode);
 
-        cordovaUiConfig = new CordovaUIConfig(this, jsonObject);
+        cordovaUiConfig = profile != null ? profile.getUiConfig() : new CordovaUIConfig(this, jsonObject);
 
         // Creating a new RelativeLayout
         final RelativeLayout relativeLayout = new RelativeLayout(this);
@@ -102,6 +120,7 @@ public class EnergyActivity extends AnylineBaseActivity {
                 finishWithError(Resources.getString(this, "error_invalid_segment_config"));
             }
 
+            modeSwitchTracker = new ModeSwitchTracker();
             RadioButton[] radioButtons = new RadioButton[titles.size()];
             radioGroup = new RadioGroup(this);
             radioGroup.setOrientation(RadioGroup.VERTICAL);
@@ -127,7 +146,17 @@ public class EnergyActivity extends AnylineBaseActivity {
                 public void onCheckedChanged(RadioGroup group, int checkedId) {
                     View button = group.findViewById(checkedId);
                     String mode = modes.get(group.indexOfChild(button));
-                    energyScanView.setScanMode(EnergyScanView.ScanMode.valueOf(mode));
+                    EnergyScanView.ScanMode scanMode = EnergyScanView.ScanMode.valueOf(mode);
+                    if (scanMode == currentScanMode) {
+                        return;
+                    }
+                    currentScanMode = scanMode;
+                    modeSwitchTracker.onSwitch(mode, SystemClock.elapsedRealtime());
+                    if (consensusFilter != null) {
+                        // synchronized with the results that are offered on the worker thread
+                        consensusFilter.reset();
+                    }
+                    energyScanView.setScanMode(scanMode);
                     energyScanView.startScanning();
                 }
             });
@@ -147,6 +176,15 @@ public class EnergyActivity extends AnylineBaseActivity {
         initAnyline();
     }
 
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        // barcodes of the previous request are not delivered with the readings of the new one
+        if (barcodeAccumulator != null) {
+            barcodeAccumulator.clear();
+        }
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -191,20 +229,22 @@ public class EnergyActivity extends AnylineBaseActivity {
     private void initAnyline() {
 
         if (nativeBarcodeEnabled) {
-            barcodeList = new ArrayList<String>();
-            jsonArray = new JSONArray();
-
             energyScanView.enableBarcodeDetection(true, new NativeBarcodeResultListener() {
                 @Override
                 public void onBarcodesReceived(SparseArray<Barcode> barcodes) {
-                    if (barcodes.size() > 0) {
-                        for (int i = 0; i < barcodes.size(); i++) {
-                            if (!barcodeList.contains(barcodes.valueAt(i).rawValue)) {
-                                barcodeList.add(barcodes.valueAt(i).rawValue);
-                                jsonArray.put(wrapBarcodeInJson(barcodes.valueAt(i)));
-                            }
+                    long now = SystemClock.elapsedRealtime();
+                    // the sdk already ran the detector on the frame, the sample rate only applies to the
+                    // composite scan, the accumulator gets every barcode
+                    if (compositeScan != null && compositeScan.shouldSample(now)) {
+                        rememberCompositeBarcodes(barcodes);
+                    }
+                    for (int i = 0; i < barcodes.size(); i++) {
+                        Barcode barcode = barcodes.valueAt(i);
+                        JSONObject event = barcodeAccumulator.add(barcode.rawValue,
+                                BarcodeFormats.toFormatName(barcode.format), now);
+                        if (event != null) {
+                            ResultReporter.onResult(requestId, event, false);
                         }
-
                     }
                 }
             });
@@ -217,8 +257,15 @@ public class EnergyActivity extends AnylineBaseActivity {
 
             @Override
             public void onResult(EnergyResult energyResult) {
-                JSONObject jsonResult = new JSONObject();
+                ResultEncoder jsonResult = beginResult("ENERGY");
                 EnergyScanView.ScanMode scanMode = energyResult.getScanMode();
+                if (modeSwitchTracker != null) {
+                    JSONObject switchEvent = modeSwitchTracker.onResult(scanMode.toString(),
+                            SystemClock.elapsedRealtime());
+                    if (switchEvent != null) {
+                        ResultReporter.onResult(requestId, switchEvent, false);
+                    }
+                }
 
                 try {
                     switch (scanMode) {
@@ -248,30 +295,39 @@ public class EnergyActivity extends AnylineBaseActivity {
                     }
 
                     jsonResult.put("scanMode", scanMode.toString());
-                    jsonResult.put("reading", energyResult.getResult());
+                    jsonResult.putValue("reading", energyResult.getResult());
+                    // the preset describes the meter of the action, not the other modes of a segment control
+                    if (meterPreset != null && scanMode.toString().equals(meterPreset.getScanMode())
+                            && !meterPreset.apply(jsonResult, energyResult.getResult())) {
+                        return;
+                    }
 
                     //Quickfix for Dial Meter Alpha ScanMode Bug
-                    String scanModeConfig = getIntent().getStringExtra(AnylinePlugin.EXTRA_SCAN_MODE);
-                    if(!scanModeConfig.equals("DIAL_METER")) {
-                        jsonResult.put("outline", jsonForOutline(energyResult.getOutline()));
+                    if (scanMode != EnergyScanView.ScanMode.DIAL_METER) {
+                        jsonResult.putOutline(energyResult.getOutline());
                     }
                     jsonResult.put("confidence", energyResult.getConfidence());
 
+                    if (!passesFilters(jsonResult)) {
+                        return;
+                    }
+                    // before the consensus, which would not accept the reading again once the barcode is found
+                    if (compositeScan != null && compositeScan.isBarcodeRequired()
+                            && compositeScan.getLastBarcodes(SystemClock.elapsedRealtime()).length() == 0) {
+                        return;
+                    }
+                    if (!passesConsensus(jsonResult, energyScanView.getConfig().isCancelOnResult())) {
+                        return;
+                    }
 
-                    File imageFile = TempFileUtil.createTempFileCheckCache(EnergyActivity.this,
-                            UUID.randomUUID().toString(), ".jpg");
-
-                    energyResult.getCutoutImage().save(imageFile, 90);
-                    jsonResult.put("imagePath", imageFile.getAbsolutePath());
+                    saveCutoutImage(jsonResult, energyResult.getCutoutImage());
 
-                    if (energyResult.getFullImage() != null) {
-                        imageFile = TempFileUtil.createTempFileCheckCache(EnergyActivity.this,
-                                UUID.randomUUID().toString(), ".jpg");
-                        energyResult.getFullImage().save(imageFile, 90);
-                        jsonResult.put("fullImagePath", imageFile.getAbsolutePath());
+                    if (imageOutputPolicy.isFullFrameEnabled() && energyResult.getFullImage() != null) {
+                        saveImage(jsonResult, "fullImagePath", energyResult.getFullImage());
                     }
-                    if (jsonArray != null) {
-                        jsonResult.put("detectedBarcodes", jsonArray);
+                    if (barcodeAccumulator != null && !barcodeAccumulator.isStreaming()) {
+                        jsonResult.put("detectedBarcodes",
+                                barcodeAccumulator.takeForReading(SystemClock.elapsedRealtime()));
                     }
 
                 } catch (IOException e) {
@@ -283,75 +339,32 @@ public class EnergyActivity extends AnylineBaseActivity {
                 }
 
 
-                if (energyScanView.getConfig().isCancelOnResult()) {
-                    ResultReporter.onResult(jsonResult, true);
-                    setResult(AnylinePlugin.RESULT_OK);
-                    finish();
-                } else {
-                    ResultReporter.onResult(jsonResult, false);
-                }
+                reportResult(jsonResult, energyScanView.getConfig().isCancelOnResult());
             }
         });
         energyScanView.getAnylineController().setWorkerThreadUncaughtExceptionHandler(this);
-    }
 
-    private JSONObject wrapBarcodeInJson(Barcode b) {
-        JSONObject json = new JSONObject();
+        // always attached, it marks the first frame of the scan even without frame diagnostics
+        energyScanView.setDebugListener(createDebugListener());
+    }
 
+    /**
+     * Keeps the barcodes of a sampled frame for the required check of the composite scan.
+     */
+    private void rememberCompositeBarcodes(SparseArray<Barcode> barcodes) {
+        if (barcodes.size() == 0) {
+            return;
+        }
+        JSONArray json = new JSONArray();
         try {
-            json.put("value", b.rawValue);
-            json.put("format", findValidFormatForReference(b.format));
+            for (int i = 0; i < barcodes.size(); i++) {
+                json.put(CompositeScan.toJson(barcodes.valueAt(i).rawValue, barcodes.valueAt(i).format));
+            }
         } catch (JSONException jsonException) {
             //should not be possible
-            Log.e(TAG, "Error while putting image path to json.", jsonException);
-        }
-        return json;
-    }
-
-    private String findValidFormatForReference(int format) {
-        if (format == Barcode.AZTEC) {
-            return BarcodeScanView.BarcodeFormat.AZTEC.toString();
-        }
-        if (format == Barcode.CODABAR) {
-            return BarcodeScanView.BarcodeFormat.CODABAR.toString();
-        }
-        if (format == Barcode.CODE_39) {
-            return BarcodeScanView.BarcodeFormat.CODE_39.toString();
+            Log.e(TAG, "Error while putting barcode to json.", jsonException);
         }
-        if (format == Barcode.CODE_93) {
-            return BarcodeScanView.BarcodeFormat.CODE_93.toString();
-        }
-        if (format == Barcode.CODE_128) {
-            return BarcodeScanView.BarcodeFormat.CODE_128.toString();
-        }
-        if (format == Barcode.DATA_MATRIX) {
-            return BarcodeScanView.BarcodeFormat.DATA_MATRIX.toString();
-        }
-        if (format == Barcode.EAN_8) {
-            return BarcodeScanView.BarcodeFormat.EAN_8.toString();
-        }
-        if (format == Barcode.EAN_13) {
-            return BarcodeScanView.BarcodeFormat.EAN_13.toString();
-        }
-        if (format == Barcode.ITF) {
-            return BarcodeScanView.BarcodeFormat.ITF.toString();
-        }
-        if (format == Barcode.PDF417) {
-            return BarcodeScanView.BarcodeFormat.PDF_417.toString();
-        }
-        if (format == Barcode.QR_CODE) {
-            return BarcodeScanView.BarcodeFormat.QR_CODE.toString();
-        }
-        if (format == Barcode.UPC_A) {
-            return BarcodeScanView.BarcodeFormat.UPC_A.toString();
-        }
-        if (format == Barcode.UPC_E) {
-            return BarcodeScanView.BarcodeFormat.UPC_E.toString();
-        }
-
-        //others are currently not supported by the native scanner (RSS_14, RSS_EXPANDED, UPC_EAN_EXTENSION)
-        return BarcodeScanView.BarcodeFormat.UNKNOWN.toString();
-
+        compositeScan.onBarcodesDetected(json, SystemClock.elapsedRealtime());
     }
 
 }
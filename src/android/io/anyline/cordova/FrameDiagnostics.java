@@ -0,0 +1,191 @@
+/*
+ * Anyline Cordova Plugin
+ * FrameDiagnostics.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Aggregates what the debug listener of a scan view reports for every frame, instead of logging it. Enabled with
+ * "diagnostics" in the view config:
+ * <pre>
+ * "diagnostics": { "enabled": true, "interval": 1000 }
+ * </pre>
+ * Every interval milliseconds a sample is reported to the request:
+ * <pre>
+ * { "event": "frameDiagnostics", "frames": 310, "processedFrames": 120, "skippedFrames": 190,
+ *   "processedPerSecond": 4.1, "skippedPerSecond": 6.2, "contourFrames": 118,
+ *   "skipReasons": { "...": 150, "...": 40 },
+ *   "brightness": { "min": 41.2, "max": 180.5, "mean": 120.3, "histogram": [0, 0, 3, ...] } }
+ * </pre>
+ * A frame is counted when its brightness is reported, frames the sdk skipped (onRunSkipped) are counted by reason.
+ * The totals are since the scan view was started, the rates since the previous sample.
+ * <p/>
+ * Thread safe, frames are reported on the worker thread of the sdk and samples are taken on the main thread.
+ */
+public class FrameDiagnostics {
+
+    private static final String TAG = FrameDiagnostics.class.getSimpleName();
+
+    public static final String DIAGNOSTICS = "diagnostics";
+    public static final String ENABLED = "enabled";
+    public static final String INTERVAL = "interval";
+
+    public static final String EVENT_FRAME_DIAGNOSTICS = "frameDiagnostics";
+
+    private static final int HISTOGRAM_BINS = 16;
+    private static final double MAX_BRIGHTNESS = 256;
+    // reasons beyond this are counted as "other", so a reason with changing details can not grow the map
+    private static final int MAX_SKIP_REASONS = 32;
+    private static final String OTHER_REASON = "other";
+
+    private final long interval;
+
+    private final int[] histogram = new int[HISTOGRAM_BINS];
+    private final Map<String, Integer> skipReasons = new LinkedHashMap<String, Integer>();
+    private long frames;
+    private long skippedFrames;
+    private long contourFrames;
+    private double brightnessMin = Double.NaN;
+    private double brightnessMax = Double.NaN;
+    private double brightnessSum;
+
+    private long lastSampleTime;
+    private long lastSampleFrames;
+    private long lastSampleSkipped;
+
+    public FrameDiagnostics(long interval) {
+        this.interval = Math.max(100, interval);
+    }
+
+    /**
+     * @param json the diagnostics json, may be null or empty
+     * @return the diagnostics, or null if they are not enabled
+     */
+    public static FrameDiagnostics fromJson(String json) throws JSONException {
+        if (json == null || json.length() == 0) {
+            return null;
+        }
+        return fromJson(new JSONObject(json));
+    }
+
+    public static FrameDiagnostics fromJson(JSONObject json) {
+        if (json == null || !json.optBoolean(ENABLED, true)) {
+            return null;
+        }
+        return new FrameDiagnostics(json.optLong(INTERVAL, 1000));
+    }
+
+    /**
+     * @return the interval between two samples in milliseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    public synchronized void onBrightness(double brightness) {
+        frames++;
+        int bin = (int) (brightness / MAX_BRIGHTNESS * HISTOGRAM_BINS);
+        histogram[Math.max(0, Math.min(HISTOGRAM_BINS - 1, bin))]++;
+        if (Double.isNaN(brightnessMin) || brightness < brightnessMin) {
+            brightnessMin = brightness;
+        }
+        if (Double.isNaN(brightnessMax) || brightness > brightnessMax) {
+            brightnessMax = brightness;
+        }
+        brightnessSum += brightness;
+    }
+
+    public synchronized void onContours() {
+        contourFrames++;
+    }
+
+    public synchronized void onRunSkipped(String reason) {
+        skippedFrames++;
+        if (reason == null) {
+            reason = OTHER_REASON;
+        }
+        Integer count = skipReasons.get(reason);
+        if (count == null && skipReasons.size() >= MAX_SKIP_REASONS) {
+            reason = OTHER_REASON;
+            count = skipReasons.get(reason);
+        }
+        skipReasons.put(reason, count == null ? 1 : count + 1);
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = 0;
+        }
+        skipReasons.clear();
+        frames = 0;
+        skippedFrames = 0;
+        contourFrames = 0;
+        brightnessMin = Double.NaN;
+        brightnessMax = Double.NaN;
+        brightnessSum = 0;
+        lastSampleTime = 0;
+        lastSampleFrames = 0;
+        lastSampleSkipped = 0;
+    }
+
+    /**
+     * @param now the current time in milliseconds (monotonic)
+     * @return the sample as event json
+     */
+    public synchronized JSONObject sample(long now) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("event", EVENT_FRAME_DIAGNOSTICS);
+            long processed = Math.max(0, frames - skippedFrames);
+            json.put("frames", frames);
+            json.put("processedFrames", processed);
+            json.put("skippedFrames", skippedFrames);
+            json.put("contourFrames", contourFrames);
+
+            if (lastSampleTime > 0 && now > lastSampleTime) {
+                double seconds = (now - lastSampleTime) / 1000.0;
+                long framesSince = frames - lastSampleFrames;
+                long skippedSince = skippedFrames - lastSampleSkipped;
+                json.put("processedPerSecond", Math.max(0, framesSince - skippedSince) / seconds);
+                json.put("skippedPerSecond", skippedSince / seconds);
+            }
+            lastSampleTime = now;
+            lastSampleFrames = frames;
+            lastSampleSkipped = skippedFrames;
+
+            JSONObject reasons = new JSONObject();
+            for (Map.Entry<String, Integer> entry : skipReasons.entrySet()) {
+                reasons.put(entry.getKey(), entry.getValue());
+            }
+            json.put("skipReasons", reasons);
+
+            JSONObject brightness = new JSONObject();
+            if (frames > 0) {
+                brightness.put("min", brightnessMin);
+                brightness.put("max", brightnessMax);
+                brightness.put("mean", brightnessSum / frames);
+            }
+            JSONArray bins = new JSONArray();
+            for (int count : histogram) {
+                bins.put(count);
+            }
+            brightness.put("histogram", bins);
+            json.put("brightness", brightness);
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting diagnostics to json.", e);
+        }
+        return json;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Anyline Cordova Plugin
+ * ImageBatchScanner.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.barcode.Barcode;
+import com.google.android.gms.vision.barcode.BarcodeDetector;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recognizes stored images without opening a scan activity:
+ * <pre>
+ * cordova.exec(onEvent, onError, "AnylineSDK", "scanImages", ["BARCODE", [path, ...], { "maxDimension": 2048 }]);
+ * cordova.exec(onSuccess, onError, "AnylineSDK", "cancelScanImages", [requestId]);
+ * </pre>
+ * The images are processed by a pool with one worker per core that is shared by all batches, every batch only
+ * takes as many workers as it has images. The events are reported to the request as they happen:
+ * <pre>
+ * { "event": "batchStarted", "requestId": "12", "total": 1000 }
+ * { "event": "imageScanned", "index": 3, "path": ..., "durationMs": 41, "done": 4, "total": 1000,
+ *   "barcodes": [ { "value": ..., "format": "EAN_13", "outline": [x0, y0, ... x3, y3] } ] }
+ * { "event": "imageFailed", "index": 5, "path": ..., "error": ..., "done": 6, "total": 1000 }
+ * { "event": "batchFinished", "total": 1000, "done": 1000, "scanned": 998, "failed": 2, "canceled": false,
+ *   "durationMs": 10345 }   // final
+ * </pre>
+ * Only BARCODE is supported, it uses the native barcode detector. The sdk has no api to recognize mrz, ocr
+ * or meters in a still image.
+ */
+public class ImageBatchScanner {
+
+    private static final String TAG = ImageBatchScanner.class.getSimpleName();
+
+    public static final String MODE_BARCODE = "BARCODE";
+    public static final String MAX_DIMENSION = "maxDimension";
+    public static final int DEFAULT_MAX_DIMENSION = 2048;
+
+    public static final String EVENT_BATCH_STARTED = "batchStarted";
+    public static final String EVENT_IMAGE_SCANNED = "imageScanned";
+    public static final String EVENT_IMAGE_FAILED = "imageFailed";
+    public static final String EVENT_BATCH_FINISHED = "batchFinished";
+
+    private static final int WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final Map<String, ImageBatchScanner> activeBatches =
+            new ConcurrentHashMap<String, ImageBatchScanner>();
+    private static ThreadPoolExecutor executor;
+
+    private final Context context;
+    private final String requestId;
+    private final JSONArray paths;
+    private final int maxDimension;
+    private final long start = SystemClock.elapsedRealtime();
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger runningWorkers = new AtomicInteger();
+    private volatile boolean canceled;
+
+    private ImageBatchScanner(Context context, String requestId, JSONArray paths, JSONObject options) {
+        this.context = context.getApplicationContext();
+        this.requestId = requestId;
+        this.paths = paths;
+        this.maxDimension = options == null ? DEFAULT_MAX_DIMENSION
+                : Math.max(1, options.optInt(MAX_DIMENSION, DEFAULT_MAX_DIMENSION));
+    }
+
+    public static boolean isSupported(String mode) {
+        return MODE_BARCODE.equals(mode) || "scanBarcode".equals(mode);
+    }
+
+    /**
+     * Starts a batch, the events are reported to the request (see {@link ResultReporter}).
+     *
+     * @param requestId the id of the request
+     * @param paths     the paths of the images (optionally with file:// prefix)
+     * @param options   maxDimension, the images are decoded at most this large, may be null
+     */
+    public static void start(Context context, String requestId, JSONArray paths, JSONObject options) {
+        ImageBatchScanner batch = new ImageBatchScanner(context, requestId, paths, options);
+        activeBatches.put(requestId, batch);
+
+        ResultReporter.onResult(requestId, batch.event(EVENT_BATCH_STARTED), false);
+        int workers = Math.min(WORKERS, paths.length());
+        if (workers == 0) {
+            batch.finish();
+            return;
+        }
+        batch.runningWorkers.set(workers);
+        for (int i = 0; i < workers; i++) {
+            getExecutor().execute(batch.worker);
+        }
+    }
+
+    /**
+     * Cancels a batch. The images that are being processed are finished, then batchFinished is reported.
+     *
+     * @return true if the batch was running
+     */
+    public static boolean cancel(String requestId) {
+        ImageBatchScanner batch = requestId == null ? null : activeBatches.get(requestId);
+        if (batch == null) {
+            return false;
+        }
+        batch.canceled = true;
+        return true;
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(WORKERS, WORKERS, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "AnylineImageBatch-" + count.incrementAndGet());
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    // takes the next image until all are taken or the batch is canceled, every worker has its own detector
+    private final Runnable worker = new Runnable() {
+        @Override
+        public void run() {
+            BarcodeDetector detector = new BarcodeDetector.Builder(context)
+                    .setBarcodeFormats(Barcode.ALL_FORMATS).build();
+            try {
+                int index;
+                while (!canceled && (index = nextIndex.getAndIncrement()) < paths.length()) {
+                    ResultReporter.onResult(requestId, scan(detector, index), false);
+                }
+            } finally {
+                detector.release();
+                if (runningWorkers.decrementAndGet() == 0) {
+                    finish();
+                }
+            }
+        }
+    };
+
+    private JSONObject scan(BarcodeDetector detector, int index) {
+        String path = paths.optString(index);
+        // results of earlier scans are kept in the cache while they are scanned again
+        ImageCache.getInstance(context).touch(path);
+        long imageStart = SystemClock.elapsedRealtime();
+        JSONArray barcodes = null;
+        String error = null;
+        try {
+            if (!detector.isOperational()) {
+                // the detector dependencies are downloaded by play services on first use
+                throw new IOException("The native barcode detector is not available yet");
+            }
+            Bitmap bitmap = decode(path.startsWith("file://") ? path.substring("file://".length()) : path);
+            try {
+                barcodes = toJson(detector.detect(new Frame.Builder().setBitmap(bitmap).build()));
+            } finally {
+                BitmapPool.getInstance().put(bitmap);
+            }
+        } catch (IOException e) {
+            error = e.getLocalizedMessage();
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting barcodes to json.", e);
+            error = e.toString();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not scan " + path, e);
+            error = e.toString();
+        }
+
+        JSONObject event;
+        if (error == null) {
+            event = event(EVENT_IMAGE_SCANNED);
+        } else {
+            failed.incrementAndGet();
+            event = event(EVENT_IMAGE_FAILED);
+        }
+        try {
+            event.put("index", index);
+            event.put("path", path);
+            event.put("durationMs", SystemClock.elapsedRealtime() - imageStart);
+            event.put("done", done.incrementAndGet());
+            if (error == null) {
+                event.put("barcodes", barcodes);
+            } else {
+                event.put("error", error);
+            }
+        } catch (JSONException jsonException) {
+            //should not be possible
+            Log.e(TAG, "Error while putting image event to json.", jsonException);
+        }
+        return event;
+    }
+
+    /**
+     * Decodes the image, subsampled so its longer edge is at most max dimension (in powers of two).
+     */
+    private Bitmap decode(String path) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Could not decode image " + path);
+        }
+        int sampleSize = 1;
+        while (Math.max(options.outWidth, options.outHeight) / sampleSize > maxDimension) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        // the decoded images of a batch have similar sizes, so the pool can mostly decode into recycled bitmaps
+        Bitmap bitmap = BitmapPool.getInstance().decodeFile(path, options);
+        if (bitmap == null) {
+            throw new IOException("Could not decode image " + path);
+        }
+        return bitmap;
+    }
+
+    private static JSONArray toJson(SparseArray<Barcode> detected) throws JSONException {
+        JSONArray barcodes = new JSONArray();
+        for (int i = 0; i < detected.size(); i++) {
+            Barcode barcode = detected.valueAt(i);
+            JSONObject json = new JSONObject();
+            json.put("value", barcode.rawValue);
+            json.put("format", BarcodeFormats.toFormatName(barcode.format));
+            if (barcode.cornerPoints != null) {
+                JSONArray outline = new JSONArray();
+                for (Point point : barcode.cornerPoints) {
+                    outline.put(point.x);
+                    outline.put(point.y);
+                }
+                json.put("outline", outline);
+            }
+            barcodes.put(json);
+        }
+        return barcodes;
+    }
+
+    private void finish() {
+        activeBatches.remove(requestId);
+        JSONObject event = event(EVENT_BATCH_FINISHED);
+        try {
+            event.put("done", done.get());
+            event.put("scanned", done.get() - failed.get());
+            event.put("failed", failed.get());
+            event.put("canceled", canceled);
+            event.put("durationMs", SystemClock.elapsedRealtime() - start);
+        } catch (JSONException jsonException) {
+            //should not be possible
+            Log.e(TAG, "Error while putting batch event to json.", jsonException);
+        }
+        ResultReporter.onResult(requestId, event, true);
+    }
+
+    private JSONObject event(String name) {
+        JSONObject event = new JSONObject();
+        try {
+            event.put("event", name);
+            event.put("requestId", requestId);
+            event.put("total", paths.length());
+        } catch (JSONException jsonException) {
+            //should not be possible
+            Log.e(TAG, "Error while putting batch event to json.", jsonException);
+        }
+        return event;
+    }
+}
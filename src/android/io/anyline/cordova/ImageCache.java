@@ -0,0 +1,308 @@
+/*
+ * Anyline Cordova Plugin
+ * ImageCache.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages the result images written by the plugin in its own cache directory.
+ * <p/>
+ * The cache is bounded by a byte budget and a maximum age since the last use. Images are evicted least
+ * recently used first on a background thread, either when the budget is exceeded or by the periodic sweep for
+ * expired images. An image is used when the plugin reads it or the app touches it (touchImage).
+ * Images can be released explicitly once the app does not need them any more.
+ */
+public class ImageCache {
+
+    private static final String TAG = ImageCache.class.getSimpleName();
+
+    public static final String MAX_BYTES = "maxBytes";
+    public static final String MAX_AGE = "maxAge";
+
+    public static final long DEFAULT_MAX_BYTES = 50 * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE = 24 * 60 * 60 * 1000;
+
+    private static final String DIRECTORY_NAME = "anyline_images";
+    private static final long SWEEP_INTERVAL_SECONDS = 60;
+
+    private static ImageCache instance;
+
+    private final File directory;
+    // access ordered, the first entry is the least recently used one
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final ScheduledExecutorService sweeper;
+
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private long maxAge = DEFAULT_MAX_AGE;
+    private long currentBytes;
+
+    private long evictedCount;
+    private long evictedBytes;
+    private long expiredCount;
+    private long releasedCount;
+
+    public static synchronized ImageCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImageCache(new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME));
+        }
+        return instance;
+    }
+
+    private ImageCache(File directory) {
+        this.directory = directory;
+        sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "AnylineImageCache");
+            }
+        });
+        sweeper.execute(new Runnable() {
+            @Override
+            public void run() {
+                indexExistingFiles();
+                trim();
+            }
+        });
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                trim();
+            }
+        }, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets the bounds of the cache, images exceeding them are evicted in the background.
+     *
+     * @param config the settings (maxBytes, maxAge in milliseconds), missing values are not changed
+     */
+    public void configure(JSONObject config) {
+        synchronized (this) {
+            maxBytes = config.optLong(MAX_BYTES, maxBytes);
+            maxAge = config.optLong(MAX_AGE, maxAge);
+        }
+        scheduleTrim();
+    }
+
+    /**
+     * @param extension the file extension including the dot
+     * @return a new file in the cache directory, it is not tracked until {@link #commit} is called
+     */
+    public File newFile(String extension) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Could not create image cache directory " + directory);
+        }
+        return new File(directory, UUID.randomUUID().toString() + extension);
+    }
+
+    /**
+     * Starts tracking the file after it was written.
+     */
+    public void commit(File file) {
+        boolean overBudget;
+        synchronized (this) {
+            Entry entry = new Entry(file, file.length(), System.currentTimeMillis());
+            Entry previous = entries.put(file.getAbsolutePath(), entry);
+            if (previous != null) {
+                currentBytes -= previous.size;
+            }
+            currentBytes += entry.size;
+            overBudget = currentBytes > maxBytes;
+        }
+        if (overBudget) {
+            scheduleTrim();
+        }
+    }
+
+    /**
+     * Marks the image as used, so it is evicted later.
+     *
+     * @param path the path of the image, with or without file://
+     * @return true if the path belongs to the cache
+     */
+    public synchronized boolean touch(String path) {
+        if (path.startsWith("file://")) {
+            path = path.substring("file://".length());
+        }
+        // moves the entry to the end of the access order
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            return false;
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Deletes the image with the given path.
+     *
+     * @return true if the path belonged to the cache
+     */
+    public boolean release(String path) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.remove(path);
+            if (entry == null) {
+                return false;
+            }
+            currentBytes -= entry.size;
+            releasedCount++;
+        }
+        delete(entry.file);
+        return true;
+    }
+
+    /**
+     * Deletes all images of the cache.
+     */
+    public void clear() {
+        List<Entry> removed;
+        synchronized (this) {
+            removed = new ArrayList<Entry>(entries.values());
+            entries.clear();
+            currentBytes = 0;
+            releasedCount += removed.size();
+        }
+        for (Entry entry : removed) {
+            delete(entry.file);
+        }
+    }
+
+    public synchronized JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("imageCount", entries.size());
+            json.put("currentBytes", currentBytes);
+            json.put("maxBytes", maxBytes);
+            json.put("maxAge", maxAge);
+            json.put("evictedCount", evictedCount);
+            json.put("evictedBytes", evictedBytes);
+            json.put("expiredCount", expiredCount);
+            json.put("releasedCount", releasedCount);
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting stats to json.", e);
+        }
+        return json;
+    }
+
+    private void scheduleTrim() {
+        sweeper.execute(new Runnable() {
+            @Override
+            public void run() {
+                trim();
+            }
+        });
+    }
+
+    /**
+     * Removes expired images and evicts the least recently used ones until the cache is within its budget.
+     * Runs on the sweeper thread.
+     */
+    private void trim() {
+        List<File> toDelete = new ArrayList<File>();
+        synchronized (this) {
+            long expiredBefore = System.currentTimeMillis() - maxAge;
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next().getValue();
+                boolean expired = maxAge > 0 && entry.lastAccess < expiredBefore;
+                if (!expired && currentBytes <= maxBytes) {
+                    // in access order, so everything after this one was used more recently
+                    break;
+                }
+                it.remove();
+                currentBytes -= entry.size;
+                if (expired) {
+                    expiredCount++;
+                } else {
+                    evictedCount++;
+                    evictedBytes += entry.size;
+                }
+                toDelete.add(entry.file);
+            }
+        }
+        for (File file : toDelete) {
+            delete(file);
+        }
+    }
+
+    /**
+     * Picks up the images left over by earlier runs, oldest first.
+     */
+    private void indexExistingFiles() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        synchronized (this) {
+            // entries committed in the meantime are newer, so keep them at the end of the access order
+            LinkedHashMap<String, Entry> committed = new LinkedHashMap<String, Entry>(entries);
+            entries.clear();
+            for (File file : files) {
+                String path = file.getAbsolutePath();
+                if (file.isFile() && !committed.containsKey(path)) {
+                    Entry entry = new Entry(file, file.length(), file.lastModified());
+                    entries.put(path, entry);
+                    currentBytes += entry.size;
+                }
+            }
+            entries.putAll(committed);
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete cached image " + file);
+        }
+    }
+
+    private static class Entry {
+        private final File file;
+        private final long size;
+        private long lastAccess;
+
+        private Entry(File file, long size, long lastAccess) {
+            this.file = file;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Anyline Cordova Plugin
+ * ImageOutputPolicy.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import at.nineyards.anyline.models.AnylineImage;
+
+/**
+ * Describes how result images are written by all scan activities. Configured with "imageOutput" in the
+ * view config:
+ * <pre>
+ * "imageOutput": {
+ *     "format": "jpeg",    // jpeg, png or webp
+ *     "quality": 90,       // 0-100, ignored for png
+ *     "maxEdge": 0,        // longest edge in pixels, 0 keeps the original size
+ *     "grayscale": false,
+ *     "fullFrame": true    // false skips the full camera frame where a module provides one
+ * }
+ * </pre>
+ */
+public class ImageOutputPolicy {
+
+    public static final String IMAGE_OUTPUT = "imageOutput";
+    public static final String FORMAT = "format";
+    public static final String QUALITY = "quality";
+    public static final String MAX_EDGE = "maxEdge";
+    public static final String GRAYSCALE = "grayscale";
+    public static final String FULL_FRAME = "fullFrame";
+
+    public static final String FORMAT_JPEG = "jpeg";
+    public static final String FORMAT_PNG = "png";
+    public static final String FORMAT_WEBP = "webp";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Bitmap.CompressFormat format;
+    private final int quality;
+    private final int maxEdge;
+    private final boolean grayscale;
+    private final boolean fullFrame;
+
+    public ImageOutputPolicy(Bitmap.CompressFormat format, int quality, int maxEdge, boolean grayscale,
+                             boolean fullFrame) {
+        this.format = format;
+        this.quality = quality;
+        this.maxEdge = maxEdge;
+        this.grayscale = grayscale;
+        this.fullFrame = fullFrame;
+    }
+
+    /**
+     * @param json           the imageOutput json, may be null or empty
+     * @param defaultQuality the quality if none is configured
+     * @return the policy, the defaults are a jpeg with the default quality in original size and color
+     */
+    public static ImageOutputPolicy fromJson(String json, int defaultQuality) throws JSONException {
+        if (json == null || json.length() == 0) {
+            return defaultPolicy(defaultQuality);
+        }
+        return fromJson(new JSONObject(json), defaultQuality);
+    }
+
+    /**
+     * @return a policy writing jpeg images with the given quality in original size and color
+     */
+    public static ImageOutputPolicy defaultPolicy(int quality) {
+        return new ImageOutputPolicy(Bitmap.CompressFormat.JPEG, quality, 0, false, true);
+    }
+
+    public static ImageOutputPolicy fromJson(JSONObject json, int defaultQuality) {
+        Bitmap.CompressFormat compressFormat = toCompressFormat(json.optString(FORMAT, FORMAT_JPEG));
+        int quality = Math.max(0, Math.min(100, json.optInt(QUALITY, defaultQuality)));
+
+        return new ImageOutputPolicy(compressFormat, quality, Math.max(0, json.optInt(MAX_EDGE, 0)),
+                json.optBoolean(GRAYSCALE, false), json.optBoolean(FULL_FRAME, true));
+    }
+
+    /**
+     * @param format jpeg (or jpg), png or webp
+     * @throws IllegalArgumentException if the format is not supported
+     */
+    public static Bitmap.CompressFormat toCompressFormat(String format) {
+        if (FORMAT_PNG.equalsIgnoreCase(format)) {
+            return Bitmap.CompressFormat.PNG;
+        } else if (FORMAT_WEBP.equalsIgnoreCase(format)) {
+            return Bitmap.CompressFormat.WEBP;
+        } else if (FORMAT_JPEG.equalsIgnoreCase(format) || "jpg".equalsIgnoreCase(format)) {
+            return Bitmap.CompressFormat.JPEG;
+        }
+        throw new IllegalArgumentException("Unsupported image format: " + format);
+    }
+
+    /**
+     * @return the file extension (including the dot) matching the format
+     */
+    public String getExtension() {
+        switch (format) {
+            case PNG:
+                return ".png";
+            case WEBP:
+                return ".webp";
+            default:
+                return ".jpg";
+        }
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public int getMaxEdge() {
+        return maxEdge;
+    }
+
+    public boolean isGrayscale() {
+        return grayscale;
+    }
+
+    /**
+     * @return false if the full camera frame should not be written at all
+     */
+    public boolean isFullFrameEnabled() {
+        return fullFrame;
+    }
+
+    /**
+     * Writes the image according to this policy. Images that need no transformation are saved directly by
+     * the sdk, everything else goes through a bitmap.
+     */
+    public void write(AnylineImage image, File file) throws IOException {
+        if (maxEdge == 0 && !grayscale && format != Bitmap.CompressFormat.WEBP) {
+            // the sdk picks the format from the file extension
+            image.save(file, quality);
+            return;
+        }
+
+        Bitmap bitmap = image.getBitmap();
+        Bitmap transformed = transform(bitmap);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+        try {
+            if (!transformed.compress(format, quality, out)) {
+                throw new IOException("Could not encode image as " + format);
+            }
+        } finally {
+            out.close();
+            if (transformed != bitmap) {
+                BitmapPool.getInstance().put(transformed);
+            }
+        }
+    }
+
+    /**
+     * Scales the bitmap down to the max edge and converts it to grayscale if configured.
+     *
+     * @return the transformed bitmap (from the {@link BitmapPool}, return it there when it is not used any
+     * more), or the given one if nothing had to be done
+     */
+    public Bitmap transform(Bitmap bitmap) {
+        Bitmap scaled = BinaryImageEncoder.scaleDown(bitmap, maxEdge);
+        if (!grayscale) {
+            return scaled;
+        }
+
+        Bitmap gray = BitmapPool.getInstance().get(scaled.getWidth(), scaled.getHeight(), Bitmap.Config.ARGB_8888);
+        ColorMatrix colorMatrix = new ColorMatrix();
+        colorMatrix.setSaturation(0);
+        Paint paint = new Paint();
+        paint.setColorFilter(new ColorMatrixColorFilter(colorMatrix));
+        new Canvas(gray).drawBitmap(scaled, 0, 0, paint);
+
+        if (scaled != bitmap) {
+            BitmapPool.getInstance().put(scaled);
+        }
+        return gray;
+    }
+}
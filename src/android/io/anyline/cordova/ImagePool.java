@@ -0,0 +1,247 @@
+/*
+ * Anyline Cordova Plugin
+ * ImagePool.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import at.nineyards.anyline.models.AnylineImage;
+
+/**
+ * Keeps result images in memory, unencoded, so only the ones javascript asks for are encoded. Used with the
+ * image delivery mode "handle": the result gets a handle instead of a path (imageHandle, fullImageHandle), and
+ * the image is encoded by {@link #encode} when getResultImage is called with the handle.
+ * <p/>
+ * The pool is bounded by the bytes of its bitmaps (maxBytes, default an eighth of the heap) and every image
+ * expires after its ttl (default 30 seconds). Images that do not fit are evicted, the oldest first, expired
+ * ones are dropped in the background. An image that is bigger than the whole pool is not pooled, its result
+ * falls back to a path.
+ * <p/>
+ * Configured with configureImagePool:
+ * <pre>
+ * { "maxBytes": 33554432, "ttl": 30000 }
+ * </pre>
+ */
+public class ImagePool {
+
+    private static final String TAG = ImagePool.class.getSimpleName();
+
+    public static final String MAX_BYTES = "maxBytes";
+    public static final String TTL = "ttl";
+
+    public static final long DEFAULT_TTL = 30 * 1000;
+
+    private static final long SWEEP_INTERVAL_SECONDS = 5;
+
+    private static ImagePool instance;
+
+    // insertion ordered, the first entry is the oldest one
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private final AtomicInteger handleCounter = new AtomicInteger();
+    private final ScheduledExecutorService sweeper;
+
+    private long maxBytes = Runtime.getRuntime().maxMemory() / 8;
+    private long ttl = DEFAULT_TTL;
+    private long currentBytes;
+    private long maxUsedBytes;
+
+    private long pooledCount;
+    private long rejectedCount;
+    private long encodedCount;
+    private long evictedCount;
+    private long expiredCount;
+    private long releasedCount;
+
+    public static synchronized ImagePool getInstance() {
+        if (instance == null) {
+            instance = new ImagePool();
+        }
+        return instance;
+    }
+
+    private ImagePool() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "AnylineImagePool");
+            }
+        });
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                trim(SystemClock.elapsedRealtime());
+            }
+        }, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets the bounds of the pool, images exceeding them are evicted right away.
+     *
+     * @param config the settings (maxBytes, ttl in milliseconds), missing values are not changed
+     */
+    public synchronized void configure(JSONObject config) {
+        maxBytes = Math.max(0, config.optLong(MAX_BYTES, maxBytes));
+        ttl = Math.max(0, config.optLong(TTL, ttl));
+        trim(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Adds the image to the pool, older images are evicted if it does not fit otherwise.
+     *
+     * @return the handle of the image, or null if it is bigger than the pool
+     */
+    public String put(AnylineImage image) {
+        Bitmap bitmap = image.getBitmap();
+        long size = bitmap.getRowBytes() * (long) bitmap.getHeight();
+        synchronized (this) {
+            if (size > maxBytes) {
+                rejectedCount++;
+                return null;
+            }
+            long now = SystemClock.elapsedRealtime();
+            String handle = "pool-" + handleCounter.incrementAndGet();
+            entries.put(handle, new Entry(bitmap, size, now + ttl));
+            currentBytes += size;
+            pooledCount++;
+            trim(now);
+            maxUsedBytes = Math.max(maxUsedBytes, currentBytes);
+            return handle;
+        }
+    }
+
+    /**
+     * Encodes the image of the handle. The image stays in the pool until it is released or expires, so it can
+     * be requested in another format or size.
+     *
+     * @param format  jpeg, png or webp
+     * @param maxSize the maximum width or height, the image is scaled down to fit (0 for no limit)
+     * @param quality the quality, ignored for png
+     * @return the encoded image, or null if the handle is unknown or expired
+     * @throws IllegalArgumentException if the format is not supported
+     */
+    public BinaryImageEncoder.EncodedImage encode(String handle, String format, int maxSize, int quality) {
+        Bitmap.CompressFormat compressFormat = ImageOutputPolicy.toCompressFormat(format);
+        Bitmap bitmap;
+        synchronized (this) {
+            Entry entry = entries.get(handle);
+            if (entry == null || entry.expiresAt < SystemClock.elapsedRealtime()) {
+                return null;
+            }
+            bitmap = entry.bitmap;
+            encodedCount++;
+        }
+        // evicted bitmaps are not recycled, so the bitmap stays valid while it is encoded
+        Bitmap scaled = BinaryImageEncoder.scaleDown(bitmap, maxSize);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(scaled.getWidth() * scaled.getHeight() / 4);
+        scaled.compress(compressFormat, quality, out);
+        BinaryImageEncoder.EncodedImage encoded = new BinaryImageEncoder.EncodedImage(out.toByteArray(),
+                scaled.getWidth(), scaled.getHeight());
+        if (scaled != bitmap) {
+            BitmapPool.getInstance().put(scaled);
+        }
+        return encoded;
+    }
+
+    /**
+     * Drops the image of the handle.
+     *
+     * @return true if the handle belonged to the pool
+     */
+    public synchronized boolean release(String handle) {
+        Entry entry = entries.remove(handle);
+        if (entry == null) {
+            return false;
+        }
+        currentBytes -= entry.size;
+        releasedCount++;
+        return true;
+    }
+
+    /**
+     * Drops all images of the pool.
+     */
+    public synchronized void clear() {
+        releasedCount += entries.size();
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("imageCount", entries.size());
+            json.put("currentBytes", currentBytes);
+            json.put("maxUsedBytes", maxUsedBytes);
+            json.put("maxBytes", maxBytes);
+            json.put("ttl", ttl);
+            json.put("pooledCount", pooledCount);
+            json.put("rejectedCount", rejectedCount);
+            json.put("encodedCount", encodedCount);
+            json.put("evictedCount", evictedCount);
+            json.put("expiredCount", expiredCount);
+            json.put("releasedCount", releasedCount);
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting stats to json.", e);
+        }
+        return json;
+    }
+
+    /**
+     * Drops the expired images, then the oldest ones until the pool fits into maxBytes.
+     */
+    private synchronized void trim(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            boolean expired = entry.expiresAt < now;
+            if (!expired && currentBytes <= maxBytes) {
+                // entries are ordered by age, the newer ones are not expired either
+                break;
+            }
+            it.remove();
+            currentBytes -= entry.size;
+            if (expired) {
+                expiredCount++;
+            } else {
+                evictedCount++;
+            }
+        }
+    }
+
+    private static class Entry {
+        final Bitmap bitmap;
+        final long size;
+        final long expiresAt;
+
+        Entry(Bitmap bitmap, long size, long expiresAt) {
+            this.bitmap = bitmap;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
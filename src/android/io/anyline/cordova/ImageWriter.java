@@ -0,0 +1,237 @@
+/*
+ * Anyline Cordova Plugin
+ * ImageWriter.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.nineyards.anyline.models.AnylineImage;
+
+/**
+ * Saves result images on a background thread, so results can be reported without waiting for the
+ * image encoding and the file write.
+ * <p/>
+ * The queue is bounded. If it is full, the image is saved on the calling thread, which throttles the
+ * producer instead of piling up images in memory.
+ * <p/>
+ * For every image an event is reported to the request once the file is written:
+ * <pre>
+ * { "event": "imageSaved", "handle": "img-1", "key": "imagePath", "path": "/..." }
+ * { "event": "imageFailed", "handle": "img-1", "key": "imagePath", "error": "..." }
+ * </pre>
+ */
+public class ImageWriter {
+
+    private static final String TAG = ImageWriter.class.getSimpleName();
+
+    public static final String ASYNC_IMAGE_SAVE = "asyncImageSave";
+    public static final String PENDING_IMAGES = "pendingImages";
+
+    public static final String EVENT_IMAGE_SAVED = "imageSaved";
+    public static final String EVENT_IMAGE_FAILED = "imageFailed";
+
+    private static final int QUEUE_CAPACITY = 8;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ImageWriter instance;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger handleCounter = new AtomicInteger();
+
+    private final AtomicLong imagesWritten = new AtomicLong();
+    private final AtomicLong imagesFailed = new AtomicLong();
+    private final AtomicLong imagesWrittenOnCaller = new AtomicLong();
+    private final AtomicLong totalEncodeTime = new AtomicLong();
+    private final AtomicLong maxEncodeTime = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    public static synchronized ImageWriter getInstance() {
+        if (instance == null) {
+            instance = new ImageWriter();
+        }
+        return instance;
+    }
+
+    private ImageWriter() {
+        executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                r.run();
+                            }
+                        }, "AnylineImageWriter");
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        // queue is full, write on the caller to apply backpressure
+                        imagesWrittenOnCaller.incrementAndGet();
+                        r.run();
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Creates a job for the given image. The job is not started until it is passed to {@link #submit}.
+     *
+     * @param key     the key of the path in the result json (e.g. imagePath)
+     * @param image   the image to save
+     * @param file    the file to save the image to
+     * @param policy  the policy the image is written with
+     * @param cache   the cache the file is committed to once it is written
+     */
+    public Job newJob(String key, AnylineImage image, File file, ImageOutputPolicy policy, ImageCache cache) {
+        return new Job("img-" + handleCounter.incrementAndGet(), key, image, file, policy, cache);
+    }
+
+    /**
+     * Queues the jobs of one result. Call this after the result itself was reported.
+     *
+     * @param requestId     the request the events are reported to
+     * @param jobs          the jobs of the result
+     * @param isFinalResult true if the result was the final one of the request, the last event closes the
+     *                      request in this case
+     */
+    public void submit(final String requestId, List<Job> jobs, final boolean isFinalResult) {
+        final AtomicInteger remaining = new AtomicInteger(jobs.size());
+        for (final Job job : jobs) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ScanTracer.mark(requestId, ScanTracer.STAGE_IMAGE_ENCODE_START);
+                    JSONObject event = job.write();
+                    ScanTracer.mark(requestId, ScanTracer.STAGE_IMAGE_SAVED);
+                    ResultReporter.onResult(requestId, event, isFinalResult && remaining.decrementAndGet() == 0);
+                }
+            });
+            updateMax(maxQueueDepth, executor.getQueue().size());
+        }
+    }
+
+    /**
+     * @return the queue and encoding metrics of the writer
+     */
+    public JSONObject getMetrics() {
+        JSONObject json = new JSONObject();
+        long written = imagesWritten.get();
+        try {
+            json.put("queueDepth", executor.getQueue().size());
+            json.put("maxQueueDepth", maxQueueDepth.get());
+            json.put("queueCapacity", QUEUE_CAPACITY);
+            json.put("imagesWritten", written);
+            json.put("imagesFailed", imagesFailed.get());
+            json.put("imagesWrittenOnCaller", imagesWrittenOnCaller.get());
+            json.put("totalEncodeTimeMs", totalEncodeTime.get());
+            json.put("avgEncodeTimeMs", written == 0 ? 0 : totalEncodeTime.get() / written);
+            json.put("maxEncodeTimeMs", maxEncodeTime.get());
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting metrics to json.", e);
+        }
+        return json;
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * One image to write.
+     */
+    public class Job {
+        private final String handle;
+        private final String key;
+        private final AnylineImage image;
+        private final File file;
+        private final ImageOutputPolicy policy;
+        private final ImageCache cache;
+
+        private Job(String handle, String key, AnylineImage image, File file, ImageOutputPolicy policy,
+                    ImageCache cache) {
+            this.handle = handle;
+            this.key = key;
+            this.image = image;
+            this.file = file;
+            this.policy = policy;
+            this.cache = cache;
+        }
+
+        public String getHandle() {
+            return handle;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        private JSONObject write() {
+            JSONObject event = new JSONObject();
+            long start = SystemClock.elapsedRealtime();
+            try {
+                event.put("handle", handle);
+                event.put("key", key);
+                try {
+                    policy.write(image, file);
+                    cache.commit(file);
+                    long duration = SystemClock.elapsedRealtime() - start;
+                    imagesWritten.incrementAndGet();
+                    totalEncodeTime.addAndGet(duration);
+                    updateMax(maxEncodeTime, duration);
+
+                    event.put("event", EVENT_IMAGE_SAVED);
+                    event.put("path", file.getAbsolutePath());
+                } catch (IOException e) {
+                    Log.e(TAG, "Image file could not be saved.", e);
+                    imagesFailed.incrementAndGet();
+
+                    event.put("event", EVENT_IMAGE_FAILED);
+                    event.put("error", e.getLocalizedMessage());
+                }
+            } catch (JSONException jsonException) {
+                //should not be possible
+                Log.e(TAG, "Error while putting image event to json.", jsonException);
+            }
+            return event;
+        }
+    }
+}
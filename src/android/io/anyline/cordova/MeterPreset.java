@@ -0,0 +1,227 @@
+/*
+ * Anyline Cordova Plugin
+ * MeterPreset.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What a meter action scans: the scan mode of the sdk and what a valid reading of the meter looks like.
+ * <p/>
+ * Several meter actions share a scan mode of the sdk (e.g. ANALOG_METER_4 and ANALOG_METER_7 are both read
+ * with ANALOG_METER), the preset keeps what the action says about the meter: the number of digits, how many
+ * of them are decimals and the expected range of the value. The built in presets only annotate the result,
+ * every reading is reported as before.
+ * <p/>
+ * Custom presets are defined in the module config and are used for actions with their name, or for any
+ * meter action with "meterPreset". They are enforced: readings that do not match are not reported and
+ * scanning continues, so a misread digit count can not end the scan ("enforce": false only annotates):
+ * <pre>
+ * "meterPresets": { "MY_METER": { "scanMode": "ANALOG_METER", "digits": 6, "decimals": 2, "min": 0, "max": 9999 } },
+ * "meterPreset": "MY_METER"
+ * </pre>
+ * digits is the total number of digits of the reading (0: any), decimals the number of them after the decimal
+ * point, min and max the range of the value with the decimals applied. A reported reading gets "meterPreset"
+ * and, if it matches a preset with decimals, "readingValue" (the reading as number).
+ */
+public class MeterPreset {
+
+    public static final String METER_PRESETS = "meterPresets";
+    public static final String METER_PRESET = "meterPreset";
+    public static final String NAME = "name";
+    public static final String SCAN_MODE = "scanMode";
+    public static final String DIGITS = "digits";
+    public static final String DECIMALS = "decimals";
+    public static final String MIN = "min";
+    public static final String MAX = "max";
+    public static final String ENFORCE = "enforce";
+
+    private static final Map<String, MeterPreset> PRESETS = new HashMap<String, MeterPreset>();
+
+    static {
+        // name, scan mode of the sdk, digits, decimals
+        add("AUTO_ANALOG_DIGITAL_METER", "AUTO_ANALOG_DIGITAL_METER", 0, 0);
+        add("DIAL_METER", "DIAL_METER", 0, 0);
+        add("DIGITAL_METER", "DIGITAL_METER", 0, 0);
+        add("ANALOG_METER", "ANALOG_METER", 0, 0);
+        add("ELECTRIC_METER", "ANALOG_METER", 0, 0);
+        add("scanElectricMeter", "ANALOG_METER", 0, 0);
+        add("ELECTRIC_METER_5_1", "ANALOG_METER", 6, 1);
+        add("ANALOG_METER_4", "ANALOG_METER", 4, 0);
+        add("ANALOG_METER_7", "ANALOG_METER", 7, 0);
+        add("ANALOG_METER_WHITE", "ANALOG_METER", 0, 0);
+        add("GAS_METER", "ANALOG_METER", 0, 0);
+        add("scanGasMeter", "ANALOG_METER", 0, 0);
+        add("GAS_METER_6", "ANALOG_METER", 6, 0);
+        add("WATER_METER_WHITE", "ANALOG_METER", 0, 0);
+        add("WATER_METER_BLACK", "ANALOG_METER", 0, 0);
+        add("HEAT_METER_4", "HEAT_METER_4", 0, 0);
+        add("HEAT_METER_5", "HEAT_METER_5", 0, 0);
+        add("HEAT_METER_6", "HEAT_METER_6", 0, 0);
+        add("SERIAL_NUMBER", "SERIAL_NUMBER", 0, 0);
+    }
+
+    private final String name;
+    private final String scanMode;
+    private final int digits;
+    private final int decimals;
+    private final double min;
+    private final double max;
+    private final boolean enforce;
+
+    /**
+     * @param enforce true if readings that do not match are not reported, false if the preset only annotates
+     */
+    public MeterPreset(String name, String scanMode, int digits, int decimals, double min, double max,
+                       boolean enforce) {
+        if (decimals < 0 || digits < 0 || (digits > 0 && decimals > digits)) {
+            throw new IllegalArgumentException("Invalid digits of meter preset " + name);
+        }
+        this.name = name;
+        this.scanMode = scanMode;
+        this.digits = digits;
+        this.decimals = decimals;
+        this.min = min;
+        this.max = max;
+        this.enforce = enforce;
+    }
+
+    private static void add(String name, String scanMode, int digits, int decimals) {
+        PRESETS.put(name, new MeterPreset(name, scanMode, digits, decimals,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false));
+    }
+
+    /**
+     * @param action       the action of the scan
+     * @param moduleConfig the module config of the scan, may be null
+     * @return the preset of the action (a custom one of the module config, or a built in one), or null if the
+     * action is no meter action
+     * @throws IllegalArgumentException if a custom preset is invalid
+     */
+    public static MeterPreset find(String action, JSONObject moduleConfig) {
+        JSONObject custom = moduleConfig == null ? null : moduleConfig.optJSONObject(METER_PRESETS);
+        if (custom != null && custom.optJSONObject(action) != null) {
+            return fromJson(action, custom.optJSONObject(action));
+        }
+        return PRESETS.get(action);
+    }
+
+    /**
+     * @param preset       the preset of the action
+     * @param moduleConfig the module config of the scan, may be null
+     * @return the preset selected with "meterPreset" in the module config, or the given one
+     * @throws IllegalArgumentException if the selected preset does not exist or is invalid
+     */
+    public static MeterPreset resolve(MeterPreset preset, JSONObject moduleConfig) {
+        String selected = moduleConfig == null ? null : moduleConfig.optString(METER_PRESET, null);
+        if (selected == null) {
+            return preset;
+        }
+        MeterPreset selectedPreset = find(selected, moduleConfig);
+        if (selectedPreset == null) {
+            throw new IllegalArgumentException("Unknown meter preset: " + selected);
+        }
+        return selectedPreset;
+    }
+
+    public static MeterPreset fromJson(String name, JSONObject json) {
+        String scanMode = json.optString(SCAN_MODE, "ANALOG_METER");
+        return new MeterPreset(name, scanMode, json.optInt(DIGITS, 0), json.optInt(DECIMALS, 0),
+                json.optDouble(MIN, Double.NEGATIVE_INFINITY), json.optDouble(MAX, Double.POSITIVE_INFINITY),
+                json.optBoolean(ENFORCE, true));
+    }
+
+    /**
+     * @param json the json of {@link #toJson()}
+     */
+    public static MeterPreset fromJson(JSONObject json) {
+        return fromJson(json.optString(NAME), json);
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put(NAME, name);
+            json.put(SCAN_MODE, scanMode);
+            json.put(DIGITS, digits);
+            json.put(DECIMALS, decimals);
+            if (!Double.isInfinite(min)) {
+                json.put(MIN, min);
+            }
+            if (!Double.isInfinite(max)) {
+                json.put(MAX, max);
+            }
+            json.put(ENFORCE, enforce);
+        } catch (JSONException e) {
+            //should not be possible
+            throw new IllegalStateException(e);
+        }
+        return json;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the name of the EnergyScanView.ScanMode
+     */
+    public String getScanMode() {
+        return scanMode;
+    }
+
+    /**
+     * @return true if the preset puts no constraints on the reading
+     */
+    public boolean isUnconstrained() {
+        return digits == 0 && decimals == 0 && Double.isInfinite(min) && Double.isInfinite(max);
+    }
+
+    /**
+     * @return true if readings that do not match the preset are not reported
+     */
+    public boolean isEnforced() {
+        return enforce;
+    }
+
+    /**
+     * Checks the reading and puts the preset (and the value with the decimals applied) to the result.
+     *
+     * @return true if the reading should be reported, always for presets that are not enforced
+     */
+    public boolean apply(ResultEncoder result, String reading) {
+        boolean matches = true;
+        if (reading == null) {
+            matches = isUnconstrained();
+        } else if (!isUnconstrained()) {
+            String trimmed = reading.trim();
+            // ascii digits only, Character.isDigit accepts digits of other scripts that can not be parsed
+            for (int i = 0; i < trimmed.length() && matches; i++) {
+                char c = trimmed.charAt(i);
+                matches = c >= '0' && c <= '9';
+            }
+            if (trimmed.length() == 0 || (digits > 0 && trimmed.length() != digits)) {
+                matches = false;
+            }
+            if (matches) {
+                double value = Double.parseDouble(trimmed) / Math.pow(10, decimals);
+                matches = value >= min && value <= max;
+                if (matches && decimals > 0) {
+                    result.put("readingValue", value);
+                }
+            }
+        }
+        if (!matches && enforce) {
+            return false;
+        }
+        result.put(METER_PRESET, name);
+        return true;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Anyline Cordova Plugin
+ * ModeSwitchTracker.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Measures the time from a scan mode switch in the segment control to the first result the scan view reports
+ * in the new mode. This includes the recognition of the reading, it is no measure of the dead time of the
+ * switch itself (frames still processed in the old mode can not be told apart in the debug output, a result
+ * carries its mode). Once the first result of the new mode arrives an event is reported to the request:
+ * <pre>
+ * { "event": "modeSwitched", "scanMode": "DIGITAL_METER", "switchToFirstResultMs": 420,
+ *   "switchCount": 3, "avgSwitchToFirstResultMs": 400, "maxSwitchToFirstResultMs": 510 }
+ * </pre>
+ * Thread safe, switches happen on the main thread and results are reported on the worker thread of the sdk.
+ */
+public class ModeSwitchTracker {
+
+    private static final String TAG = ModeSwitchTracker.class.getSimpleName();
+
+    public static final String EVENT_MODE_SWITCHED = "modeSwitched";
+
+    private String pendingMode;
+    private long switchStart;
+
+    private int switchCount;
+    private long totalLatency;
+    private long maxLatency;
+
+    /**
+     * @param mode the mode that was switched to
+     * @param now  the current time in milliseconds (monotonic)
+     */
+    public synchronized void onSwitch(String mode, long now) {
+        pendingMode = mode;
+        switchStart = now;
+    }
+
+    /**
+     * @return true if a switch waits for its first result
+     */
+    public synchronized boolean isSwitchPending() {
+        return pendingMode != null;
+    }
+
+    /**
+     * Called for every result.
+     *
+     * @param mode the mode of the result
+     * @param now  the current time in milliseconds (monotonic)
+     * @return the event if this is the first result in the mode that was switched to, null otherwise
+     */
+    public synchronized JSONObject onResult(String mode, long now) {
+        if (pendingMode == null || !pendingMode.equals(mode)) {
+            return null;
+        }
+        long latency = now - switchStart;
+        switchCount++;
+        totalLatency += latency;
+        maxLatency = Math.max(maxLatency, latency);
+
+        JSONObject event = new JSONObject();
+        try {
+            event.put("event", EVENT_MODE_SWITCHED);
+            event.put("scanMode", pendingMode);
+            event.put("switchToFirstResultMs", latency);
+            event.put("switchCount", switchCount);
+            event.put("avgSwitchToFirstResultMs", totalLatency / switchCount);
+            event.put("maxSwitchToFirstResultMs", maxLatency);
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting mode switch event to json.", e);
+        }
+        pendingMode = null;
+        return event;
+    }
+}
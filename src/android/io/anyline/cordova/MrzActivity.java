@@ -9,42 +9,31 @@
 package io.anyline.cordova;
 
 import android.os.Bundle;
-import android.util.Log;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.UUID;
-
-import at.nineyards.anyline.camera.AnylineViewConfig;
-import at.nineyards.anyline.models.AnylineImage;
-import at.nineyards.anyline.modules.mrz.Identification;
-import at.nineyards.anyline.modules.mrz.MrzResultListener;
-import at.nineyards.anyline.modules.mrz.MrzScanView;
-import at.nineyards.anyline.modules.mrz.MrzResult;
-import at.nineyards.anyline.util.TempFileUtil;
-
 public class MrzActivity extends AnylineBaseActivity {
     private static final String TAG = MrzActivity.class.getSimpleName();
 
-    private MrzScanView mrzScanView;
+    private ScanEngine scanEngine;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mrzScanView = new MrzScanView(this, null);
         try {
-            JSONObject json = new JSONObject(configJson);
-            mrzScanView.setConfig(new AnylineViewConfig(this, json));
+            JSONObject json = getConfigJson();
+            if (ReplayScanEngine.isEnabled(json)) {
+                scanEngine = new ReplayScanEngine(this, json, null);
+            } else {
+                scanEngine = new MrzScanEngine(this, getAnylineViewConfig(json));
+            }
         } catch (Exception e) {
-            //JSONException or IllegalArgumentException is possible, return it to javascript
+            //JSONException, IOException or IllegalArgumentException is possible, return it to javascript
             finishWithError(Resources.getString(this, "error_invalid_json_data") + "\n" + e.getLocalizedMessage());
             return;
         }
-        setContentView(mrzScanView);
+        setContentView(scanEngine.getView());
 
         initAnyline();
     }
@@ -52,54 +41,31 @@ public class MrzActivity extends AnylineBaseActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        mrzScanView.startScanning();
+        scanEngine.startScanning();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        scanEngine.stopScanning();
+    }
 
-        mrzScanView.cancelScanning();
-        mrzScanView.releaseCameraInBackground();
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (scanEngine != null) {
+            scanEngine.release();
+        }
     }
 
     private void initAnyline() {
-        mrzScanView.setCameraOpenListener(this);
-
-        mrzScanView.initAnyline(licenseKey, new MrzResultListener() {
+        scanEngine.init(licenseKey, this, this, new ScanEngine.Listener() {
 
             @Override
-            public void onResult(MrzResult mrzResult) {
-
-                JSONObject jsonResult = mrzResult.getResult().toJSONObject();
-
-                try {
-                    File imageFile = TempFileUtil.createTempFileCheckCache(MrzActivity.this,
-                            UUID.randomUUID().toString(), ".jpg");
-                    mrzResult.getCutoutImage().save(imageFile, 90);
-                    jsonResult.put("imagePath", imageFile.getAbsolutePath());
-
-                    jsonResult.put("outline", jsonForOutline(mrzResult.getOutline()));
-                    jsonResult.put("confidence", mrzResult.getConfidence());
-
-                } catch (IOException e) {
-                    Log.e(TAG, "Image file could not be saved.", e);
-
-                } catch (JSONException jsonException) {
-                    //should not be possible
-                    Log.e(TAG, "Error while putting image path to json.", jsonException);
-                }
-
-                if (mrzScanView.getConfig().isCancelOnResult()) {
-                    ResultReporter.onResult(jsonResult, true);
-                    setResult(AnylinePlugin.RESULT_OK);
-                    finish();
-                } else {
-                    ResultReporter.onResult(jsonResult, false);
-                }
+            public void onResult(ScanEngine.Result result) {
+                reportEngineResult("MRZ", result, scanEngine.isCancelOnResult());
             }
         });
-        mrzScanView.getAnylineController().setWorkerThreadUncaughtExceptionHandler(this);
     }
 
 }
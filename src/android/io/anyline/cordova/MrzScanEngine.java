@@ -0,0 +1,71 @@
+/*
+ * Anyline Cordova Plugin
+ * MrzScanEngine.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.content.Context;
+import android.view.View;
+
+import at.nineyards.anyline.camera.AnylineViewConfig;
+import at.nineyards.anyline.camera.CameraOpenListener;
+import at.nineyards.anyline.modules.mrz.MrzResult;
+import at.nineyards.anyline.modules.mrz.MrzResultListener;
+import at.nineyards.anyline.modules.mrz.MrzScanView;
+
+/**
+ * {@link ScanEngine} backed by the {@link MrzScanView} of the sdk. The identification is reported as fields,
+ * the result has no single value.
+ */
+public class MrzScanEngine implements ScanEngine {
+
+    private final MrzScanView mrzScanView;
+
+    public MrzScanEngine(Context context, AnylineViewConfig config) {
+        mrzScanView = new MrzScanView(context, null);
+        mrzScanView.setConfig(config);
+    }
+
+    @Override
+    public View getView() {
+        return mrzScanView;
+    }
+
+    @Override
+    public void init(String licenseKey, CameraOpenListener cameraOpenListener,
+                     Thread.UncaughtExceptionHandler errorHandler, final Listener listener) {
+        mrzScanView.setCameraOpenListener(cameraOpenListener);
+        mrzScanView.initAnyline(licenseKey, new MrzResultListener() {
+            @Override
+            public void onResult(MrzResult mrzResult) {
+                listener.onResult(new Result(null, null, mrzResult.getResult().toJSONObject(),
+                        mrzResult.getOutline(), mrzResult.getConfidence(), mrzResult.getCutoutImage(),
+                        mrzResult.getFullImage()));
+            }
+        });
+        mrzScanView.getAnylineController().setWorkerThreadUncaughtExceptionHandler(errorHandler);
+    }
+
+    @Override
+    public boolean isCancelOnResult() {
+        return mrzScanView.getConfig().isCancelOnResult();
+    }
+
+    @Override
+    public void startScanning() {
+        mrzScanView.startScanning();
+    }
+
+    @Override
+    public void stopScanning() {
+        mrzScanView.cancelScanning();
+        mrzScanView.releaseCameraInBackground();
+    }
+
+    @Override
+    public void release() {
+        // the scan view is released with its activity
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Anyline Cordova Plugin
+ * Prewarmer.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pays the one time costs of the first scan ahead of time, when the app decides to:
+ * <pre>
+ * cordova.exec(onSuccess, onError, "AnylineSDK", "prewarm", [["ANYLINE_OCR", "ELECTRIC_METER"], options]);
+ * </pre>
+ * For every mode the activity and scan view classes are loaded and initialized, which loads the native
+ * libraries of the sdk. Modes that are no scan action (or custom meter preset of options.moduleConfig) are
+ * reported with loaded false and an error. The traineddata files of the given ocr module config (options.moduleConfig) or
+ * profile (options.profileId) are installed.
+ * <p/>
+ * The plugin itself never references sdk classes, so nothing of the sdk is loaded at app start unless
+ * prewarm or a scan is called.
+ */
+public class Prewarmer {
+
+    private static final String TAG = Prewarmer.class.getSimpleName();
+
+    public static final String MODULE_CONFIG = "moduleConfig";
+
+    private static final String BARCODE_VIEW = "at.nineyards.anyline.modules.barcode.BarcodeScanView";
+    private static final String MRZ_VIEW = "at.nineyards.anyline.modules.mrz.MrzScanView";
+    private static final String DOCUMENT_VIEW = "at.nineyards.anyline.modules.document.DocumentScanView";
+    private static final String OCR_VIEW = "at.nineyards.anyline.modules.ocr.AnylineOcrScanView";
+    private static final String ENERGY_VIEW = "at.nineyards.anyline.modules.energy.EnergyScanView";
+
+    // classes that were already initialized, a second prewarm is free
+    private static final Set<String> loadedClasses = new HashSet<String>();
+
+    public interface OnPrewarmedListener {
+        /**
+         * Called once everything is done, on the main thread if traineddata files were installed, on the
+         * prewarming thread otherwise.
+         *
+         * @param report the load times per mode and the asset installation
+         */
+        void onPrewarmed(JSONObject report);
+    }
+
+    /**
+     * Prewarms the given modes on the calling thread, call it on a background thread.
+     *
+     * @param context  the context
+     * @param modes    the scan actions to prewarm (e.g. BARCODE, ANYLINE_OCR, ELECTRIC_METER)
+     * @param options  profileId and/or moduleConfig, may be null
+     * @param listener notified once everything is done
+     */
+    public static void prewarm(Context context, JSONArray modes, JSONObject options,
+                               final OnPrewarmedListener listener) {
+        int priority = Process.getThreadPriority(Process.myTid());
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        final JSONObject report = new JSONObject();
+        try {
+            JSONObject modeReport = new JSONObject();
+            JSONObject moduleConfig = options == null ? null : options.optJSONObject(MODULE_CONFIG);
+            for (int i = 0; i < modes.length(); i++) {
+                String mode = modes.optString(i);
+                modeReport.put(mode, load(context, mode, moduleConfig));
+            }
+            report.put("modes", modeReport);
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting prewarm report to json.", e);
+        } finally {
+            Process.setThreadPriority(priority);
+        }
+
+        List<String> traineddataFiles = getTraineddataFiles(options);
+        if (traineddataFiles.isEmpty()) {
+            listener.onPrewarmed(report);
+            return;
+        }
+
+        final long start = SystemClock.elapsedRealtime();
+        AssetInstaller.getInstance(context).installTraineddata(traineddataFiles,
+                new AssetInstaller.OnInstalledListener() {
+                    @Override
+                    public void onInstalled() {
+                        finish(null);
+                    }
+
+                    @Override
+                    public void onInstallError(IOException e) {
+                        finish(e.getLocalizedMessage());
+                    }
+
+                    private void finish(String error) {
+                        try {
+                            JSONObject assets = new JSONObject();
+                            assets.put("installed", error == null);
+                            assets.put("durationMs", SystemClock.elapsedRealtime() - start);
+                            if (error != null) {
+                                assets.put("error", error);
+                            }
+                            report.put("traineddata", assets);
+                        } catch (JSONException e) {
+                            //should not be possible
+                            Log.e(TAG, "Error while putting prewarm report to json.", e);
+                        }
+                        listener.onPrewarmed(report);
+                    }
+                });
+    }
+
+    private static JSONObject load(Context context, String mode, JSONObject moduleConfig) throws JSONException {
+        JSONObject json = new JSONObject();
+        long start = SystemClock.elapsedRealtime();
+        String[] classNames;
+        try {
+            classNames = getClassNames(mode, moduleConfig);
+        } catch (IllegalArgumentException e) {
+            // an invalid custom meter preset
+            classNames = null;
+        }
+        if (classNames == null) {
+            json.put("loaded", false);
+            json.put("error", "Unknown mode: " + mode);
+            return json;
+        }
+        try {
+            for (String className : classNames) {
+                synchronized (loadedClasses) {
+                    if (loadedClasses.contains(className)) {
+                        continue;
+                    }
+                }
+                // initializing the class runs its static initializers, which load the native libraries
+                Class.forName(className, true, context.getClassLoader());
+                synchronized (loadedClasses) {
+                    loadedClasses.add(className);
+                }
+            }
+            json.put("loaded", true);
+        } catch (Throwable t) {
+            // ClassNotFoundException, or an error of a static initializer (e.g. UnsatisfiedLinkError)
+            Log.e(TAG, "Could not prewarm " + mode, t);
+            json.put("loaded", false);
+            json.put("error", t.toString());
+        }
+        json.put("durationMs", SystemClock.elapsedRealtime() - start);
+        return json;
+    }
+
+    /**
+     * @return the classes of the mode, null if the mode is unknown
+     */
+    private static String[] getClassNames(String mode, JSONObject moduleConfig) {
+        if ("BARCODE".equals(mode) || "scanBarcode".equals(mode)) {
+            return new String[]{BARCODE_VIEW, BarcodeActivity.class.getName()};
+        }
+        if ("MRZ".equals(mode) || "scanMRZ".equals(mode)) {
+            return new String[]{MRZ_VIEW, MrzActivity.class.getName()};
+        }
+        if ("DOCUMENT".equals(mode)) {
+            return new String[]{DOCUMENT_VIEW, DocumentActivity.class.getName()};
+        }
+        if ("ANYLINE_OCR".equals(mode)) {
+            return new String[]{OCR_VIEW, AnylineOcrActivity.class.getName()};
+        }
+        if (MeterPreset.find(mode, moduleConfig) != null) {
+            return new String[]{ENERGY_VIEW, EnergyActivity.class.getName()};
+        }
+        return null;
+    }
+
+    private static List<String> getTraineddataFiles(JSONObject options) {
+        List<String> files = new ArrayList<String>();
+        if (options == null) {
+            return files;
+        }
+        ScanProfile profile = ScanProfile.get(options.optString(ScanProfile.PROFILE_ID, null));
+        if (profile != null) {
+            files.addAll(profile.getTraineddataFiles());
+        }
+        JSONObject moduleConfig = options.optJSONObject(MODULE_CONFIG);
+        JSONArray traineddata = moduleConfig == null ? null : moduleConfig.optJSONArray("traineddataFiles");
+        if (traineddata != null) {
+            for (int i = 0; i < traineddata.length(); i++) {
+                files.add(traineddata.optString(i));
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Anyline Cordova Plugin
+ * ReplayScanEngine.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.graphics.PointF;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import at.nineyards.anyline.camera.CameraOpenListener;
+import at.nineyards.anyline.models.AnylineImage;
+
+/**
+ * {@link ScanEngine} that replays recorded results instead of scanning, so the result path of the plugin
+ * (building, consensus, images, delivery) can be load tested without a camera. Enabled with "replay" in the
+ * view config of a BARCODE or MRZ scan:
+ * <pre>
+ * "replay": { "results": [ { "value": "9783161484100", "format": "EAN_13", "confidence": 90,
+ *                            "imagePath": "/sdcard/recording/1.jpg" } ],
+ *             "interval": 50, "count": 1000 }
+ * </pre>
+ * The results are results as the plugin reported them (legacy or compact schema), inline in "results" or as
+ * json array in the file "recording". Every interval milliseconds (default 100, 0 as fast as possible) the next
+ * result is reported, count results in total (default: every recorded result once, more loop the recording).
+ * The image of "imagePath" is decoded once and used as cutout.
+ * <p/>
+ * Results are reported on a worker thread, like the scan views of the sdk do.
+ */
+public class ReplayScanEngine implements ScanEngine {
+
+    private static final String TAG = ReplayScanEngine.class.getSimpleName();
+
+    public static final String REPLAY = "replay";
+    public static final String RESULTS = "results";
+    public static final String RECORDING = "recording";
+    public static final String INTERVAL = "interval";
+    public static final String COUNT = "count";
+
+    private static final String[] LEGACY_OUTLINE_NAMES = {"upLeft", "upRight", "downRight", "downLeft"};
+    // keys of a reported result that are added by the plugin, not by the module
+    private static final String[] PLUGIN_KEYS = {"schemaVersion", "module", "imagePath", "fullImagePath",
+            "imageBuffer", "pendingImages", "consensusFrames", "detectedBarcodes"};
+
+    private final View view;
+    private final String valueKey;
+    private final JSONArray recording;
+    private final long interval;
+    private final int count;
+    private final boolean cancelOnResult;
+
+    // built on the worker thread when a recorded result is reported the first time
+    private final Result[] results;
+    private final Map<String, AnylineImage> images = new HashMap<String, AnylineImage>();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread workerThread;
+    private Handler workerHandler;
+    private CameraOpenListener cameraOpenListener;
+    private Listener listener;
+    private int reported;
+
+    /**
+     * @param context    the context
+     * @param viewConfig the view config with the replay config
+     * @param valueKey   the key of the value in the recorded results, null if the module has no single value
+     * @throws JSONException if the replay config or the recording is invalid
+     * @throws IOException   if the recording could not be read
+     */
+    public ReplayScanEngine(Context context, JSONObject viewConfig, String valueKey)
+            throws JSONException, IOException {
+        JSONObject replay = viewConfig.getJSONObject(REPLAY);
+        this.valueKey = valueKey;
+        if (replay.has(RECORDING)) {
+            recording = new JSONArray(readFile(new File(replay.getString(RECORDING))));
+        } else {
+            recording = replay.getJSONArray(RESULTS);
+        }
+        if (recording.length() == 0) {
+            throw new IllegalArgumentException("The replay recording has no results");
+        }
+        interval = Math.max(0, replay.optLong(INTERVAL, 100));
+        count = replay.optInt(COUNT, recording.length());
+        cancelOnResult = viewConfig.optBoolean("cancelOnResult", true);
+        results = new Result[recording.length()];
+
+        view = new View(context);
+        view.setBackgroundColor(Color.BLACK);
+    }
+
+    /**
+     * @return true if the view config asks for a replay
+     */
+    public static boolean isEnabled(JSONObject viewConfig) {
+        return viewConfig != null && viewConfig.optJSONObject(REPLAY) != null;
+    }
+
+    @Override
+    public View getView() {
+        return view;
+    }
+
+    @Override
+    public void init(String licenseKey, CameraOpenListener cameraOpenListener,
+                     final Thread.UncaughtExceptionHandler errorHandler, Listener listener) {
+        this.cameraOpenListener = cameraOpenListener;
+        this.listener = listener;
+        workerThread = new HandlerThread("AnylineReplay");
+        workerThread.setUncaughtExceptionHandler(errorHandler);
+        workerThread.start();
+        workerHandler = new Handler(workerThread.getLooper());
+    }
+
+    @Override
+    public boolean isCancelOnResult() {
+        return cancelOnResult;
+    }
+
+    @Override
+    public void startScanning() {
+        if (workerHandler == null) {
+            return;
+        }
+        // there is no camera, report it as opened so the scan is traced like a real one
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                cameraOpenListener.onCameraOpened(null, 0, 0);
+            }
+        });
+        workerHandler.removeCallbacks(reportRunnable);
+        workerHandler.postDelayed(reportRunnable, interval);
+    }
+
+    @Override
+    public void stopScanning() {
+        if (workerHandler != null) {
+            workerHandler.removeCallbacks(reportRunnable);
+        }
+    }
+
+    @Override
+    public void release() {
+        stopScanning();
+        if (workerThread != null) {
+            workerThread.quit();
+        }
+    }
+
+    private final Runnable reportRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (reported >= count) {
+                return;
+            }
+            int index = reported % results.length;
+            if (results[index] == null) {
+                results[index] = toResult(recording.optJSONObject(index));
+            }
+            reported++;
+            listener.onResult(results[index]);
+            if (reported < count) {
+                workerHandler.postDelayed(this, interval);
+            }
+        }
+    };
+
+    private Result toResult(JSONObject recorded) {
+        if (recorded == null) {
+            recorded = new JSONObject();
+        }
+        JSONObject fields = new JSONObject();
+        Object value = null;
+        Integer confidence = null;
+        List<PointF> outline = null;
+        try {
+            Iterator<String> keys = recorded.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (key.equals(valueKey) || key.equals(ResultEncoder.KEY_VALUE)) {
+                    value = recorded.get(key);
+                } else if (key.equals(ResultEncoder.KEY_CONFIDENCE)) {
+                    confidence = recorded.optInt(key);
+                } else if (key.equals(ResultEncoder.KEY_OUTLINE)) {
+                    outline = toOutline(recorded.get(key));
+                } else if (!isPluginKey(key)) {
+                    fields.put(key, recorded.get(key));
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Invalid recorded result, it is replayed partially.", e);
+        }
+        if (valueKey == null && value != null) {
+            // the module has no single value, keep it as field
+            try {
+                fields.put(ResultEncoder.KEY_VALUE, value);
+            } catch (JSONException jsonException) {
+                //should not be possible
+                Log.e(TAG, "Error while putting value to json.", jsonException);
+            }
+            value = null;
+        }
+        return new Result(valueKey, value, fields, outline, confidence, getImage(recorded.optString("imagePath", null)),
+                null);
+    }
+
+    private static boolean isPluginKey(String key) {
+        for (String pluginKey : PLUGIN_KEYS) {
+            if (pluginKey.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param outline the outline of the compact schema (array of 8 numbers) or the legacy schema (json object or
+     *                json string with upLeft, upRight, downRight and downLeft)
+     */
+    private static List<PointF> toOutline(Object outline) throws JSONException {
+        List<PointF> points = new ArrayList<PointF>(4);
+        if (outline instanceof JSONArray) {
+            JSONArray array = (JSONArray) outline;
+            for (int i = 0; i + 1 < array.length(); i += 2) {
+                points.add(new PointF((float) array.getDouble(i), (float) array.getDouble(i + 1)));
+            }
+            return points;
+        }
+        JSONObject object = outline instanceof JSONObject ? (JSONObject) outline : new JSONObject(outline.toString());
+        for (String name : LEGACY_OUTLINE_NAMES) {
+            JSONObject point = object.getJSONObject(name);
+            points.add(new PointF((float) point.getDouble("x"), (float) point.getDouble("y")));
+        }
+        return points;
+    }
+
+    private AnylineImage getImage(String path) {
+        if (path == null) {
+            return null;
+        }
+        if (images.containsKey(path)) {
+            return images.get(path);
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(path);
+        AnylineImage image = null;
+        if (bitmap == null) {
+            Log.w(TAG, "Recorded image " + path + " could not be decoded, it is replayed without image.");
+        } else {
+            image = new AnylineImage(bitmap);
+        }
+        images.put(path, image);
+        return image;
+    }
+
+    private static String readFile(File file) throws IOException {
+        StringBuilder sb = new StringBuilder((int) Math.min(file.length(), Integer.MAX_VALUE));
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, read);
+            }
+        } finally {
+            reader.close();
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Anyline Cordova Plugin
+ * ResultBatcher.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces the results of a continuous scan into batches, so a busy WebView is not flooded with one bridge
+ * message per result. Configured with "delivery" in the view config:
+ * <pre>
+ * "delivery": {
+ *     "mode": "batch",
+ *     "interval": 250,          // a batch is sent at the latest this many milliseconds after its first result
+ *     "maxBatch": 10,           // a batch is sent as soon as it holds this many results
+ *     "maxInFlight": 0,         // batches sent but not acknowledged with ackResults, 0 disables acknowledgement
+ *     "maxPending": 50,         // results kept while waiting for an acknowledgement
+ *     "overflow": "dropOldest"  // or dropDuplicate: a result replaces a pending one with the same value
+ * }
+ * </pre>
+ * A batch is reported as
+ * <pre>
+ * { "requestId": "3", "sequence": 1, "dropped": 0, "coalesced": 2, "batch": [ ...results ] }
+ * </pre>
+ * dropped and coalesced count the results since the previous batch, the totals are part of the stats.
+ * Final results, binary images and errors are never batched. The pending batch is sent right before them,
+ * so the order of the messages is kept.
+ */
+public class ResultBatcher {
+
+    private static final String TAG = ResultBatcher.class.getSimpleName();
+
+    public static final String DELIVERY = "delivery";
+    public static final String MODE = "mode";
+    public static final String INTERVAL = "interval";
+    public static final String MAX_BATCH = "maxBatch";
+    public static final String MAX_IN_FLIGHT = "maxInFlight";
+    public static final String MAX_PENDING = "maxPending";
+    public static final String OVERFLOW = "overflow";
+
+    public static final String MODE_IMMEDIATE = "immediate";
+    public static final String MODE_BATCH = "batch";
+    public static final String OVERFLOW_DROP_OLDEST = "dropOldest";
+    public static final String OVERFLOW_DROP_DUPLICATE = "dropDuplicate";
+
+    private static final Map<String, ResultBatcher> activeBatchers = new ConcurrentHashMap<String, ResultBatcher>();
+
+    private static final AtomicLong totalResults = new AtomicLong();
+    private static final AtomicLong totalBatches = new AtomicLong();
+    private static final AtomicLong totalDropped = new AtomicLong();
+    private static final AtomicLong totalCoalesced = new AtomicLong();
+
+    private static ScheduledExecutorService scheduler;
+
+    private final ScanRequest request;
+    private final long interval;
+    private final int maxBatch;
+    private final int maxInFlight;
+    private final int maxPending;
+    private final boolean dropDuplicates;
+
+    private final List<Object> pending = new ArrayList<Object>();
+    private final StringBuilder sb = new StringBuilder(1024);
+    private ScheduledFuture<?> scheduledFlush;
+    private int inFlight;
+    private int sequence;
+    // since the last flush
+    private long dropped;
+    private long coalesced;
+    private boolean closed;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ResultBatcher.this) {
+                scheduledFlush = null;
+                flush(false);
+            }
+        }
+    };
+
+    private ResultBatcher(ScanRequest request, long interval, int maxBatch, int maxInFlight, int maxPending,
+                          boolean dropDuplicates) {
+        this.request = request;
+        this.interval = interval;
+        this.maxBatch = maxBatch;
+        this.maxInFlight = maxInFlight;
+        this.maxPending = Math.max(maxPending, maxBatch);
+        this.dropDuplicates = dropDuplicates;
+    }
+
+    /**
+     * @param request the request the batches are sent to
+     * @param json    the delivery json, may be null
+     * @return the batcher, or null if results should be sent immediately
+     */
+    public static ResultBatcher fromJson(ScanRequest request, JSONObject json) {
+        if (json == null) {
+            return null;
+        }
+        String mode = json.optString(MODE, MODE_IMMEDIATE);
+        if (MODE_IMMEDIATE.equals(mode)) {
+            return null;
+        }
+        if (!MODE_BATCH.equals(mode)) {
+            throw new IllegalArgumentException("Unknown delivery mode: " + mode);
+        }
+        String overflow = json.optString(OVERFLOW, OVERFLOW_DROP_OLDEST);
+        if (!OVERFLOW_DROP_OLDEST.equals(overflow) && !OVERFLOW_DROP_DUPLICATE.equals(overflow)) {
+            throw new IllegalArgumentException("Unknown delivery overflow policy: " + overflow);
+        }
+        int maxBatch = json.optInt(MAX_BATCH, 10);
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be at least 1");
+        }
+        ResultBatcher batcher = new ResultBatcher(request,
+                Math.max(0, json.optLong(INTERVAL, 250)),
+                maxBatch,
+                Math.max(0, json.optInt(MAX_IN_FLIGHT, 0)),
+                json.optInt(MAX_PENDING, 50),
+                OVERFLOW_DROP_DUPLICATE.equals(overflow));
+        activeBatchers.put(request.getId(), batcher);
+        return batcher;
+    }
+
+    /**
+     * Acknowledges a batch of the given request, so the next one can be sent (see maxInFlight).
+     *
+     * @return false if the request has no active batcher
+     */
+    public static boolean acknowledge(String requestId) {
+        ResultBatcher batcher = activeBatchers.get(requestId);
+        if (batcher == null) {
+            return false;
+        }
+        batcher.acknowledge();
+        return true;
+    }
+
+    public static JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("activeRequests", activeBatchers.size());
+            json.put("batchedResults", totalResults.get());
+            json.put("batches", totalBatches.get());
+            json.put("dropped", totalDropped.get());
+            json.put("coalesced", totalCoalesced.get());
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting stats to json.", e);
+        }
+        return json;
+    }
+
+    private static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "AnylineResultBatcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * Offers a result of the request.
+     */
+    public synchronized void offer(Object result, boolean isFinalResult) {
+        if (closed) {
+            return;
+        }
+        boolean batchable = !isFinalResult
+                && (result instanceof ResultEncoder.EncodedResult || result instanceof JSONObject);
+        if (!batchable) {
+            flush(true);
+            request.send(result, isFinalResult);
+            if (isFinalResult) {
+                close();
+            }
+            return;
+        }
+
+        totalResults.incrementAndGet();
+        if (dropDuplicates && replaceDuplicate(result)) {
+            coalesced++;
+            totalCoalesced.incrementAndGet();
+        } else {
+            pending.add(result);
+        }
+        while (pending.size() > maxPending) {
+            pending.remove(0);
+            dropped++;
+            totalDropped.incrementAndGet();
+        }
+
+        if (pending.size() >= maxBatch) {
+            flush(false);
+        } else if (scheduledFlush == null) {
+            scheduledFlush = getScheduler().schedule(flushRunnable, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends the pending results before an error or cancel is reported, and stops batching.
+     */
+    public synchronized void close() {
+        if (!closed) {
+            flush(true);
+        }
+        closed = true;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        activeBatchers.remove(request.getId());
+    }
+
+    private synchronized void acknowledge() {
+        if (inFlight > 0) {
+            inFlight--;
+        }
+        // a full batch was held back for this acknowledgement, the scheduled flush is only for partial ones
+        if (!pending.isEmpty() && (scheduledFlush == null || pending.size() >= maxBatch)) {
+            flush(false);
+        }
+    }
+
+    /**
+     * @param force send even if the maximum number of unacknowledged batches is reached
+     */
+    private void flush(boolean force) {
+        if (pending.isEmpty() || closed) {
+            return;
+        }
+        if (!force && maxInFlight > 0 && inFlight >= maxInFlight) {
+            // javascript is behind, keep collecting until the next acknowledgement
+            return;
+        }
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        sb.setLength(0);
+        sb.append("{\"requestId\":\"").append(request.getId()).append("\",\"sequence\":").append(++sequence);
+        sb.append(",\"dropped\":").append(dropped);
+        sb.append(",\"coalesced\":").append(coalesced);
+        sb.append(",\"batch\":[");
+        for (int i = 0; i < pending.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(pending.get(i).toString());
+        }
+        sb.append("]}");
+        pending.clear();
+        dropped = 0;
+        coalesced = 0;
+
+        if (maxInFlight > 0) {
+            inFlight++;
+        }
+        totalBatches.incrementAndGet();
+        request.send(new ResultEncoder.EncodedResult(sb.toString(), null), false);
+    }
+
+    private boolean replaceDuplicate(Object result) {
+        String value = valueOf(result);
+        if (value == null) {
+            return false;
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            if (value.equals(valueOf(pending.get(i)))) {
+                // the newer result wins and moves to the end, the batch stays ordered by the last occurrence
+                pending.remove(i);
+                pending.add(result);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String valueOf(Object result) {
+        if (result instanceof ResultEncoder.EncodedResult) {
+            return ((ResultEncoder.EncodedResult) result).getValue();
+        }
+        return null;
+    }
+}
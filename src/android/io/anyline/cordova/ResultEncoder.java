@@ -0,0 +1,330 @@
+/*
+ * Anyline Cordova Plugin
+ * ResultEncoder.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.graphics.PointF;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Builds the result of one scan and serializes it to json in a single pass, without an intermediate
+ * JSONObject tree.
+ * <p/>
+ * An encoder is owned by one activity and reused for every result, so its buffers are only allocated once.
+ * It must only be used from one thread at a time (the thread the sdk reports results on).
+ * <p/>
+ * Two schemas are supported, selected with "resultSchema" in the view config:
+ * <ul>
+ * <li>1 (default): the legacy shape, the outline is a json string with upLeft/upRight/downRight/downLeft
+ * and the value keeps its module specific key (value, reading, text)</li>
+ * <li>2: a flat, versioned schema with "schemaVersion" and "module", the value is always "value" and the
+ * outline is a numeric array [x0, y0, x1, y1, x2, y2, x3, y3]</li>
+ * </ul>
+ */
+public class ResultEncoder {
+
+    public static final String RESULT_SCHEMA = "resultSchema";
+
+    public static final int SCHEMA_LEGACY = 1;
+    public static final int SCHEMA_COMPACT = 2;
+
+    public static final String KEY_VALUE = "value";
+    public static final String KEY_CONFIDENCE = "confidence";
+    public static final String KEY_OUTLINE = "outline";
+
+    private static final String[] LEGACY_OUTLINE_NAMES = {"upLeft", "upRight", "downRight", "downLeft"};
+
+    private final int schema;
+    private final StringBuilder sb = new StringBuilder(512);
+    private final ArrayList<String> keys = new ArrayList<String>();
+    private final ArrayList<Object> values = new ArrayList<Object>();
+    private final float[] outline = new float[8];
+
+    private String module;
+    private String valueKey;
+    private boolean hasOutline;
+
+    public ResultEncoder(int schema) {
+        this.schema = schema == SCHEMA_COMPACT ? SCHEMA_COMPACT : SCHEMA_LEGACY;
+    }
+
+    public int getSchema() {
+        return schema;
+    }
+
+    /**
+     * Clears the fields of the previous result.
+     *
+     * @param module the module of the result (e.g. BARCODE), only written in the compact schema
+     * @return this encoder
+     */
+    public ResultEncoder begin(String module) {
+        this.module = module;
+        this.valueKey = null;
+        this.hasOutline = false;
+        keys.clear();
+        values.clear();
+        return this;
+    }
+
+    public String getModule() {
+        return module;
+    }
+
+    /**
+     * Puts a field. Supported values are strings, numbers, booleans, JSONObjects, JSONArrays and null,
+     * anything else is written as string. Putting an existing key replaces its value.
+     */
+    public ResultEncoder put(String key, Object value) {
+        int index = keys.indexOf(key);
+        if (index >= 0) {
+            values.set(index, value);
+        } else {
+            keys.add(key);
+            values.add(value);
+        }
+        return this;
+    }
+
+    /**
+     * Puts all fields of the given json object.
+     */
+    public ResultEncoder putAll(JSONObject json) {
+        Iterator<String> it = json.keys();
+        while (it.hasNext()) {
+            String key = it.next();
+            put(key, json.opt(key));
+        }
+        return this;
+    }
+
+    /**
+     * Puts the main value of the result.
+     *
+     * @param legacyKey the key the value has in the legacy schema, the compact schema always uses "value"
+     * @param value     the value
+     */
+    public ResultEncoder putValue(String legacyKey, Object value) {
+        if (valueKey != null) {
+            remove(valueKey);
+        }
+        valueKey = schema == SCHEMA_COMPACT ? KEY_VALUE : legacyKey;
+        return put(valueKey, value);
+    }
+
+    /**
+     * Replaces the main value of the result, keeping its key. Does nothing if no value was put.
+     */
+    public ResultEncoder replaceValue(Object value) {
+        return valueKey == null ? this : put(valueKey, value);
+    }
+
+    /**
+     * @return the main value of the result, or null if none was put
+     */
+    public Object getValue() {
+        return valueKey == null ? null : get(valueKey);
+    }
+
+    public Object get(String key) {
+        int index = keys.indexOf(key);
+        return index < 0 ? null : values.get(index);
+    }
+
+    public ResultEncoder remove(String key) {
+        int index = keys.indexOf(key);
+        if (index >= 0) {
+            keys.remove(index);
+            values.remove(index);
+        }
+        return this;
+    }
+
+    /**
+     * Puts the outline of the result. The first four points are used (upLeft, upRight, downRight, downLeft).
+     */
+    public ResultEncoder putOutline(List<PointF> points) {
+        if (points == null || points.size() < 4) {
+            return this;
+        }
+        for (int i = 0; i < 4; i++) {
+            PointF point = points.get(i);
+            outline[i * 2] = point.x;
+            outline[i * 2 + 1] = point.y;
+        }
+        hasOutline = true;
+        return this;
+    }
+
+    /**
+     * Serializes the current result.
+     */
+    public EncodedResult encode() {
+        sb.setLength(0);
+        sb.append('{');
+        boolean first = true;
+        if (schema == SCHEMA_COMPACT) {
+            sb.append("\"schemaVersion\":").append(SCHEMA_COMPACT);
+            sb.append(",\"module\":");
+            appendString(module);
+            first = false;
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            appendString(keys.get(i));
+            sb.append(':');
+            appendValue(values.get(i));
+        }
+        if (hasOutline) {
+            if (!first) {
+                sb.append(',');
+            }
+            appendString(KEY_OUTLINE);
+            sb.append(':');
+            if (schema == SCHEMA_COMPACT) {
+                appendOutlineArray();
+            } else {
+                appendLegacyOutline();
+            }
+        }
+        sb.append('}');
+        Object value = getValue();
+        return new EncodedResult(sb.toString(), value == null ? null : value.toString());
+    }
+
+    private void appendOutlineArray() {
+        sb.append('[');
+        for (int i = 0; i < outline.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendNumber(outline[i]);
+        }
+        sb.append(']');
+    }
+
+    /**
+     * The legacy outline is a json object that was put as string, so it is written as escaped string.
+     */
+    private void appendLegacyOutline() {
+        sb.append("\"{");
+        for (int i = 0; i < LEGACY_OUTLINE_NAMES.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("\\\"").append(LEGACY_OUTLINE_NAMES[i]).append("\\\":{\\\"x\\\":");
+            appendNumber(outline[i * 2]);
+            sb.append(",\\\"y\\\":");
+            appendNumber(outline[i * 2 + 1]);
+            sb.append('}');
+        }
+        sb.append("}\"");
+    }
+
+    private void appendValue(Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            sb.append("null");
+        } else if (value instanceof String) {
+            appendString((String) value);
+        } else if (value instanceof Boolean) {
+            sb.append(((Boolean) value).booleanValue());
+        } else if (value instanceof Float || value instanceof Double) {
+            appendNumber(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            sb.append(((Number) value).longValue());
+        } else if (value instanceof JSONObject || value instanceof JSONArray) {
+            sb.append(value.toString());
+        } else {
+            appendString(value.toString());
+        }
+    }
+
+    private void appendNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append("null");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+    }
+
+    private void appendString(String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append('\\').append(c);
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * A serialized result. It is sent to javascript as is, without parsing or encoding it again.
+     */
+    public static class EncodedResult {
+        private final String json;
+        private final String value;
+
+        /**
+         * @param json  the serialized result
+         * @param value the main value of the result, used to detect duplicates, may be null
+         */
+        public EncodedResult(String json, String value) {
+            this.json = json;
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return json;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * Anyline Cordova Plugin
+ * ResultFilterChain.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Checks and transforms results natively, before the consensus, before their images are encoded and before they
+ * are sent to javascript. A rejected result costs neither. Configured with "resultFilters" in the view config,
+ * the stages run in order:
+ * <pre>
+ * "resultFilters": [
+ *   { "type": "normalize", "trim": true, "removeWhitespace": true, "case": "upper", "remove": "[-.]" },
+ *   { "type": "confidence", "min": 60 },
+ *   { "type": "length", "min": 8, "max": 13 },
+ *   { "type": "regex", "pattern": "EAN_13|QR_CODE", "field": "format", "modules": ["BARCODE"] },
+ *   { "type": "custom", "class": "com.example.ChecksumStage", "name": "checksum" }
+ * ]
+ * </pre>
+ * length, regex and normalize work on the value of the result, or on "field". A result without the field is
+ * rejected by the validators. confidence passes results of modules that report no confidence. With "modules"
+ * a stage only runs for results of these modules (BARCODE, MRZ, ANYLINE_OCR, ENERGY).
+ * <p/>
+ * Custom stages implement {@link Stage}. They are created by a {@link StageFactory} of their type, registered
+ * with {@link #registerFactory} or as service (META-INF/services/io.anyline.cordova.ResultFilterChain$StageFactory),
+ * or with "type": "custom" from "class", with a public constructor that takes the stage config as JSONObject
+ * or none.
+ * <p/>
+ * Every stage counts the results it processed and rejected, per module and stage name ("name", default the
+ * type). {@link #getStats()} returns them:
+ * <pre>
+ * { "modules": { "BARCODE": { "confidence": { "processed": 120, "rejected": 31 }, ... } } }
+ * </pre>
+ * A chain is used from the thread the sdk reports results on.
+ */
+public class ResultFilterChain {
+
+    private static final String TAG = ResultFilterChain.class.getSimpleName();
+
+    public static final String RESULT_FILTERS = "resultFilters";
+    public static final String TYPE = "type";
+    public static final String NAME = "name";
+    public static final String FIELD = "field";
+    public static final String MODULES = "modules";
+    public static final String MIN = "min";
+    public static final String MAX = "max";
+    public static final String PATTERN = "pattern";
+    public static final String CLASS = "class";
+
+    public static final String TYPE_CONFIDENCE = "confidence";
+    public static final String TYPE_LENGTH = "length";
+    public static final String TYPE_REGEX = "regex";
+    public static final String TYPE_NORMALIZE = "normalize";
+    public static final String TYPE_CUSTOM = "custom";
+
+    /**
+     * A stage of the chain. It may change the fields of the result, e.g. normalize the value.
+     */
+    public interface Stage {
+        /**
+         * @param result the result, with all fields the module reported (no images yet)
+         * @return true if the result passes, false to drop it
+         */
+        boolean process(ResultEncoder result);
+    }
+
+    /**
+     * Creates the custom stages of a type.
+     */
+    public interface StageFactory {
+        /**
+         * @return the type of the stages, used as "type" in the config
+         */
+        String getType();
+
+        /**
+         * @param config the config of the stage
+         * @throws IllegalArgumentException if the config is invalid
+         */
+        Stage create(JSONObject config);
+    }
+
+    private static final Map<String, StageFactory> factories = new HashMap<String, StageFactory>();
+    private static boolean servicesLoaded;
+    // module -> stage name -> processed, rejected
+    private static final Map<String, Map<String, long[]>> stats = new HashMap<String, Map<String, long[]>>();
+
+    private final String[] names;
+    private final Stage[] stages;
+    // null if the stage runs for every module
+    private final Set<String>[] modules;
+
+    private ResultFilterChain(List<String> names, List<Stage> stages, List<Set<String>> modules) {
+        this.names = names.toArray(new String[names.size()]);
+        this.stages = stages.toArray(new Stage[stages.size()]);
+        //noinspection unchecked
+        this.modules = modules.toArray(new Set[modules.size()]);
+    }
+
+    /**
+     * @param json the filters json array, may be null or empty
+     * @return the chain, or null if no filters are configured
+     */
+    public static ResultFilterChain fromJson(String json) throws JSONException {
+        if (json == null || json.length() == 0) {
+            return null;
+        }
+        return fromJson(new JSONArray(json));
+    }
+
+    /**
+     * @throws JSONException            if a stage is no json object
+     * @throws IllegalArgumentException if a stage is unknown or its config is invalid
+     */
+    public static ResultFilterChain fromJson(JSONArray json) throws JSONException {
+        if (json == null || json.length() == 0) {
+            return null;
+        }
+        List<String> names = new ArrayList<String>(json.length());
+        List<Stage> stages = new ArrayList<Stage>(json.length());
+        List<Set<String>> modules = new ArrayList<Set<String>>(json.length());
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject config = json.getJSONObject(i);
+            String type = config.optString(TYPE, null);
+            if (type == null) {
+                throw new IllegalArgumentException("Result filter " + i + " has no type");
+            }
+            names.add(config.optString(NAME, type));
+            stages.add(createStage(type, config));
+            JSONArray stageModules = config.optJSONArray(MODULES);
+            Set<String> moduleSet = null;
+            if (stageModules != null) {
+                moduleSet = new HashSet<String>();
+                for (int j = 0; j < stageModules.length(); j++) {
+                    moduleSet.add(stageModules.getString(j));
+                }
+            }
+            modules.add(moduleSet);
+        }
+        return new ResultFilterChain(names, stages, modules);
+    }
+
+    /**
+     * Registers the factory of a custom stage type, e.g. in the onCreate of the main activity.
+     */
+    public static synchronized void registerFactory(StageFactory factory) {
+        factories.put(factory.getType(), factory);
+    }
+
+    /**
+     * Runs the stages on the result, until one rejects it.
+     *
+     * @return true if the result should be reported
+     */
+    public boolean process(ResultEncoder result) {
+        String module = result.getModule();
+        for (int i = 0; i < stages.length; i++) {
+            if (modules[i] != null && !modules[i].contains(module)) {
+                continue;
+            }
+            boolean passed = stages[i].process(result);
+            count(module, names[i], passed);
+            if (!passed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static synchronized JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            JSONObject modulesJson = new JSONObject();
+            for (Map.Entry<String, Map<String, long[]>> module : stats.entrySet()) {
+                JSONObject stagesJson = new JSONObject();
+                for (Map.Entry<String, long[]> stage : module.getValue().entrySet()) {
+                    JSONObject stageJson = new JSONObject();
+                    stageJson.put("processed", stage.getValue()[0]);
+                    stageJson.put("rejected", stage.getValue()[1]);
+                    stagesJson.put(stage.getKey(), stageJson);
+                }
+                modulesJson.put(module.getKey(), stagesJson);
+            }
+            json.put("modules", modulesJson);
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting filter stats to json.", e);
+        }
+        return json;
+    }
+
+    public static synchronized void resetStats() {
+        stats.clear();
+    }
+
+    private static synchronized void count(String module, String name, boolean passed) {
+        Map<String, long[]> moduleStats = stats.get(module);
+        if (moduleStats == null) {
+            moduleStats = new HashMap<String, long[]>();
+            stats.put(module, moduleStats);
+        }
+        long[] counts = moduleStats.get(name);
+        if (counts == null) {
+            counts = new long[2];
+            moduleStats.put(name, counts);
+        }
+        counts[0]++;
+        if (!passed) {
+            counts[1]++;
+        }
+    }
+
+    private static Stage createStage(String type, JSONObject config) {
+        if (TYPE_CONFIDENCE.equals(type)) {
+            return new ConfidenceStage(config.optInt(MIN, 0));
+        }
+        if (TYPE_LENGTH.equals(type)) {
+            return new LengthStage(config.optString(FIELD, null), config.optInt(MIN, 0),
+                    config.optInt(MAX, Integer.MAX_VALUE));
+        }
+        if (TYPE_REGEX.equals(type)) {
+            if (!config.has(PATTERN)) {
+                throw new IllegalArgumentException("The regex result filter has no pattern");
+            }
+            // an invalid pattern throws a PatternSyntaxException, an IllegalArgumentException
+            return new RegexStage(config.optString(FIELD, null), Pattern.compile(config.optString(PATTERN)));
+        }
+        if (TYPE_NORMALIZE.equals(type)) {
+            String remove = config.optString("remove", null);
+            return new NormalizeStage(config.optString(FIELD, null), config.optBoolean("trim", true),
+                    config.optBoolean("removeWhitespace", false), config.optString("case", null),
+                    remove == null ? null : Pattern.compile(remove));
+        }
+        if (TYPE_CUSTOM.equals(type)) {
+            return createCustomStage(config);
+        }
+        StageFactory factory = getFactory(type);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown result filter: " + type);
+        }
+        return factory.create(config);
+    }
+
+    private static synchronized StageFactory getFactory(String type) {
+        if (!servicesLoaded) {
+            servicesLoaded = true;
+            for (StageFactory factory : ServiceLoader.load(StageFactory.class,
+                    ResultFilterChain.class.getClassLoader())) {
+                // registered factories win over services
+                if (!factories.containsKey(factory.getType())) {
+                    factories.put(factory.getType(), factory);
+                }
+            }
+        }
+        return factories.get(type);
+    }
+
+    private static Stage createCustomStage(JSONObject config) {
+        String className = config.optString(CLASS, null);
+        if (className == null) {
+            throw new IllegalArgumentException("The custom result filter has no class");
+        }
+        try {
+            // not initialized yet, so the static initializer of a class that is no stage does not run
+            Class<?> stageClass = Class.forName(className, false, ResultFilterChain.class.getClassLoader());
+            if (!Stage.class.isAssignableFrom(stageClass)) {
+                throw new IllegalArgumentException(className + " is no result filter stage");
+            }
+            try {
+                Constructor<?> constructor = stageClass.getConstructor(JSONObject.class);
+                return (Stage) constructor.newInstance(config);
+            } catch (NoSuchMethodException e) {
+                return (Stage) stageClass.newInstance();
+            }
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("The result filter " + className + " could not be created: " + e, e);
+        }
+    }
+
+    /**
+     * @return the field, or the value of the result if field is null
+     */
+    private static Object read(ResultEncoder result, String field) {
+        Object value = field == null ? result.getValue() : result.get(field);
+        return value == JSONObject.NULL ? null : value;
+    }
+
+    private static class ConfidenceStage implements Stage {
+        private final int min;
+
+        ConfidenceStage(int min) {
+            this.min = min;
+        }
+
+        @Override
+        public boolean process(ResultEncoder result) {
+            Object confidence = result.get(ResultEncoder.KEY_CONFIDENCE);
+            return !(confidence instanceof Number) || ((Number) confidence).intValue() >= min;
+        }
+    }
+
+    private static class LengthStage implements Stage {
+        private final String field;
+        private final int min;
+        private final int max;
+
+        LengthStage(String field, int min, int max) {
+            if (min < 0 || max < min) {
+                throw new IllegalArgumentException("Invalid length result filter: min must be between 0 and max");
+            }
+            this.field = field;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public boolean process(ResultEncoder result) {
+            Object value = read(result, field);
+            if (value == null) {
+                return false;
+            }
+            int length = value.toString().length();
+            return length >= min && length <= max;
+        }
+    }
+
+    private static class RegexStage implements Stage {
+        private final String field;
+        private final Pattern pattern;
+
+        RegexStage(String field, Pattern pattern) {
+            this.field = field;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean process(ResultEncoder result) {
+            Object value = read(result, field);
+            return value != null && pattern.matcher(value.toString()).matches();
+        }
+    }
+
+    private static class NormalizeStage implements Stage {
+        private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+        private final String field;
+        private final boolean trim;
+        private final boolean removeWhitespace;
+        private final String textCase;
+        private final Pattern remove;
+
+        NormalizeStage(String field, boolean trim, boolean removeWhitespace, String textCase, Pattern remove) {
+            if (textCase != null && !"upper".equals(textCase) && !"lower".equals(textCase)) {
+                throw new IllegalArgumentException("Unknown case of normalize result filter: " + textCase);
+            }
+            this.field = field;
+            this.trim = trim;
+            this.removeWhitespace = removeWhitespace;
+            this.textCase = textCase;
+            this.remove = remove;
+        }
+
+        @Override
+        public boolean process(ResultEncoder result) {
+            Object value = read(result, field);
+            // only text is normalized, numbers and objects are kept as they are
+            if (!(value instanceof String)) {
+                return true;
+            }
+            String text = (String) value;
+            if (trim) {
+                text = text.trim();
+            }
+            if (removeWhitespace) {
+                text = WHITESPACE.matcher(text).replaceAll("");
+            }
+            if (remove != null) {
+                text = remove.matcher(text).replaceAll("");
+            }
+            if ("upper".equals(textCase)) {
+                text = text.toUpperCase(Locale.US);
+            } else if ("lower".equals(textCase)) {
+                text = text.toLowerCase(Locale.US);
+            }
+            if (field == null) {
+                result.replaceValue(text);
+            } else {
+                result.put(field, text);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Anyline Cordova Plugin
+ * ResultPipeline.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import at.nineyards.anyline.models.AnylineImage;
+
+/**
+ * Builds, filters and reports the results of a scan, shared by the scan activities and the
+ * {@link EmbeddedScanner}. A result goes through the {@link ResultFilterChain}, the {@link CompositeScan}
+ * and the {@link ConsensusFilter} (in this order, before any image is encoded), then its images are saved
+ * with the {@link ImageOutputPolicy} (or kept in the {@link ImagePool}, or encoded for binary delivery), and
+ * it is reported with the {@link ResultReporter}.
+ * <p/>
+ * Results are built on the worker thread of the sdk, one at a time. The encoder and the pending images are
+ * reused for every result, so a result must be reported before the next one is started.
+ */
+public class ResultPipeline {
+
+    private static final String TAG = ResultPipeline.class.getSimpleName();
+
+    private final Context context;
+    private final ResultEncoder resultEncoder;
+    private final ImageOutputPolicy imageOutputPolicy;
+    // only set if a consensus is configured, used in continuous scanning
+    private final ConsensusFilter consensusFilter;
+    // only set if a composite scan is configured
+    private final CompositeScan compositeScan;
+    // only set if result filters are configured
+    private final ResultFilterChain resultFilterChain;
+    private final boolean asyncImageSave;
+    private final String imageDeliveryMode;
+    private final int imageDeliveryMaxDimension;
+    private final int imageDeliveryQuality;
+
+    // images of the result that is currently built, written after the result is reported
+    private final List<ImageWriter.Job> pendingImageJobs = new ArrayList<ImageWriter.Job>();
+    // cutout of the result that is currently built, sent as ArrayBuffer after the result
+    private BinaryImageEncoder.EncodedImage pendingBinaryImage;
+
+    private ResultPipeline(Context context, int resultSchema, ImageOutputPolicy imageOutputPolicy,
+                           ConsensusFilter consensusFilter, CompositeScan compositeScan,
+                           ResultFilterChain resultFilterChain, boolean asyncImageSave, String imageDeliveryMode,
+                           int imageDeliveryMaxDimension, int imageDeliveryQuality) {
+        this.context = context.getApplicationContext();
+        this.resultEncoder = new ResultEncoder(resultSchema);
+        this.imageOutputPolicy = imageOutputPolicy;
+        this.consensusFilter = consensusFilter;
+        this.compositeScan = compositeScan;
+        this.resultFilterChain = resultFilterChain;
+        this.asyncImageSave = asyncImageSave;
+        this.imageDeliveryMode = imageDeliveryMode;
+        this.imageDeliveryMaxDimension = imageDeliveryMaxDimension;
+        this.imageDeliveryQuality = imageDeliveryQuality;
+    }
+
+    /**
+     * Creates the pipeline from the extras the plugin passes to a scan activity. The configs were validated
+     * by the plugin, an invalid one is logged and left out.
+     *
+     * @param defaultImageQuality the image quality if the image output config sets none
+     */
+    public static ResultPipeline fromExtras(Context context, Bundle extras, int defaultImageQuality) {
+        ImageOutputPolicy imageOutputPolicy;
+        try {
+            imageOutputPolicy = ImageOutputPolicy.fromJson(extras.getString(AnylinePlugin.EXTRA_IMAGE_OUTPUT_JSON),
+                    defaultImageQuality);
+        } catch (Exception e) {
+            // already validated by the plugin
+            Log.e(TAG, "Invalid image output config, using the defaults.", e);
+            imageOutputPolicy = ImageOutputPolicy.defaultPolicy(defaultImageQuality);
+        }
+        ConsensusFilter consensusFilter = null;
+        try {
+            consensusFilter = ConsensusFilter.fromJson(extras.getString(AnylinePlugin.EXTRA_CONSENSUS_JSON));
+        } catch (Exception e) {
+            // already validated by the plugin
+            Log.e(TAG, "Invalid consensus config, reporting every result.", e);
+        }
+        CompositeScan compositeScan = null;
+        try {
+            compositeScan = CompositeScan.fromJson(extras.getString(AnylinePlugin.EXTRA_COMPOSITE_JSON));
+        } catch (Exception e) {
+            // already validated by the plugin
+            Log.e(TAG, "Invalid composite config, scanning the module only.", e);
+        }
+        ResultFilterChain resultFilterChain = null;
+        try {
+            resultFilterChain = ResultFilterChain.fromJson(extras.getString(AnylinePlugin.EXTRA_RESULT_FILTERS_JSON));
+        } catch (Exception e) {
+            // already validated by the plugin
+            Log.e(TAG, "Invalid result filters, reporting every result.", e);
+        }
+        return new ResultPipeline(context,
+                extras.getInt(AnylinePlugin.EXTRA_RESULT_SCHEMA, ResultEncoder.SCHEMA_LEGACY),
+                imageOutputPolicy, consensusFilter, compositeScan, resultFilterChain,
+                extras.getBoolean(AnylinePlugin.EXTRA_ASYNC_IMAGE_SAVE, false),
+                extras.getString(AnylinePlugin.EXTRA_IMAGE_DELIVERY_MODE, BinaryImageEncoder.MODE_PATH),
+                extras.getInt(AnylinePlugin.EXTRA_IMAGE_DELIVERY_MAX_DIMENSION,
+                        BinaryImageEncoder.DEFAULT_MAX_DIMENSION),
+                extras.getInt(AnylinePlugin.EXTRA_IMAGE_DELIVERY_QUALITY, BinaryImageEncoder.DEFAULT_QUALITY));
+    }
+
+    /**
+     * Creates the pipeline from the view config of a scan, with the same settings the plugin passes to the
+     * scan activities.
+     *
+     * @param defaultImageQuality the image quality if the image output config sets none
+     * @throws JSONException            if a config is invalid
+     * @throws IllegalArgumentException if a config is invalid
+     */
+    public static ResultPipeline fromViewConfig(Context context, JSONObject viewConfig, int defaultImageQuality)
+            throws JSONException {
+        JSONObject imageOutput = viewConfig.optJSONObject(ImageOutputPolicy.IMAGE_OUTPUT);
+        JSONObject consensus = viewConfig.optJSONObject(ConsensusFilter.CONSENSUS);
+        JSONObject imageDelivery = viewConfig.optJSONObject(BinaryImageEncoder.IMAGE_DELIVERY);
+        if (imageDelivery == null) {
+            imageDelivery = new JSONObject();
+        }
+        return new ResultPipeline(context,
+                viewConfig.optInt(ResultEncoder.RESULT_SCHEMA, ResultEncoder.SCHEMA_LEGACY),
+                imageOutput == null ? ImageOutputPolicy.defaultPolicy(defaultImageQuality)
+                        : ImageOutputPolicy.fromJson(imageOutput, defaultImageQuality),
+                consensus == null ? null : ConsensusFilter.fromJson(consensus),
+                CompositeScan.fromJson(viewConfig.optJSONObject(CompositeScan.COMPOSITE)),
+                ResultFilterChain.fromJson(viewConfig.optJSONArray(ResultFilterChain.RESULT_FILTERS)),
+                viewConfig.optBoolean(ImageWriter.ASYNC_IMAGE_SAVE, false),
+                imageDelivery.optString(BinaryImageEncoder.IMAGE_DELIVERY_MODE, BinaryImageEncoder.MODE_PATH),
+                imageDelivery.optInt(BinaryImageEncoder.IMAGE_DELIVERY_MAX_DIMENSION,
+                        BinaryImageEncoder.DEFAULT_MAX_DIMENSION),
+                imageDelivery.optInt(BinaryImageEncoder.IMAGE_DELIVERY_QUALITY, BinaryImageEncoder.DEFAULT_QUALITY));
+    }
+
+    public ImageOutputPolicy getImageOutputPolicy() {
+        return imageOutputPolicy;
+    }
+
+    /**
+     * @return the consensus, null if none is configured
+     */
+    public ConsensusFilter getConsensusFilter() {
+        return consensusFilter;
+    }
+
+    /**
+     * @return the composite scan, null if none is configured
+     */
+    public CompositeScan getCompositeScan() {
+        return compositeScan;
+    }
+
+    /**
+     * Starts a new result. The returned encoder is reused for every result, so it must only be used until the
+     * result is reported.
+     *
+     * @param module the module of the result (e.g. BARCODE)
+     */
+    public ResultEncoder begin(String module) {
+        return resultEncoder.begin(module);
+    }
+
+    /**
+     * Runs the {@link ResultFilterChain} on the result. Call this once the fields of the module are put, before
+     * the consensus, so rejected results neither vote nor cost image encoding.
+     *
+     * @return true if the result should be reported
+     */
+    public boolean passesFilters(ResultEncoder result) {
+        return resultFilterChain == null || resultFilterChain.process(result);
+    }
+
+    /**
+     * Runs the barcode detection of the {@link CompositeScan} on the frame of the result and puts the barcodes
+     * to it. Call this before the consensus: a value the consensus accepted is not accepted again (unless it
+     * emits repeats), so a result dropped for a missing barcode afterwards would be lost for good.
+     *
+     * @param frame the full frame of the result, may be null
+     * @return true if the result should be reported (false if a required barcode is missing)
+     */
+    public boolean applyComposite(ResultEncoder result, AnylineImage frame) {
+        if (compositeScan == null) {
+            return true;
+        }
+        JSONArray barcodes = compositeScan.detectBarcodes(context, frame, SystemClock.elapsedRealtime());
+        if (compositeScan.isBarcodeRequired() && barcodes.length() == 0) {
+            return false;
+        }
+        result.put(CompositeScan.KEY_DETECTED_BARCODES, barcodes);
+        return true;
+    }
+
+    /**
+     * Offers the value and confidence of the result to the {@link ConsensusFilter}. Call this after
+     * {@link #applyComposite} and before the images are saved, so results that are held back cost no encoding.
+     * <p/>
+     * Only applied in continuous scanning, a scan that is canceled on the first result has no further frames
+     * to agree with.
+     *
+     * @return true if the result should be reported
+     */
+    public boolean passesConsensus(ResultEncoder result, boolean cancelOnResult) {
+        if (consensusFilter == null || cancelOnResult) {
+            return true;
+        }
+        Object value = result.getValue();
+        Object confidence = result.get(ResultEncoder.KEY_CONFIDENCE);
+        if (!consensusFilter.offer(value == null ? null : value.toString(),
+                confidence instanceof Number ? ((Number) confidence).intValue() : 0,
+                SystemClock.elapsedRealtime())) {
+            return false;
+        }
+        result.put("consensusFrames", consensusFilter.getLastAgreement());
+        return true;
+    }
+
+    /**
+     * Saves the image to the {@link ImageCache} with the {@link ImageOutputPolicy} and puts the path to the
+     * result.
+     * <p/>
+     * With asyncImageSave the path is put right away, and the image is written in the background after the
+     * result was reported (see {@link ImageWriter}). The handle of the pending image is put to
+     * {@link ImageWriter#PENDING_IMAGES}.
+     * <p/>
+     * With the image delivery mode "handle" the image is not written but kept in the {@link ImagePool}, the
+     * key ends with Handle instead of Path (e.g. imageHandle).
+     *
+     * @param requestId the request of the result, for tracing
+     */
+    public void saveImage(String requestId, ResultEncoder jsonResult, String key, AnylineImage image)
+            throws IOException, JSONException {
+
+        if (BinaryImageEncoder.MODE_HANDLE.equals(imageDeliveryMode)) {
+            String handle = ImagePool.getInstance().put(image);
+            if (handle != null) {
+                // imagePath -> imageHandle, fullImagePath -> fullImageHandle
+                jsonResult.put(key.endsWith("Path") ? key.substring(0, key.length() - 4) + "Handle"
+                        : key + "Handle", handle);
+                return;
+            }
+            Log.w(TAG, "The image does not fit into the image pool, it is saved instead.");
+        }
+
+        ImageCache imageCache = ImageCache.getInstance(context);
+        File imageFile = imageCache.newFile(imageOutputPolicy.getExtension());
+
+        if (asyncImageSave) {
+            ImageWriter.Job job = ImageWriter.getInstance().newJob(key, image, imageFile, imageOutputPolicy,
+                    imageCache);
+            pendingImageJobs.add(job);
+
+            JSONObject pendingImages = (JSONObject) jsonResult.get(ImageWriter.PENDING_IMAGES);
+            if (pendingImages == null) {
+                pendingImages = new JSONObject();
+                jsonResult.put(ImageWriter.PENDING_IMAGES, pendingImages);
+            }
+            pendingImages.put(key, job.getHandle());
+        } else {
+            ScanTracer.mark(requestId, ScanTracer.STAGE_IMAGE_ENCODE_START);
+            imageOutputPolicy.write(image, imageFile);
+            imageCache.commit(imageFile);
+            ScanTracer.mark(requestId, ScanTracer.STAGE_IMAGE_SAVED);
+        }
+        jsonResult.put(key, imageFile.getAbsolutePath());
+    }
+
+    /**
+     * Handles the cutout of the result according to the image delivery mode: it is saved like
+     * {@link #saveImage} (imagePath, or imageHandle in the mode "handle"), encoded in memory and sent as
+     * ArrayBuffer right after the result (imageBuffer describes it), or both.
+     */
+    public void saveCutoutImage(String requestId, ResultEncoder jsonResult, AnylineImage image)
+            throws IOException, JSONException {
+
+        if (BinaryImageEncoder.MODE_BINARY.equals(imageDeliveryMode)
+                || BinaryImageEncoder.MODE_BOTH.equals(imageDeliveryMode)) {
+            pendingBinaryImage = BinaryImageEncoder.encode(image, imageDeliveryMaxDimension, imageDeliveryQuality);
+            jsonResult.put("imageBuffer", pendingBinaryImage.toJson());
+        }
+        if (!BinaryImageEncoder.MODE_BINARY.equals(imageDeliveryMode)) {
+            saveImage(requestId, jsonResult, "imagePath", image);
+        }
+    }
+
+    /**
+     * Builds and filters a result of a {@link ScanEngine}. Results go through the result filters and the
+     * composite scan, and results with a single value through the consensus.
+     *
+     * @param module the module of the result (e.g. BARCODE)
+     * @return the result to report, null if it is filtered out
+     */
+    public ResultEncoder buildEngineResult(String requestId, String module, ScanEngine.Result result,
+                                           boolean cancelOnResult) {
+        ResultEncoder jsonResult = begin(module);
+        try {
+            if (result.getValueKey() != null) {
+                jsonResult.putValue(result.getValueKey(), result.getValue());
+            }
+            if (result.getFields() != null) {
+                jsonResult.putAll(result.getFields());
+            }
+            jsonResult.putOutline(result.getOutline());
+            if (result.getConfidence() != null) {
+                jsonResult.put(ResultEncoder.KEY_CONFIDENCE, result.getConfidence());
+            }
+
+            if (!passesFilters(jsonResult)) {
+                return null;
+            }
+            if (!applyComposite(jsonResult, result.getFullImage())) {
+                return null;
+            }
+            if (result.getValueKey() != null && !passesConsensus(jsonResult, cancelOnResult)) {
+                return null;
+            }
+
+            if (result.getCutoutImage() != null) {
+                saveCutoutImage(requestId, jsonResult, result.getCutoutImage());
+            }
+
+        } catch (IOException e) {
+            Log.e(TAG, "Image file could not be saved.", e);
+
+        } catch (JSONException jsonException) {
+            //should not be possible
+            Log.e(TAG, "Error while putting image path to json.", jsonException);
+        }
+        return jsonResult;
+    }
+
+    /**
+     * Serializes the result and reports it, followed by its binary image and its pending images.
+     *
+     * @param cancelOnResult true if the result ends the request, it is closed with the last message
+     */
+    public void deliver(String requestId, ResultEncoder result, boolean cancelOnResult) {
+        ScanTracer.mark(requestId, ScanTracer.STAGE_RESULT);
+        Object encoded = result.encode();
+
+        List<ImageWriter.Job> imageJobs = null;
+        if (!pendingImageJobs.isEmpty()) {
+            imageJobs = new ArrayList<ImageWriter.Job>(pendingImageJobs);
+            pendingImageJobs.clear();
+        }
+        BinaryImageEncoder.EncodedImage binaryImage = pendingBinaryImage;
+        pendingBinaryImage = null;
+
+        // with a binary image or pending images the request is kept open until the last message is reported
+        ResultReporter.onResult(requestId, encoded, cancelOnResult && imageJobs == null && binaryImage == null);
+        if (binaryImage != null) {
+            ResultReporter.onResult(requestId, binaryImage.getData(), cancelOnResult && imageJobs == null);
+        }
+        if (imageJobs != null) {
+            ImageWriter.getInstance().submit(requestId, imageJobs, cancelOnResult);
+        }
+    }
+
+    /**
+     * Forgets the state of the previous request (consensus history, sampled barcodes).
+     */
+    public void clear() {
+        if (consensusFilter != null) {
+            consensusFilter.clear();
+        }
+        if (compositeScan != null) {
+            compositeScan.reset();
+        }
+    }
+
+    /**
+     * Releases the barcode detector of the composite scan.
+     */
+    public void release() {
+        if (compositeScan != null) {
+            compositeScan.release();
+        }
+    }
+}
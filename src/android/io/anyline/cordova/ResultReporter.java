@@ -8,21 +8,67 @@
  */
 package io.anyline.cordova;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes results from the scan activities back to the request that started them.
+ * <p/>
+ * Every request registers its own listener under its request id, so overlapping requests do not
+ * overwrite each other. A listener is removed once a final result, an error or a cancel was reported.
+ */
 public class ResultReporter {
 
-    private static OnResultListener listener;
+    private static final Map<String, OnResultListener> listeners = new ConcurrentHashMap<String, OnResultListener>();
+
+    public static void register(String requestId, OnResultListener listener) {
+        listeners.put(requestId, listener);
+    }
 
-    public static void setListener(OnResultListener listener) {
-        ResultReporter.listener = listener;
+    public static void unregister(String requestId) {
+        if (requestId != null) {
+            listeners.remove(requestId);
+        }
     }
 
-    public static void onResult(Object result, boolean isFinalResult) {
+    public static void unregisterAll() {
+        listeners.clear();
+    }
+
+    public static void onResult(String requestId, Object result, boolean isFinalResult) {
+        OnResultListener listener = isFinalResult ? remove(requestId) : get(requestId);
         if (listener != null) {
             listener.onResult(result, isFinalResult);
         }
     }
 
+    public static void onError(String requestId, String errorMessage) {
+        OnResultListener listener = remove(requestId);
+        if (listener != null) {
+            listener.onError(errorMessage);
+        }
+    }
+
+    public static void onCancel(String requestId) {
+        OnResultListener listener = remove(requestId);
+        if (listener != null) {
+            listener.onCancel();
+        }
+    }
+
+    private static OnResultListener get(String requestId) {
+        return requestId == null ? null : listeners.get(requestId);
+    }
+
+    private static OnResultListener remove(String requestId) {
+        return requestId == null ? null : listeners.remove(requestId);
+    }
+
     public interface OnResultListener {
         void onResult(Object result, boolean isFinalResult);
+
+        void onError(String errorMessage);
+
+        void onCancel();
     }
 }
@@ -0,0 +1,120 @@
+/*
+ * Anyline Cordova Plugin
+ * ScanEngine.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.graphics.PointF;
+import android.view.View;
+
+import org.json.JSONObject;
+
+import java.util.List;
+
+import at.nineyards.anyline.camera.CameraOpenListener;
+import at.nineyards.anyline.models.AnylineImage;
+
+/**
+ * What an activity needs from the thing that produces its results: a view to show, a scan lifecycle and a
+ * listener for results. The activities build, filter, save and report the results the same way, no matter
+ * whether they come from a scan view of the sdk ({@link BarcodeScanEngine}, {@link MrzScanEngine}) or from a
+ * recording ({@link ReplayScanEngine}).
+ */
+public interface ScanEngine {
+
+    interface Listener {
+        /**
+         * Called for every result, on the worker thread of the engine.
+         */
+        void onResult(Result result);
+    }
+
+    /**
+     * @return the view to set as content of the activity
+     */
+    View getView();
+
+    /**
+     * Initializes the engine. Camera events go to the camera open listener, errors of the worker thread to
+     * the error handler.
+     */
+    void init(String licenseKey, CameraOpenListener cameraOpenListener,
+              Thread.UncaughtExceptionHandler errorHandler, Listener listener);
+
+    boolean isCancelOnResult();
+
+    void startScanning();
+
+    /**
+     * Stops scanning and releases the camera in the background.
+     */
+    void stopScanning();
+
+    /**
+     * Releases everything the engine holds, it is not started again.
+     */
+    void release();
+
+    /**
+     * A result, independent of the module that produced it.
+     */
+    class Result {
+        private final String valueKey;
+        private final Object value;
+        private final JSONObject fields;
+        private final List<PointF> outline;
+        private final Integer confidence;
+        private final AnylineImage cutoutImage;
+        private final AnylineImage fullImage;
+
+        /**
+         * @param valueKey    the key of the value in the legacy schema, null if the result has no single value
+         * @param value       the value, null if the result has no single value
+         * @param fields      further fields of the result, may be null
+         * @param outline     the outline, may be null
+         * @param confidence  the confidence, may be null
+         * @param cutoutImage the cutout, may be null
+         * @param fullImage   the full frame, may be null
+         */
+        public Result(String valueKey, Object value, JSONObject fields, List<PointF> outline, Integer confidence,
+                      AnylineImage cutoutImage, AnylineImage fullImage) {
+            this.valueKey = valueKey;
+            this.value = value;
+            this.fields = fields;
+            this.outline = outline;
+            this.confidence = confidence;
+            this.cutoutImage = cutoutImage;
+            this.fullImage = fullImage;
+        }
+
+        public String getValueKey() {
+            return valueKey;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public JSONObject getFields() {
+            return fields;
+        }
+
+        public List<PointF> getOutline() {
+            return outline;
+        }
+
+        public Integer getConfidence() {
+            return confidence;
+        }
+
+        public AnylineImage getCutoutImage() {
+            return cutoutImage;
+        }
+
+        public AnylineImage getFullImage() {
+            return fullImage;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Anyline Cordova Plugin
+ * ScanProfile.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import at.nineyards.anyline.camera.AnylineViewConfig;
+import at.nineyards.anyline.modules.ocr.AnylineOcrConfig;
+
+/**
+ * A license, view config and module config that were registered once with registerProfile, so scans only
+ * have to pass the profile id:
+ * <pre>
+ * cordova.exec(onResult, onError, "AnylineSDK", "registerProfile", [id, licenseKey, viewConfig, moduleConfig,
+ *         "ANYLINE_OCR"]);
+ * cordova.exec(onResult, onError, "AnylineSDK", "ANYLINE_OCR", [{ "profileId": id }]);
+ * </pre>
+ * The configs are validated and built when the profile is registered, the activities use the built configs
+ * instead of parsing the json again. The module config is only built as ocr config for profiles that declare
+ * the action ANYLINE_OCR, other profiles keep it as json. Profiles live as long as the app process, registering an id again
+ * replaces the profile.
+ */
+public class ScanProfile {
+
+    public static final String PROFILE_ID = "profileId";
+
+    private static final String ACTION_ANYLINE_OCR = "ANYLINE_OCR";
+
+    private static final Map<String, ScanProfile> profiles = new ConcurrentHashMap<String, ScanProfile>();
+
+    private final String id;
+    private final String licenseKey;
+    private final String action;
+    private final JSONObject viewConfigJson;
+    private final String viewConfigString;
+    private final JSONObject moduleConfigJson;
+    private final String moduleConfigString;
+    private final AnylineViewConfig viewConfig;
+    private final CordovaUIConfig uiConfig;
+    private final AnylineOcrConfig ocrConfig;
+    private final List<String> traineddataFiles;
+
+    private ScanProfile(Context context, String id, String licenseKey, JSONObject viewConfigJson,
+                        JSONObject moduleConfigJson, String action) throws JSONException {
+        this.id = id;
+        this.licenseKey = licenseKey;
+        this.action = action;
+        this.viewConfigJson = viewConfigJson;
+        this.viewConfigString = viewConfigJson.toString();
+        this.moduleConfigJson = moduleConfigJson;
+        this.moduleConfigString = moduleConfigJson == null ? null : moduleConfigJson.toString();
+
+        viewConfig = new AnylineViewConfig(context, viewConfigJson);
+        uiConfig = new CordovaUIConfig(context, viewConfigJson);
+
+        // meter module configs (native barcode, presets) are read by the activity, only ocr configs are built
+        traineddataFiles = new ArrayList<String>();
+        if (moduleConfigJson != null && ACTION_ANYLINE_OCR.equals(action)) {
+            ocrConfig = AnylineOcrActivity.buildOcrConfig(moduleConfigJson, traineddataFiles);
+        } else {
+            ocrConfig = null;
+        }
+    }
+
+    /**
+     * Validates the configs, builds them and registers the profile.
+     *
+     * @param action the scan action the profile is used for (e.g. ANYLINE_OCR), null if it is not declared
+     * @throws JSONException            if the configs are invalid
+     * @throws IllegalArgumentException if the configs are invalid
+     */
+    public static ScanProfile register(Context context, String id, String licenseKey, JSONObject viewConfig,
+                                       JSONObject moduleConfig, String action) throws JSONException {
+        if (id == null || id.length() == 0) {
+            throw new IllegalArgumentException("The profile id must not be empty");
+        }
+        if (viewConfig == null) {
+            throw new IllegalArgumentException("The profile needs a view config");
+        }
+        ScanProfile profile = new ScanProfile(context.getApplicationContext(), id, licenseKey, viewConfig,
+                moduleConfig, action);
+        profiles.put(id, profile);
+        return profile;
+    }
+
+    public static ScanProfile get(String id) {
+        return id == null ? null : profiles.get(id);
+    }
+
+    /**
+     * @return true if a profile with the id was registered
+     */
+    public static boolean unregister(String id) {
+        return id != null && profiles.remove(id) != null;
+    }
+
+    /**
+     * @param args the arguments of a scan action
+     * @return the profile id if the scan references a profile ([{ "profileId": id }]), null otherwise
+     */
+    public static String getProfileId(JSONArray args) {
+        JSONObject first = args.optJSONObject(0);
+        if (first == null || !first.has(PROFILE_ID)) {
+            return null;
+        }
+        return first.optString(PROFILE_ID);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getLicenseKey() {
+        return licenseKey;
+    }
+
+    /**
+     * @return the scan action the profile was registered for, null if none was declared
+     */
+    public String getAction() {
+        return action;
+    }
+
+    public JSONObject getViewConfigJson() {
+        return viewConfigJson;
+    }
+
+    public String getViewConfigString() {
+        return viewConfigString;
+    }
+
+    /**
+     * @return the module config, null if none was registered
+     */
+    public JSONObject getModuleConfigJson() {
+        return moduleConfigJson;
+    }
+
+    public String getModuleConfigString() {
+        return moduleConfigString;
+    }
+
+    public AnylineViewConfig getViewConfig() {
+        return viewConfig;
+    }
+
+    public CordovaUIConfig getUiConfig() {
+        return uiConfig;
+    }
+
+    /**
+     * @return the ocr config, null if the profile was not registered for ANYLINE_OCR
+     */
+    public AnylineOcrConfig getOcrConfig() {
+        return ocrConfig;
+    }
+
+    /**
+     * @return the traineddata files of the ocr config (relative to www)
+     */
+    public List<String> getTraineddataFiles() {
+        return traineddataFiles;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Anyline Cordova Plugin
+ * ScanRequest.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.apache.cordova.PluginResult.Status;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * One call to {@link AnylinePlugin#execute}. Holds everything needed to answer it, so that concurrent
+ * requests never share state.
+ */
+public class ScanRequest implements ResultReporter.OnResultListener {
+
+    private final int requestCode;
+    private final String id;
+    private final String action;
+    private final JSONArray args;
+    private final CallbackContext callbackContext;
+    private volatile ResultBatcher batcher;
+
+    public ScanRequest(int requestCode, String action, JSONArray args, CallbackContext callbackContext) {
+        this.requestCode = requestCode;
+        this.id = String.valueOf(requestCode);
+        this.action = action;
+        this.args = args;
+        this.callbackContext = callbackContext;
+    }
+
+    /**
+     * @return the code used for permission requests and activity results of this request
+     */
+    public int getRequestCode() {
+        return requestCode;
+    }
+
+    /**
+     * @return the id results are routed by (see {@link ResultReporter})
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public JSONArray getArgs() {
+        return args;
+    }
+
+    public CallbackContext getCallbackContext() {
+        return callbackContext;
+    }
+
+    /**
+     * @param batcher the batcher continuous results are delivered through, null sends every result immediately
+     */
+    public void setBatcher(ResultBatcher batcher) {
+        this.batcher = batcher;
+    }
+
+    @Override
+    public void onResult(Object result, boolean isFinalResult) {
+        ResultBatcher batcher = this.batcher;
+        if (batcher != null) {
+            batcher.offer(result, isFinalResult);
+        } else {
+            send(result, isFinalResult);
+        }
+    }
+
+    /**
+     * Sends a result to javascript right away.
+     */
+    void send(Object result, boolean isFinalResult) {
+        PluginResult pluginResult;
+        if (result instanceof ResultEncoder.EncodedResult) {
+            pluginResult = new EncodedJsonPluginResult(result.toString());
+        } else if (result instanceof JSONObject) {
+            pluginResult = new PluginResult(Status.OK, (JSONObject) result);
+        } else if (result instanceof JSONArray) {
+            pluginResult = new PluginResult(Status.OK, (JSONArray) result);
+        } else if (result instanceof byte[]) {
+            pluginResult = new PluginResult(Status.OK, (byte[]) result);
+        } else {
+            pluginResult = new PluginResult(Status.OK, result.toString());
+        }
+        if (!isFinalResult) {
+            pluginResult.setKeepCallback(true);
+        }
+
+        callbackContext.sendPluginResult(pluginResult);
+        ScanTracer.mark(id, ScanTracer.STAGE_RESULT_SENT);
+        if (isFinalResult) {
+            ScanTracer.end(id);
+        }
+    }
+
+    @Override
+    public void onError(String errorMessage) {
+        closeBatcher();
+        ScanTracer.end(id);
+        callbackContext.error(errorMessage);
+    }
+
+    @Override
+    public void onCancel() {
+        closeBatcher();
+        ScanTracer.end(id);
+        callbackContext.error("Canceled");
+    }
+
+    private void closeBatcher() {
+        ResultBatcher batcher = this.batcher;
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
+
+    /**
+     * Sends json that is already serialized as json message, so it is neither parsed nor encoded again.
+     */
+    private static class EncodedJsonPluginResult extends PluginResult {
+        private final String json;
+
+        EncodedJsonPluginResult(String json) {
+            super(Status.OK, (String) null);
+            this.json = json;
+        }
+
+        @Override
+        public int getMessageType() {
+            return MESSAGE_TYPE_JSON;
+        }
+
+        @Override
+        public String getMessage() {
+            return json;
+        }
+    }
+}
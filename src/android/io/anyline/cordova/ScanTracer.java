@@ -0,0 +1,186 @@
+/*
+ * Anyline Cordova Plugin
+ * ScanTracer.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records when a scan passes the stages of the scan path, so the time spent in each of them can be compared
+ * across devices. The traces of the last {@link #CAPACITY} scans are kept per mode in a ring buffer, older
+ * ones are overwritten.
+ * <p/>
+ * Only the first time a scan reaches a stage is recorded (e.g. the first result of a continuous scan).
+ * {@link #getMetrics()} aggregates the traces to percentiles:
+ * <pre>
+ * { "capacity": 64, "modes": { "BARCODE": { "scans": 12,
+ *     "timeToFirstResultMs": { "count": 12, "p50": 830, "p95": 1400, "p99": 1520, "max": 1520 },
+ *     "cameraOpenMs": { ... }, ... } } }
+ * </pre>
+ */
+public class ScanTracer {
+
+    private static final String TAG = ScanTracer.class.getSimpleName();
+
+    public static final int CAPACITY = 64;
+
+    public static final int STAGE_EXECUTE = 0;
+    public static final int STAGE_PERMISSION_GRANTED = 1;
+    public static final int STAGE_ACTIVITY_CREATED = 2;
+    public static final int STAGE_CAMERA_OPENED = 3;
+    public static final int STAGE_FIRST_FRAME = 4;
+    public static final int STAGE_RESULT = 5;
+    public static final int STAGE_IMAGE_SAVED = 6;
+    public static final int STAGE_RESULT_SENT = 7;
+    public static final int STAGE_IMAGE_ENCODE_START = 8;
+    private static final int STAGE_COUNT = 9;
+
+    // name, start stage, end stage
+    private static final Object[][] DURATIONS = {
+            {"timeToFirstResultMs", STAGE_EXECUTE, STAGE_RESULT},
+            {"permissionMs", STAGE_EXECUTE, STAGE_PERMISSION_GRANTED},
+            {"activityStartMs", STAGE_PERMISSION_GRANTED, STAGE_ACTIVITY_CREATED},
+            {"cameraOpenMs", STAGE_ACTIVITY_CREATED, STAGE_CAMERA_OPENED},
+            {"firstFrameMs", STAGE_CAMERA_OPENED, STAGE_FIRST_FRAME},
+            {"imageEncodeMs", STAGE_IMAGE_ENCODE_START, STAGE_IMAGE_SAVED},
+            {"resultSendMs", STAGE_RESULT, STAGE_RESULT_SENT},
+    };
+
+    private static final Map<String, ModeTraces> tracesByMode = new HashMap<String, ModeTraces>();
+    private static final Map<String, long[]> activeTraces = new HashMap<String, long[]>();
+
+    /**
+     * Starts the trace of a request.
+     *
+     * @param requestId the id of the request
+     * @param mode      the scan mode (the action of the request)
+     */
+    public static synchronized void begin(String requestId, String mode) {
+        ModeTraces traces = tracesByMode.get(mode);
+        if (traces == null) {
+            traces = new ModeTraces();
+            tracesByMode.put(mode, traces);
+        }
+        long[] trace = traces.next();
+        trace[STAGE_EXECUTE] = SystemClock.elapsedRealtime();
+        activeTraces.put(requestId, trace);
+    }
+
+    /**
+     * Records the time a request reached the stage, if it is the first time.
+     */
+    public static synchronized void mark(String requestId, int stage) {
+        if (requestId == null) {
+            return;
+        }
+        long[] trace = activeTraces.get(requestId);
+        if (trace != null && trace[stage] == 0) {
+            trace[stage] = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Ends the trace of a request, it is kept in the ring buffer of its mode.
+     */
+    public static synchronized void end(String requestId) {
+        if (requestId != null) {
+            activeTraces.remove(requestId);
+        }
+    }
+
+    public static synchronized void reset() {
+        tracesByMode.clear();
+        // running scans are not traced any more, their arrays are not part of a ring buffer now
+        activeTraces.clear();
+    }
+
+    public static synchronized JSONObject getMetrics() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("capacity", CAPACITY);
+            JSONObject modes = new JSONObject();
+            long[] samples = new long[CAPACITY];
+            for (Map.Entry<String, ModeTraces> entry : tracesByMode.entrySet()) {
+                ModeTraces traces = entry.getValue();
+                JSONObject mode = new JSONObject();
+                mode.put("scans", traces.count);
+                for (Object[] duration : DURATIONS) {
+                    int count = traces.collect((Integer) duration[1], (Integer) duration[2], samples);
+                    mode.put((String) duration[0], toHistogram(samples, count));
+                }
+                modes.put(entry.getKey(), mode);
+            }
+            json.put("modes", modes);
+        } catch (JSONException e) {
+            //should not be possible
+            Log.e(TAG, "Error while putting metrics to json.", e);
+        }
+        return json;
+    }
+
+    private static JSONObject toHistogram(long[] samples, int count) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("count", count);
+        if (count == 0) {
+            return json;
+        }
+        Arrays.sort(samples, 0, count);
+        json.put("p50", percentile(samples, count, 50));
+        json.put("p95", percentile(samples, count, 95));
+        json.put("p99", percentile(samples, count, 99));
+        json.put("max", samples[count - 1]);
+        return json;
+    }
+
+    /**
+     * Nearest rank percentile of the sorted samples.
+     */
+    private static long percentile(long[] sorted, int count, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * The traces of one mode. Each trace holds the timestamp of every stage, 0 if it was not reached.
+     */
+    private static class ModeTraces {
+        private final long[][] traces = new long[CAPACITY][STAGE_COUNT];
+        private int head;
+        private int count;
+
+        long[] next() {
+            long[] trace = traces[head];
+            // a request of this mode that is still running is overwritten, stop tracing it
+            activeTraces.values().remove(trace);
+            Arrays.fill(trace, 0);
+            head = (head + 1) % CAPACITY;
+            count = Math.min(count + 1, CAPACITY);
+            return trace;
+        }
+
+        /**
+         * @return the number of durations put into samples
+         */
+        int collect(int startStage, int endStage, long[] samples) {
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                long[] trace = traces[i];
+                if (trace[startStage] != 0 && trace[endStage] != 0) {
+                    samples[n++] = trace[endStage] - trace[startStage];
+                }
+            }
+            return n;
+        }
+    }
+}
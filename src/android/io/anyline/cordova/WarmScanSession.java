@@ -0,0 +1,122 @@
+/*
+ * Anyline Cordova Plugin
+ * WarmScanSession.java
+ *
+ * Copyright (c) 2017 Anyline GmbH
+ */
+package io.anyline.cordova;
+
+import org.json.JSONObject;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Keeps track of the scan activity that is parked behind the cordova activity in persistent session mode.
+ * <p/>
+ * A parked activity keeps its scan view, the validated license and the loaded module, so a following scan
+ * with the same session key can simply bring it back to the front instead of initializing everything again.
+ * There is at most one resident activity at a time.
+ */
+public class WarmScanSession {
+
+    public static final String PERSISTENT_SESSION = "persistentSession";
+    public static final String IDLE_TIMEOUT = "idleTimeout";
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    private static WeakReference<AnylineBaseActivity> residentActivity;
+    private static String residentKey;
+
+    /**
+     * @param viewConfig the view config of the scan
+     * @return true if the view config enables the persistent session mode
+     */
+    public static boolean isPersistent(JSONObject viewConfig) {
+        if (viewConfig == null) {
+            return false;
+        }
+        Object session = viewConfig.opt(PERSISTENT_SESSION);
+        if (session instanceof JSONObject) {
+            return true;
+        }
+        return viewConfig.optBoolean(PERSISTENT_SESSION, false);
+    }
+
+    /**
+     * @param viewConfig the view config of the scan
+     * @return the idle timeout in milliseconds after which a parked activity is finished
+     */
+    public static long getIdleTimeout(JSONObject viewConfig) {
+        JSONObject session = viewConfig == null ? null : viewConfig.optJSONObject(PERSISTENT_SESSION);
+        if (session == null) {
+            return DEFAULT_IDLE_TIMEOUT;
+        }
+        return session.optLong(IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Builds the key a resident activity is matched against. Everything that is applied during the
+     * initialization of the scan view has to be part of it.
+     */
+    public static String keyFor(Class<?> activityClass, String mode, String licenseKey, String configJson,
+                                String ocrConfigJson) {
+        StringBuilder sb = new StringBuilder(activityClass.getName());
+        sb.append('|').append(mode);
+        sb.append('|').append(licenseKey);
+        sb.append('|').append(configJson);
+        sb.append('|').append(ocrConfigJson);
+        return sb.toString();
+    }
+
+    static synchronized void attach(AnylineBaseActivity activity, String key) {
+        AnylineBaseActivity current = getResident();
+        if (current != null && current != activity) {
+            finish(current);
+        }
+        residentActivity = new WeakReference<AnylineBaseActivity>(activity);
+        residentKey = key;
+    }
+
+    static synchronized void detach(AnylineBaseActivity activity) {
+        if (getResident() == activity) {
+            residentActivity = null;
+            residentKey = null;
+        }
+    }
+
+    /**
+     * @return true if an activity of the given class with the given key is resident and can be reused
+     */
+    public static synchronized boolean isResident(Class<?> activityClass, String key) {
+        AnylineBaseActivity current = getResident();
+        return current != null
+                && !current.isFinishing()
+                && current.getClass().equals(activityClass)
+                && key.equals(residentKey);
+    }
+
+    /**
+     * Finishes the resident activity (if any) and releases everything it holds.
+     */
+    public static synchronized void finishResident() {
+        AnylineBaseActivity current = getResident();
+        residentActivity = null;
+        residentKey = null;
+        if (current != null) {
+            finish(current);
+        }
+    }
+
+    private static AnylineBaseActivity getResident() {
+        return residentActivity == null ? null : residentActivity.get();
+    }
+
+    private static void finish(final AnylineBaseActivity activity) {
+        activity.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                activity.finish();
+            }
+        });
+    }
+}